@@ -0,0 +1,81 @@
+package xlsTransposer.bench;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and prints, for each one, the operations per second
+ * and the bytes allocated per operation. For {@link WriteBodyBenchmark}, the bytes are also given
+ * per output line (rows x periods lines per operation).
+ * Usage : <code>BenchMain [regexp of the benchmarks] [-p param=value,value]...</code>
+ * @author hamme
+ *
+ */
+public class BenchMain {
+
+	public static void main(String[] args) throws RunnerException {
+
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.addProfiler(GCProfiler.class);
+		boolean included = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-p") && i + 1 < args.length) {
+				String[] param = args[++i].split("=", 2);
+				builder.param(param[0], param[1].split(","));
+			}
+			else {
+				builder.include(args[i]);
+				included = true;
+			}
+		}
+		if (!included) {
+			builder.include("xlsTransposer\\.bench\\..*Benchmark");
+		}
+		Options options = builder.build();
+
+		Collection<RunResult> results = new Runner(options).run();
+
+		System.out.println();
+		System.out.println(String.format("%-60s %-50s %14s %12s %12s", "Benchmark", "Parameters", "ops/s", "B/op", "B/out row"));
+		for (RunResult r : results) {
+			BenchmarkParams params = r.getParams();
+			String name = params.getBenchmark().replace("xlsTransposer.bench.", "");
+			StringBuilder values = new StringBuilder();
+			for (String key : params.getParamsKeys()) {
+				values.append(values.length() == 0 ? "" : " ").append(key).append('=').append(params.getParam(key));
+			}
+			double bytes = allocatedBytes(r.getSecondaryResults());
+			String perRow = "";
+			if (name.startsWith("WriteBodyBenchmark") && !Double.isNaN(bytes)) {
+				long outputRows = Long.parseLong(params.getParam("rows")) * Long.parseLong(params.getParam("periods"));
+				perRow = String.format("%.1f", bytes / outputRows);
+			}
+			System.out.println(String.format("%-60s %-50s %14.1f %12.0f %12s", name, values, r.getPrimaryResult().getScore(), bytes, perRow));
+		}
+	}
+
+	/**
+	 * @param secondary
+	 * 		The secondary results of a benchmark
+	 * @return
+	 * 		The bytes allocated per operation measured by the GC profiler, NaN if it wasn't measured
+	 */
+	private static double allocatedBytes(Map<String, Result> secondary) {
+		for (Map.Entry<String, Result> e : secondary.entrySet()) {
+			if (e.getKey().endsWith("gc.alloc.rate.norm")) {
+				return e.getValue().getScore();
+			}
+		}
+		return Double.NaN;
+	}
+
+}
@@ -0,0 +1,62 @@
+package xlsTransposer.bench;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+import testTools.WorkbookGenerator;
+
+/**
+ * The input of the benchmarks : a workbook built in memory by {@link WorkbookGenerator}, always the same for the same parameters.
+ * Its sheet "data" has {@link BenchWorkbook#LINES_TO_COPY} lines of titles, the header,
+ * then one line per serie : {@link BenchWorkbook#SERIE_NB} columns (code, label, date), one value per period,
+ * and a right header (unit, note). The values are all filled, so each line gives one output line per period.
+ * @author hamme
+ *
+ */
+public class BenchWorkbook {
+
+	/**
+	 * The number of lines copied from the top of the sheet
+	 */
+	public static final int LINES_TO_COPY = 2;
+	/**
+	 * The number of columns of the left header
+	 */
+	public static final int SERIE_NB = 3;
+	/**
+	 * Texts of comments, with and without key-words
+	 */
+	public static final String[] COMMENTS = {"SOURCE: INSEE STATUT: provisoire", "COMMENT: estimated SOURCE: Eurostat",
+			"free text", "STATUT: final", "SOURCE: Banque de France COMMENT: revised twice STATUT: definitive"};
+
+	/**
+	 * Builds the workbook.
+	 * @param rows
+	 * 		The number of series (lines after the header)
+	 * @param periods
+	 * 		The number of periods
+	 * @param monthly
+	 * 		true for yyyy_mm periods, false for years
+	 * @param commentDensity
+	 * 		The part of the values having a comment, between 0 and 1
+	 * @return
+	 * 		The workbook
+	 */
+	public static HSSFWorkbook create(int rows, int periods, boolean monthly, double commentDensity) {
+
+		WorkbookGenerator generator = new WorkbookGenerator();
+		generator.setSeed(42);
+		generator.setRows(rows);
+		generator.setPeriods(periods);
+		generator.setMonthly(monthly);
+		generator.setLinesToCopy(LINES_TO_COPY);
+		generator.setSerieNb(SERIE_NB);
+		generator.setRightNb(2);
+		generator.setBlankRatio(0);
+		generator.setCommentDensity(commentDensity);
+
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		generator.fill(workbook);
+		return workbook;
+	}
+
+}
@@ -0,0 +1,101 @@
+package xlsTransposer.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import commentsHandler.CommentCache;
+import commentsHandler.CommentReader;
+import commentsHandler.KeyWordScanner;
+
+/**
+ * Analyzing a comment and reading the texts following its key-words, for each of the comments of {@link BenchWorkbook}.
+ * @author hamme
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentReaderBenchmark {
+
+	private static final String[] KEY_WORDS = {"SOURCE:", "COMMENT:", "STATUT:"};
+
+	/**
+	 * The index of the comment in {@link BenchWorkbook#COMMENTS}
+	 */
+	@Param({"0", "1", "2", "3", "4"})
+	public int comment;
+
+	private String text;
+	private KeyWordScanner scanner;
+	private CommentReader reader;
+	private CommentCache cache;
+
+	@Setup(Level.Trial)
+	public void analyze() {
+		// A new String, as a comment read from a file would be
+		text = new String(BenchWorkbook.COMMENTS[comment]);
+		scanner = new KeyWordScanner(KEY_WORDS);
+		reader = new CommentReader(text, scanner);
+		cache = new CommentCache(16, scanner);
+		cache.get(text);
+	}
+
+	/**
+	 * Analyzing with a scanner shared by all the comments, as a sheet does.
+	 */
+	@Benchmark
+	public CommentReader construct() {
+		return new CommentReader(text, scanner);
+	}
+
+	/**
+	 * Analyzing with the key-words : the scanner is built each time.
+	 */
+	@Benchmark
+	public CommentReader constructWithKeyWords() {
+		return new CommentReader(text, KEY_WORDS);
+	}
+
+	/**
+	 * Analyzing a comment already in the cache.
+	 */
+	@Benchmark
+	public CommentReader cacheHit() {
+		return cache.get(text);
+	}
+
+	@Benchmark
+	public void lookupByIndex(Blackhole blackhole) {
+		for (int k = 0; k < KEY_WORDS.length; k++) {
+			if (reader.getPosition(k) != -1) {
+				blackhole.consume(reader.getComment(k));
+			}
+		}
+	}
+
+	@Benchmark
+	public void lookupByKeyWord(Blackhole blackhole) {
+		for (String keyWord : KEY_WORDS) {
+			if (reader.getPosition(keyWord) != -1) {
+				blackhole.consume(reader.getComment(keyWord));
+			}
+		}
+	}
+
+}
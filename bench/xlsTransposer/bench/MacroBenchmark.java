@@ -0,0 +1,307 @@
+package xlsTransposer.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import testTools.WorkbookGenerator;
+
+/**
+ * Runs the whole transposition ({@link xlsTransposer.MainXLS}) over a grid of sizes :
+ * rows x periods x comment density x yearly/monthly, each run in its own JVM ({@link MacroRun})
+ * so that the heap of a run doesn't depend on the runs before it.
+ * The inputs are generated by {@link WorkbookGenerator} in the work directory, once per point of the grid.
+ * For each run, the wall time (of the transposition and of the whole JVM), the input and output rows per second,
+ * the peak heap, the peak resident memory and the time spent in the garbage collectors are written
+ * in a CSV and a JSON report, labelled (with a commit id for example) to be compared with other reports.
+ * The growth of the peak heap with the number of rows is given as an exponent : peakHeap ~ rows^exponent
+ * between a size and the one before, more than 1 when the memory grows faster than linearly.
+ * Usage : <code>MacroBenchmark [-rows 1000,10000] [-periods 12,120] [-comments 0,0.05] [-layouts yearly,monthly]
+ * [-repeat n] [-dir workDir] [-report name] [-label text] [-jvm "options"] [-- MainXLS options]</code>
+ * @author hamme
+ *
+ */
+public class MacroBenchmark {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+
+		MacroBenchmark benchmark = new MacroBenchmark();
+		try {
+			benchmark.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage : MacroBenchmark [-rows 1000,10000] [-periods 12,120] [-comments 0,0.05] [-layouts yearly,monthly]\n"
+					+ "        [-repeat n] [-dir workDir] [-report name] [-label text] [-jvm \"options\"] [-- MainXLS options]");
+			return;
+		}
+		benchmark.run();
+	}
+
+	private int[] rows = {1000, 10000};
+	private int[] periods = {12, 120};
+	private double[] comments = {0, 0.05};
+	private String[] layouts = {"yearly", "monthly"};
+	/**
+	 * The number of runs of each point of the grid
+	 */
+	private int repeat = 1;
+	/**
+	 * Where the inputs and outputs are written
+	 */
+	private File dir = new File("macro");
+	/**
+	 * The name of the reports, without extension
+	 */
+	private String report = "macro";
+	/**
+	 * Written in each line of the reports, to tell them apart
+	 */
+	private String label = "";
+	/**
+	 * The options of the forked JVMs
+	 */
+	private List<String> jvmOptions = new ArrayList<String>();
+	/**
+	 * The options given to each transposition
+	 */
+	private List<String> transposerOptions = new ArrayList<String>();
+
+	/**
+	 * The columns of the reports
+	 */
+	private static final String[] COLUMNS = {"label", "rows", "periods", "comments", "layout", "run", "millis", "jvmMillis",
+			"inputRows", "outputRows", "inputRowsPerSecond", "outputRowsPerSecond", "peakHeap", "peakRss", "gcMillis", "gcCount",
+			"outputBytes", "heapGrowthExponent"};
+
+	/**
+	 * Reads the options.
+	 * @param args
+	 * 		The arguments of the command line
+	 */
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-rows":
+				rows = ints(value(args, ++i));
+				break;
+			case "-periods":
+				periods = ints(value(args, ++i));
+				break;
+			case "-comments":
+				String[] c = value(args, ++i).split(",");
+				comments = new double[c.length];
+				for (int k = 0; k < c.length; k++) {
+					comments[k] = Double.parseDouble(c[k]);
+				}
+				break;
+			case "-layouts":
+				layouts = value(args, ++i).split(",");
+				break;
+			case "-repeat":
+				repeat = Integer.parseInt(value(args, ++i));
+				break;
+			case "-dir":
+				dir = new File(value(args, ++i));
+				break;
+			case "-report":
+				report = value(args, ++i);
+				break;
+			case "-label":
+				label = value(args, ++i);
+				break;
+			case "-jvm":
+				jvmOptions.addAll(Arrays.asList(value(args, ++i).trim().split("\\s+")));
+				break;
+			case "--":
+				transposerOptions.addAll(Arrays.asList(args).subList(i + 1, args.length));
+				i = args.length;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private static int[] ints(String list) {
+		String[] values = list.split(",");
+		int[] ints = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			ints[i] = Integer.parseInt(values[i]);
+		}
+		return ints;
+	}
+
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for option " + args[i - 1]);
+		}
+		return args[i];
+	}
+
+	/**
+	 * Runs the grid, the rows last so that the sizes of one curve follow each other, and writes the reports.
+	 */
+	private void run() throws IOException, InterruptedException {
+
+		dir.mkdirs();
+		List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+
+		for (String layout : layouts) {
+			for (double density : comments) {
+				for (int p : periods) {
+					// The peak heap of the size before, for the growth exponent
+					double previousRows = 0;
+					double previousHeap = 0;
+					for (int r : rows) {
+						File input = generate(r, p, density, layout.equals("monthly"));
+						for (int run = 1; run <= repeat; run++) {
+							Map<String, String> result = runOne(input);
+							result.put("label", label);
+							result.put("rows", String.valueOf(r));
+							result.put("periods", String.valueOf(p));
+							result.put("comments", String.valueOf(density));
+							result.put("layout", layout);
+							result.put("run", String.valueOf(run));
+							double seconds = Math.max(Long.parseLong(result.get("millis")), 1) / 1000.0;
+							result.put("inputRowsPerSecond", String.format(Locale.ROOT, "%.0f", Long.parseLong(result.get("inputRows")) / seconds));
+							result.put("outputRowsPerSecond", String.format(Locale.ROOT, "%.0f", Long.parseLong(result.get("outputRows")) / seconds));
+							double heap = Double.parseDouble(result.get("peakHeap"));
+							result.put("heapGrowthExponent", previousRows == 0 ? "" :
+								String.format(Locale.ROOT, "%.2f", Math.log(heap / previousHeap) / Math.log(r / previousRows)));
+							if (run == repeat) {
+								previousRows = r;
+								previousHeap = heap;
+							}
+							results.add(result);
+							System.out.println(String.format("%-8s %6.2f %6d periods %8d rows : %7s ms, %9s out rows/s, heap %6d MB, RSS %6d MB, GC %5s ms %s",
+									layout, density, p, r, result.get("millis"), result.get("outputRowsPerSecond"),
+									Long.parseLong(result.get("peakHeap")) >> 20, Long.parseLong(result.get("peakRss")) >> 20,
+									result.get("gcMillis"), result.get("heapGrowthExponent").isEmpty() ? "" : "growth " + result.get("heapGrowthExponent")));
+						}
+					}
+				}
+			}
+		}
+
+		writeCsv(new File(report + ".csv"), results);
+		writeJson(new File(report + ".json"), results);
+		System.out.println("Reports written in " + report + ".csv and " + report + ".json");
+	}
+
+	/**
+	 * Generates the input of a point of the grid, unless it was generated by a previous run.
+	 */
+	private File generate(int r, int p, double density, boolean monthly) throws IOException {
+
+		WorkbookGenerator generator = new WorkbookGenerator();
+		generator.setRows(r);
+		generator.setPeriods(p);
+		generator.setMonthly(monthly);
+		generator.setCommentDensity(density);
+		// More than 256 columns only fit in a .xlsx, which MainXLS doesn't read : the check tells it
+		File input = new File(dir, String.format("in_%s_%d_%d_%s.xls", monthly ? "m" : "y", r, p, String.valueOf(density).replace('.', '_')));
+		generator.setOutputFile(input);
+		generator.check();
+		if (!input.exists()) {
+			generator.write(input);
+		}
+		return input;
+	}
+
+	/**
+	 * Transposes a file in a new JVM.
+	 * @param input
+	 * 		The file
+	 * @return
+	 * 		What {@link MacroRun} measured, and the time the JVM took
+	 */
+	private Map<String, String> runOne(File input) throws IOException, InterruptedException {
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(MacroRun.class.getName());
+		command.add(input.getPath());
+		command.addAll(transposerOptions);
+
+		long start = System.currentTimeMillis();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		StringBuilder log = new StringBuilder();
+		while ((line = output.readLine()) != null) {
+			if (line.startsWith(MacroRun.RESULT)) {
+				for (String pair : line.substring(MacroRun.RESULT.length()).trim().split(" ")) {
+					String[] kv = pair.split("=", 2);
+					result.put(kv[0], kv[1]);
+				}
+			}
+			else {
+				log.append(line).append('\n');
+			}
+		}
+		int exit = process.waitFor();
+		if (exit != 0 || result.isEmpty()) {
+			throw new IOException("The run on " + input + " failed (exit " + exit + ") :\n" + log);
+		}
+		result.put("jvmMillis", String.valueOf(System.currentTimeMillis() - start));
+		return result;
+	}
+
+	private static void writeCsv(File file, List<Map<String, String>> results) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println(String.join(",", COLUMNS));
+			for (Map<String, String> result : results) {
+				StringBuilder line = new StringBuilder();
+				for (int i = 0; i < COLUMNS.length; i++) {
+					String column = COLUMNS[i];
+					String value = result.containsKey(column) ? result.get(column) : "";
+					// The first value may be empty : the separator depends on the column, not on the line
+					line.append(i == 0 ? "" : ",").append(value.contains(",") ? "\"" + value.replace("\"", "\"\"") + "\"" : value);
+				}
+				out.println(line);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeJson(File file, List<Map<String, String>> results) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("[");
+			for (int i = 0; i < results.size(); i++) {
+				StringBuilder object = new StringBuilder("  {");
+				for (String column : COLUMNS) {
+					String value = results.get(i).containsKey(column) ? results.get(i).get(column) : "";
+					object.append(object.length() == 3 ? "" : ", ").append('"').append(column).append("\": ");
+					// Everything but the label and the layout is a number
+					if (column.equals("label") || column.equals("layout") || value.isEmpty()) {
+						object.append(value.isEmpty() && !column.equals("label") ? "null" : '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"');
+					}
+					else {
+						object.append(value);
+					}
+				}
+				out.println(object.append(i == results.size() - 1 ? "}" : "},"));
+			}
+			out.println("]");
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package xlsTransposer.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import xlsTransposer.MainXLS;
+import xlsTransposer.Parameters;
+import xlsTransposer.TranspositionResult;
+
+/**
+ * One run of {@link MacroBenchmark}, in its own JVM : transposes a file like {@link MainXLS} and prints
+ * one line starting with {@link MacroRun#RESULT} with what was measured, as key=value pairs :
+ * the time of the transposition, the lines read and written, the peak of the heap (sum of the peaks of
+ * the heap memory pools), the time spent in the garbage collectors and the peak resident memory of the process.
+ * Usage : <code>MacroRun inputFile [MainXLS options]</code>
+ * @author hamme
+ *
+ */
+public class MacroRun {
+
+	/**
+	 * The beginning of the line of the results
+	 */
+	public static final String RESULT = "MACRO_RESULT";
+
+	public static void main(String[] args) throws IOException {
+
+		Parameters params = Parameters.parse(args);
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		long gcTime = gcTime();
+		long gcCount = gcCount();
+
+		TranspositionResult result = MainXLS.transpose(params.getInputName(), params);
+
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		long outputBytes = 0;
+		for (String name : result.getOutputName().split(", ")) {
+			outputBytes += new File(name).length();
+		}
+
+		System.out.println(RESULT + " millis=" + result.getDuration() + " inputRows=" + result.getReadLinesNb()
+				+ " outputRows=" + result.getWrittenLinesNb() + " peakHeap=" + peakHeap + " peakRss=" + peakRss()
+				+ " gcMillis=" + (gcTime() - gcTime) + " gcCount=" + (gcCount() - gcCount) + " outputBytes=" + outputBytes);
+	}
+
+	/**
+	 * @return
+	 * 		The time spent by all the garbage collectors since the start, in milliseconds
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+		return time;
+	}
+
+	/**
+	 * @return
+	 * 		The number of collections since the start
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	/**
+	 * @return
+	 * 		The peak resident memory of the process in bytes (VmHWM of /proc/self/status), -1 if unknown
+	 */
+	private static long peakRss() {
+		File status = new File("/proc/self/status");
+		if (!status.exists()) {
+			return -1;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(status));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | NumberFormatException e) {
+			return -1;
+		}
+		return -1;
+	}
+
+}
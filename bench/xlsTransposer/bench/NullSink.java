@@ -0,0 +1,80 @@
+package xlsTransposer.bench;
+
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xlsTransposer.OutputSink;
+
+/**
+ * A sink writing nothing, so that a benchmark measures the transposition and not the output format.
+ * The values are given to a blackhole, so that the JIT can't skip computing them.
+ * @author hamme
+ *
+ */
+public class NullSink implements OutputSink {
+
+	/**
+	 * Constructor
+	 * @param blackhole
+	 * 		Receives the values
+	 */
+	public NullSink(Blackhole blackhole) {
+		this.blackhole = blackhole;
+	}
+
+	/**
+	 * Receives the values
+	 */
+	private Blackhole blackhole;
+	/**
+	 * The number of rows created
+	 */
+	private long rowsNb;
+
+	public long getRowsNb() {
+		return rowsNb;
+	}
+
+	@Override
+	public void createRow(int rowId) {
+		rowsNb++;
+		blackhole.consume(rowId);
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		blackhole.consume(columnId);
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		blackhole.consume(value);
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		blackhole.consume(value);
+		blackhole.consume(format);
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		blackhole.consume(value);
+	}
+
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		blackhole.consume(value);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void abort() {
+	}
+
+}
@@ -0,0 +1,192 @@
+package xlsTransposer.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xlsTransposer.HSSFSheetReader;
+import xlsTransposer.OutputFile;
+import xlsTransposer.PeriodCodec;
+import xlsTransposer.RowBuffer;
+import xlsTransposer.Tools;
+
+/**
+ * The helpers of {@link Tools} used for each line : copying, extracting, reading and writing lines,
+ * and the end of file checks. Each operation handles one line, the next one of the input each time.
+ * @author hamme
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolsBenchmark {
+
+	/**
+	 * The number of series of the input
+	 */
+	@Param({"1000"})
+	public int rows;
+	/**
+	 * The number of periods of the input
+	 */
+	@Param({"12", "120"})
+	public int periods;
+	/**
+	 * The part of the values having a comment
+	 */
+	@Param({"0", "0.1"})
+	public double commentDensity;
+
+	private HSSFWorkbook input;
+	private HSSFSheet sheet;
+	private Tools t;
+	/**
+	 * The next line of the input, cycling thru the series
+	 */
+	private int cursor;
+	/**
+	 * The next period written by {@link ToolsBenchmark#writeLineBody()}
+	 */
+	private int period;
+	private int firstRight;
+	private Cell[] leftHeader;
+	private Cell[] rightHeader;
+	private Cell[] header;
+	private Cell firstPeriod;
+	private RowBuffer line;
+	private PeriodCodec codec;
+
+	@Setup(Level.Trial)
+	public void createInput(Blackhole blackhole) {
+
+		input = BenchWorkbook.create(rows, periods, false, commentDensity);
+		sheet = input.getSheet("data");
+		t = new Tools(new HSSFSheetReader(sheet), new NullSink(blackhole));
+		firstRight = BenchWorkbook.SERIE_NB + periods;
+		t.setLastColumn(firstRight + 1);
+
+		header = t.extractLine(BenchWorkbook.LINES_TO_COPY);
+		leftHeader = new Cell[BenchWorkbook.SERIE_NB];
+		rightHeader = new Cell[2];
+		Cell[] periodCells = new Cell[periods];
+		System.arraycopy(header, 0, leftHeader, 0, leftHeader.length);
+		System.arraycopy(header, BenchWorkbook.SERIE_NB, periodCells, 0, periods);
+		System.arraycopy(header, firstRight, rightHeader, 0, rightHeader.length);
+		firstPeriod = periodCells[0];
+		codec = new PeriodCodec(periodCells, t.getDateFormats());
+		line = new RowBuffer(header.length);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeInput() throws Exception {
+		input.close();
+	}
+
+	/**
+	 * @return
+	 * 		The next line of the body of the input
+	 */
+	private int next() {
+		int rowId = BenchWorkbook.LINES_TO_COPY + 1 + cursor;
+		cursor = cursor + 1 == rows ? 0 : cursor + 1;
+		return rowId;
+	}
+
+	@Benchmark
+	public void copy() {
+		t.copy(0, 0, BenchWorkbook.LINES_TO_COPY + 1);
+	}
+
+	@Benchmark
+	public Cell[] extractLine() {
+		return t.extractLine(next());
+	}
+
+	@Benchmark
+	public Cell[] extractLineWithComments() {
+		return t.extractLine(next(), BenchWorkbook.SERIE_NB, firstRight - 1, new String[periods]);
+	}
+
+	@Benchmark
+	public RowBuffer readLine() {
+		t.readLine(next(), line);
+		return line;
+	}
+
+	@Benchmark
+	public void writeLineCellsStrings() {
+		t.writeLine(next(), leftHeader, OutputFile.commentColumns);
+	}
+
+	@Benchmark
+	public void writeLineCellsStringsCells() {
+		t.writeLine(next(), leftHeader, OutputFile.periodValueYearly, rightHeader);
+	}
+
+	@Benchmark
+	public void writeLineHeader() {
+		t.writeLine(next(), leftHeader, OutputFile.periodValueYearly, rightHeader, OutputFile.commentColumns);
+	}
+
+	@Benchmark
+	public void writeLineCells() {
+		t.writeLine(next(), header);
+	}
+
+	@Benchmark
+	public void writelineMonthly() {
+		t.writeline(next(), leftHeader, 2015, 6, firstPeriod, rightHeader);
+	}
+
+	/**
+	 * One output line of the body, the input line being read once per period.
+	 */
+	@Benchmark
+	public void writeLineBody() {
+		if (period == 0) {
+			t.readLine(next(), line);
+		}
+		t.writeLine(BenchWorkbook.LINES_TO_COPY + 1, line, BenchWorkbook.SERIE_NB, firstRight, period, codec);
+		period = period + 1 == periods ? 0 : period + 1;
+	}
+
+	@Benchmark
+	public boolean isItEOF() {
+		return t.isItEOF(next());
+	}
+
+	/**
+	 * The check done after the last line : the row doesn't exist.
+	 */
+	@Benchmark
+	public boolean isItEOFAfterLastLine() {
+		return t.isItEOF(BenchWorkbook.LINES_TO_COPY + 1 + rows);
+	}
+
+	@Benchmark
+	public boolean isRowEmpty() {
+		Row row = sheet.getRow(next());
+		return Tools.isRowEmpty(row);
+	}
+
+}
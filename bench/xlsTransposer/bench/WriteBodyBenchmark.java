@@ -0,0 +1,113 @@
+package xlsTransposer.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xlsTransposer.HSSFSheetReader;
+import xlsTransposer.OutputSink;
+import xlsTransposer.SheetCouple;
+import xlsTransposer.SheetSink;
+
+/**
+ * Transposes a whole sheet : {@link SheetCouple#copy(int, int, int)}, {@link SheetCouple#writeHeader(int)}
+ * and {@link SheetCouple#writeBody()}, as {@link xlsTransposer.MainXLS#transposeSheet} does.
+ * One operation is one sheet of rows x periods output lines : {@link BenchMain} divides the bytes allocated
+ * per operation by this number.
+ * @author hamme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBodyBenchmark {
+
+	/**
+	 * The number of series of the input
+	 */
+	@Param({"1000", "10000"})
+	public int rows;
+	/**
+	 * The number of periods of the input
+	 */
+	@Param({"12", "120"})
+	public int periods;
+	/**
+	 * The part of the values having a comment
+	 */
+	@Param({"0", "0.01", "0.1"})
+	public double commentDensity;
+	/**
+	 * "yearly" or "monthly"
+	 */
+	@Param({"yearly", "monthly"})
+	public String layout;
+	/**
+	 * "null" to write nothing, "sxssf" to write a streamed workbook
+	 */
+	@Param({"null", "sxssf"})
+	public String sink;
+
+	/**
+	 * The input, built once per trial
+	 */
+	private HSSFWorkbook input;
+
+	@Setup(Level.Trial)
+	public void createInput() {
+		input = BenchWorkbook.create(rows, periods, layout.equals("monthly"), commentDensity);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeInput() throws Exception {
+		input.close();
+	}
+
+	@Benchmark
+	public SheetCouple writeBody(Blackhole blackhole) throws Exception {
+
+		SXSSFWorkbook output = null;
+		OutputSink out;
+		if (sink.equals("sxssf")) {
+			output = new SXSSFWorkbook(100);
+			out = new SheetSink(output.createSheet("data"));
+		}
+		else {
+			out = new NullSink(blackhole);
+		}
+
+		try {
+			SheetCouple duo = new SheetCouple(new HSSFSheetReader(input.getSheet("data")), out, BenchWorkbook.LINES_TO_COPY);
+			duo.getInputFile().setSerieNb(BenchWorkbook.SERIE_NB);
+			duo.copy(0, 0, BenchWorkbook.LINES_TO_COPY);
+			duo.writeHeader(BenchWorkbook.LINES_TO_COPY);
+			duo.writeBody();
+			return duo;
+		} finally {
+			out.close();
+			if (output != null) {
+				output.dispose();
+				output.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package commentsHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The analyzed comments, by text : the same comment pasted on many cells is only analyzed once,
+ * and the texts written for it are the same String instances for all the cells.
+ * Holds at most {@link CommentCache#maxSize} comments, the least recently used one being dropped first.
+ * Shared by all the sheets of a run, which can be read by several threads.
+ * @author hamme
+ *
+ */
+public class CommentCache {
+
+	/**
+	 * Constructor
+	 * @param maxSize
+	 * 		The maximal number of comments kept, 0 to analyze every comment again
+	 * @param scanner
+	 * 		The scanner of the key-words searched for in the comments
+	 */
+	public CommentCache(final int maxSize, KeyWordScanner scanner) {
+		this.maxSize = maxSize;
+		this.scanner = scanner;
+		this.readers = new LinkedHashMap<String, CommentReader>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CommentReader> eldest) {
+				if (size() > maxSize) {
+					evictionsNb++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * The maximal number of comments kept
+	 */
+	private int maxSize;
+	/**
+	 * The scanner of the key-words
+	 */
+	private KeyWordScanner scanner;
+	/**
+	 * The analyzed comments by text, in the order they were last used
+	 */
+	private Map<String, CommentReader> readers;
+	/**
+	 * Number of comments found in the cache
+	 */
+	private long hitsNb;
+	/**
+	 * Number of comments analyzed because they weren't in the cache
+	 */
+	private long missesNb;
+	/**
+	 * Number of comments dropped from the cache to make room
+	 */
+	private long evictionsNb;
+
+	public KeyWordScanner getScanner() {
+		return scanner;
+	}
+
+	public synchronized long getHitsNb() {
+		return hitsNb;
+	}
+
+	public synchronized long getMissesNb() {
+		return missesNb;
+	}
+
+	public synchronized long getEvictionsNb() {
+		return evictionsNb;
+	}
+
+	/**
+	 * Returns the analyzed comment of a text, analyzing it if it isn't in the cache.
+	 * @param comment
+	 * 		The text of the comment
+	 * @return
+	 * 		The analyzed comment
+	 */
+	public synchronized CommentReader get(String comment) {
+		CommentReader reader = readers.get(comment);
+		if (reader != null) {
+			hitsNb++;
+			return reader;
+		}
+		missesNb++;
+		reader = new CommentReader(comment, scanner);
+		if (maxSize > 0) {
+			readers.put(comment, reader);
+		}
+		return reader;
+	}
+
+	/**
+	 * @return
+	 * 		The numbers of hits, misses and evictions, to be printed
+	 */
+	public synchronized String getReport() {
+		long total = hitsNb + missesNb;
+		return String.format("Comment cache : %d hits, %d misses (%.1f %% hits), %d evictions, %d comments kept.",
+				hitsNb, missesNb, total == 0 ? 0.0 : 100.0 * hitsNb / total, evictionsNb, readers.size());
+	}
+
+}
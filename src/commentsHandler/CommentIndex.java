@@ -0,0 +1,120 @@
+package commentsHandler;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * The analyzed comments of a sheet, by cell. Built in one pass over the comments of the sheet,
+ * so that finding the comment of a cell doesn't search the whole sheet each time.
+ * A cell is found by a key packing its row and its column in a long, in a table with open addressing.
+ * Once built, it is only read and can be shared by several threads.
+ * @author hamme
+ *
+ */
+public class CommentIndex {
+
+	/**
+	 * Constructor, analyzes all the comments, or finds them in a cache when their text was already analyzed.
+	 * @param comments
+	 * 		The texts of the comments of the sheet, by cell
+	 * @param cache
+	 * 		The analyzed comments by text
+	 */
+	public CommentIndex(Map<CellAddress, String> comments, CommentCache cache) {
+
+		int capacity = Integer.highestOneBit(Math.max(2, comments.size() * 2) - 1) << 1;
+		keys = new long[capacity];
+		readers = new CommentReader[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+		for (Map.Entry<CellAddress, String> e : comments.entrySet()) {
+			int row = e.getKey().getRow();
+			put(key(row, e.getKey().getColumn()), cache.get(e.getValue()));
+			commentedRows.set(row);
+		}
+		size = comments.size();
+	}
+
+	/**
+	 * The number of commented cells
+	 */
+	private int size;
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * The keys of the cells, {@link CommentIndex#EMPTY} for an empty slot
+	 */
+	private long[] keys;
+	/**
+	 * The analyzed comment of the cell of the same slot in {@link CommentIndex#keys}
+	 */
+	private CommentReader[] readers;
+	/**
+	 * The number of bits dropped from a hash to get a slot
+	 */
+	private int shift;
+	/**
+	 * The rows having at least one comment
+	 */
+	private BitSet commentedRows = new BitSet();
+	/**
+	 * The key of an empty slot : no cell has it, a row and a column being positive.
+	 */
+	private static final long EMPTY = 0;
+
+	/**
+	 * Checks if a row has comments, before searching for the comments of its cells.
+	 * @param rowId
+	 * 		The row
+	 * @return
+	 * 		true if at least one cell of the row is commented
+	 */
+	public boolean hasComments(int rowId) {
+		return commentedRows.get(rowId);
+	}
+
+	/**
+	 * Returns the analyzed comment of a cell.
+	 * @param rowId
+	 * 		The row of the cell
+	 * @param columnId
+	 * 		The column of the cell
+	 * @return
+	 * 		The comment, null if the cell isn't commented
+	 */
+	public CommentReader get(int rowId, int columnId) {
+		long key = key(rowId, columnId);
+		for (int slot = slot(key); keys[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1)) {
+			if (keys[slot] == key) {
+				return readers[slot];
+			}
+		}
+		return null;
+	}
+
+	private void put(long key, CommentReader reader) {
+		int slot = slot(key);
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		readers[slot] = reader;
+	}
+
+	/**
+	 * Packs the row and the column of a cell. 1 is added to the column so that no key is {@link CommentIndex#EMPTY}.
+	 */
+	private static long key(int rowId, int columnId) {
+		return (long) rowId << 32 | (columnId + 1);
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+}
@@ -1,8 +1,10 @@
 package commentsHandler;
 
 /**
- * A class handling a String : searching for the SOURCE, COMMENT & STATUT key-words in the String
- * and splitting the text following the key-words.  
+ * A class handling a String : searching for the SOURCE, COMMENT & STATUT key-words (or any other set) in the String
+ * and giving the text following the key-words.
+ * The key-words are found in one pass by a {@link KeyWordScanner}, in any order. Only their offsets are kept :
+ * the text following a key-word is extracted when it is asked for.
  * @author hamme
  *
  */
@@ -10,158 +12,140 @@ public class CommentReader {
 
 
 	/**
-	 * Constructor. Constructs an array of String ({@link #words}) from a String by iteration. Each time
-	 * a key-word is searched, the part of the array where it was detected is divided in three
-	 * new Strings : the part before the key-word, the key-word and the part after.
-	 * The position of the key-words in the array is stored in {@link CommentReader#position}.
+	 * Constructor. Builds a scanner for the key-words : when many comments are analyzed,
+	 * prefer {@link CommentReader#CommentReader(String, KeyWordScanner)} with a scanner built once.
 	 * @param comment
-	 * 		The string to split
+	 * 		The string to analyze
 	 * @param keyWords
 	 * 		The key-words
 	 */
 	public CommentReader(String comment, String[] keyWords) {
-		
-		String[] tmp = {comment};
-		for (String keyWord : keyWords) {
-			tmp = split(tmp, keyWord);
+		this(comment, new KeyWordScanner(keyWords));
+	}
+
+	/**
+	 * Constructor. Goes thru the comment once, storing for each key-word its offset and the bounds of the text
+	 * following it : up to the next key-word, or to the end of the comment.
+	 * A key-word present several times keeps the text following its first occurrence.
+	 * @param comment
+	 * 		The string to analyze
+	 * @param scanner
+	 * 		The scanner of the key-words
+	 */
+	public CommentReader(String comment, KeyWordScanner scanner) {
+
+		this.comment = comment;
+		this.scanner = scanner;
+		position = new int[scanner.size()];
+		start = new int[scanner.size()];
+		end = new int[scanner.size()];
+		values = new String[scanner.size()];
+		java.util.Arrays.fill(position, -1);
+
+		int[] bounds = new int[2];
+		// The key-word whose text is being read, -1 if none
+		int open = -1;
+		int k;
+		int from = 0;
+		while ((k = scanner.find(comment, from, bounds)) != -1) {
+			if (open != -1) {
+				end[open] = bounds[0];
+				open = -1;
+			}
+			if (position[k] == -1) {
+				position[k] = bounds[0];
+				start[k] = bounds[1];
+				open = k;
+			}
+			from = bounds[1];
 		}
-		words = new String[tmp.length];
-		words = tmp;
-		position = new int[keyWords.length];
-		
-		// Storing the positions of the key words in their order.
-		for (int i = 0; i < keyWords.length; i++) {
-			position[i] = getStringPosition(keyWords[i], words);
+		if (open != -1) {
+			end[open] = comment.length();
 		}
 	}
-	
+
 	/**
-	 * An array containing the positions of the key-words in {@link CommentReader#words} in their order.
+	 * The analyzed string
 	 */
-	private int position[];
-	
-	
+	private String comment;
 	/**
-	 * An array of Strings. Each String consists of either : some unimportant text standing alone
-	 * (before the first key-word or the whole text if there was no key-word at all in the comment),
-	 * a key-word (in which case, the following String is the text following the key-word) or 
-	 * the text following a key-word as explained before.
+	 * The scanner of the key-words
 	 */
-	private String[] words;
-	
+	private KeyWordScanner scanner;
 	/**
-	 * The position in the {@link CommentReader#words} array of the SOURCE: key-word.
+	 * The offset of each key-word in {@link CommentReader#comment}, -1 if not found.
 	 */
-	private int sourcePosition;
-	
-	public int getSourcePosition() {
-		return sourcePosition;
-	}
-
+	private int position[];
 	/**
-	 * The position in the {@link CommentReader#words} array of the COMMENT: key-word.
+	 * The offset of the text following each key-word
 	 */
-	private int commentPosition;
-	
-	public int getCommentPosition() {
-		return commentPosition;
-	}
-
+	private int start[];
 	/**
-	 * The position in the {@link CommentReader#words} array of the STATUT: key-word.
+	 * The offset following the text following each key-word
 	 */
-	private int statutPosition;
-	
-	public int getStatutPosition() {
-		return statutPosition;
-	}
-	
+	private int end[];
 	/**
-	 * Searches from an array of String in each String if it contains a certain key-word. 
-	 * If found, will split it between three Strings : the text before, the key-word, the text after.
-	 * Will then create an array of the same size + 2 and copy the precedent inside plus the three new Strings
-	 * at the place of the precedent place of the String where the key-word was found.
-	 * @param text
-	 * 		The array of String to search in
-	 * @param keyWord
-	 * 		The key-word searched for
-	 * @return
-	 * 		The same array if the key-word has not been found, the rebuilt one if found. 
+	 * The text following each key-word, extracted the first time it is asked for
 	 */
-	public String[] split(String[] text, String keyWord) {
-		
-		int tmp;
-		String[] matchedArray;
+	private String values[];
 
-		// We go thru the array
-		for (int i = 0; i < text.length; i++) {
-			
-			// If the String contains the key-word
-			if (text[i].contains(keyWord)) {
-				
-				tmp = i;
-				matchedArray = text[i].split(keyWord);
-				
-				// The new array
-				String[] newText = new String[text.length + 2];
-				
-				// Copy the Strings before the one in which it was found
-				for (int j = 0; j < tmp; j++) {
-					newText[j] = text[j];
-				}
-				
-				// Insert the new Strings :
-				// The text before the key-word
-				newText[tmp] = matchedArray[0];
-				// The key-word
-				newText[tmp + 1] = keyWord;
-				// The text after the key-word
-				newText[tmp + 2] = matchedArray[1];
-				
-				// Copy the Strings after the one in which it was found
-				for (int j = tmp + 1; j < text.length; j++) {
-					newText[j + 2] = text[j];
-				}
-				
-				// Return the new array
-				return newText;
-			}	
-		}
-		// Key-word not found, return the same array
-		return text;	
+	public String getText() {
+		return comment;
 	}
+
 	/**
-	 * Returns the position of a String in an Array if found.
-	 * @param searchedWord
-	 * 		The String we search for.
-	 * @param text
-	 * 		The array we search in.
+	 * Finds a key-word in the comment.
+	 * @param keyWord
+	 * 		The key-word to search for
 	 * @return
-	 * 		the position of the String if found, -1 if not found.
+	 * 		The offset of the key-word in the comment, -1 if not found.
 	 */
-	private int getStringPosition(String searchedWord, String[] text) {
-		return java.util.Arrays.asList(text).indexOf(searchedWord);
+	public int getPosition(String keyWord) {
+		int k = scanner.indexOf(keyWord);
+		return k == -1 ? -1 : position[k];
 	}
-	
+
 	/**
-	 * Finds a String in {@link CommentReader#words}
-	 * @param keyWord
-	 * 		The String to search for
+	 * Finds a key-word in the comment.
+	 * @param keyWordIndex
+	 * 		The index of the key-word in the key-words of the scanner
 	 * @return
-	 * 		The place of the string in {@link CommentReader#words}, -1 if not found.
+	 * 		The offset of the key-word in the comment, -1 if not found.
 	 */
-	public int getPosition(String keyWord) {
-		return this.getStringPosition(keyWord, this.words);
+	public int getPosition(int keyWordIndex) {
+		return position[keyWordIndex];
 	}
-	// TODO : ADD exception if position == - 1
+
 	/**
-	 * Returns the text following a key-word in {@link CommentReader#words}
+	 * Returns the text following a key-word.
 	 * @param keyWord
 	 * 		The key-word to search for
 	 * @return
-	 * 		the text following a key-word in {@link CommentReader#words}
+	 * 		the text following the key-word, null if not found
 	 */
 	public String getComment(String keyWord) {
-		return words[getPosition(keyWord) + 1];
+		int k = scanner.indexOf(keyWord);
+		return k == -1 ? null : getComment(k);
+	}
+
+	/**
+	 * Returns the text following a key-word. The same String is returned each time,
+	 * the comment being shared by all the cells having the same text (see {@link CommentCache}).
+	 * @param keyWordIndex
+	 * 		The index of the key-word in the key-words of the scanner
+	 * @return
+	 * 		the text following the key-word, null if not found
+	 */
+	public String getComment(int keyWordIndex) {
+		if (position[keyWordIndex] == -1) {
+			return null;
+		}
+		// Several threads may extract it at once : they get equal Strings, one of them being kept
+		String value = values[keyWordIndex];
+		if (value == null) {
+			value = comment.substring(start[keyWordIndex], end[keyWordIndex]);
+			values[keyWordIndex] = value;
+		}
+		return value;
 	}
 }
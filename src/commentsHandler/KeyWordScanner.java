@@ -0,0 +1,176 @@
+package commentsHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds all the key-words of a set in a text in one pass, whatever their number (Aho-Corasick automaton).
+ * The automaton is built once for the key-words and can then scan any number of texts,
+ * by several threads at once as it is only read.
+ * The key-words found don't overlap : when two of them end at the same character, the longest one is kept,
+ * and the search starts again after the end of a key-word found (so a key-word beginning another one
+ * is found instead of the longer one).
+ * @author hamme
+ *
+ */
+public class KeyWordScanner {
+
+	/**
+	 * Constructor, builds the automaton.
+	 * @param keyWords
+	 * 		The key-words, not empty
+	 */
+	public KeyWordScanner(String[] keyWords) {
+
+		this.keyWords = keyWords.clone();
+
+		// The characters of the key-words, the others all being the symbol 0
+		char max = 0;
+		for (String keyWord : keyWords) {
+			if (keyWord.isEmpty()) {
+				throw new IllegalArgumentException("A key-word can't be empty");
+			}
+			for (int i = 0; i < keyWord.length(); i++) {
+				max = (char) Math.max(max, keyWord.charAt(i));
+			}
+		}
+		symbols = new int[max + 1];
+		int symbolsNb = 1;
+		for (String keyWord : keyWords) {
+			for (int i = 0; i < keyWord.length(); i++) {
+				if (symbols[keyWord.charAt(i)] == 0) {
+					symbols[keyWord.charAt(i)] = symbolsNb++;
+				}
+			}
+		}
+
+		// The tree of the key-words : a state per prefix
+		List<int[]> tree = new ArrayList<int[]>();
+		List<Integer> found = new ArrayList<Integer>();
+		tree.add(new int[symbolsNb]);
+		found.add(-1);
+		for (int k = 0; k < keyWords.length; k++) {
+			int state = 0;
+			for (int i = 0; i < keyWords[k].length(); i++) {
+				int symbol = symbols[keyWords[k].charAt(i)];
+				if (tree.get(state)[symbol] == 0) {
+					tree.get(state)[symbol] = tree.size();
+					tree.add(new int[symbolsNb]);
+					found.add(-1);
+				}
+				state = tree.get(state)[symbol];
+			}
+			// A key-word given twice is found as the first one
+			if (found.get(state) == -1) {
+				found.set(state, k);
+			}
+		}
+
+		// The transitions of the states missing in the tree follow the longest suffix that is a prefix,
+		// going thru the states by increasing depth
+		next = tree.toArray(new int[tree.size()][]);
+		keyWordFound = new int[next.length];
+		for (int s = 0; s < next.length; s++) {
+			keyWordFound[s] = found.get(s);
+		}
+		int[] fail = new int[next.length];
+		int[] queue = new int[next.length];
+		int head = 0;
+		int tail = 0;
+		for (int symbol = 0; symbol < symbolsNb; symbol++) {
+			if (next[0][symbol] != 0) {
+				queue[tail++] = next[0][symbol];
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			// A shorter key-word ending here is found when no longer one is
+			if (keyWordFound[state] == -1) {
+				keyWordFound[state] = keyWordFound[fail[state]];
+			}
+			for (int symbol = 0; symbol < symbolsNb; symbol++) {
+				int child = next[state][symbol];
+				if (child != 0) {
+					fail[child] = next[fail[state]][symbol];
+					queue[tail++] = child;
+				}
+				else {
+					next[state][symbol] = next[fail[state]][symbol];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The key-words
+	 */
+	private String[] keyWords;
+	/**
+	 * The symbol of each character of the key-words, by character
+	 */
+	private int[] symbols;
+	/**
+	 * The state following a state for each symbol
+	 */
+	private int[][] next;
+	/**
+	 * The key-word found when reaching a state, -1 if none
+	 */
+	private int[] keyWordFound;
+
+	public String[] getKeyWords() {
+		return keyWords.clone();
+	}
+
+	/**
+	 * @return
+	 * 		The number of key-words
+	 */
+	public int size() {
+		return keyWords.length;
+	}
+
+	/**
+	 * Returns the index of a key-word.
+	 * @param keyWord
+	 * 		The key-word
+	 * @return
+	 * 		Its index, -1 if it isn't one of the key-words
+	 */
+	public int indexOf(String keyWord) {
+		for (int k = 0; k < keyWords.length; k++) {
+			if (keyWords[k].equals(keyWord)) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the next key-word of a text.
+	 * @param text
+	 * 		The text
+	 * @param from
+	 * 		The offset where the search starts, the end of the last key-word found
+	 * @param bounds
+	 * 		Receives the offset of the key-word found and the offset following it
+	 * @return
+	 * 		The index of the key-word found, -1 if there are no more key-words in the text
+	 */
+	public int find(String text, int from, int[] bounds) {
+
+		int state = 0;
+		for (int i = from; i < text.length(); i++) {
+			char c = text.charAt(i);
+			state = next[state][c < symbols.length ? symbols[c] : 0];
+			int k = keyWordFound[state];
+			if (k != -1) {
+				bounds[0] = i + 1 - keyWords[k].length();
+				bounds[1] = i + 1;
+				return k;
+			}
+		}
+		return -1;
+	}
+
+}
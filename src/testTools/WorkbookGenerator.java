@@ -0,0 +1,508 @@
+package testTools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Writes synthetic input workbooks in the layout read by {@link xlsTransposer.MainXLS} :
+ * {@link WorkbookGenerator#linesToCopy} lines of titles, the header, then one line per serie with
+ * {@link WorkbookGenerator#serieNb} columns (a code, a label, a date, then texts), one value per period
+ * (yearly or yyyy_mm) and {@link WorkbookGenerator#rightNb} text columns.
+ * Some values are left blank, some have a comment with the SOURCE:/COMMENT:/STATUT: key-words.
+ * The same seed and parameters always give the same workbook, so that a benchmark can be run again on it
+ * and production-scale inputs can be reproduced without sharing the real files.
+ * A .xls is built in memory (65,536 rows and 256 columns at most), a .xlsx is streamed.
+ * Usage : <code>WorkbookGenerator outputFile [-seed n] [-rows n] [-periods n] [-monthly] [-firstYear yyyy]
+ * [-linesToCopy n] [-serieNb n] [-right n] [-blanks ratio] [-comments density] [-suppression rows]</code>
+ * @author hamme
+ *
+ */
+public class WorkbookGenerator {
+
+	public static final String USAGE = "Usage : WorkbookGenerator outputFile.xls|outputFile.xlsx [-seed n] [-rows n] [-periods n] [-monthly] [-firstYear yyyy]\n"
+			+ "        [-linesToCopy n] [-serieNb n] [-right n] [-blanks ratio] [-comments density] [-suppression rows]";
+
+	/**
+	 * The key-words of the comments, with the texts that can follow them
+	 */
+	private static final String[] KEY_WORDS = {"SOURCE:", "COMMENT:", "STATUT:"};
+	private static final String[][] KEY_WORD_TEXTS = {
+			{" INSEE", " Eurostat", " Banque de France", " OCDE", " DARES"},
+			{" estimated", " revised", " break in the serie", " provisional figure, revised twice", " see the note"},
+			{" provisoire", " definitive", " semi-definitive", " estimated"}};
+	/**
+	 * The texts of the comments without key-word
+	 */
+	private static final String[] FREE_TEXTS = {"free text", "checked by the team", "to be confirmed"};
+	/**
+	 * The number of shapes, so of comments, of the drawing of a .xls sheet
+	 */
+	private static final int MAX_XLS_COMMENTS = 65535;
+
+	public static void main(String[] args) {
+
+		WorkbookGenerator generator;
+		try {
+			generator = parse(args);
+			generator.check();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(USAGE);
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		try {
+			generator.write(generator.getOutputFile());
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Can't write " + generator.getOutputFile() + " : " + e.getMessage());
+			return;
+		}
+		System.out.println(String.format("%s written in %.1f s : %d rows x %d periods%s.", generator.getOutputFile(),
+				(System.currentTimeMillis() - start) / 1000.0, generator.getRows(), generator.getPeriods(),
+				generator.getSuppressionRows() > 0 ? ", suppression sheet of " + generator.getSuppressionRows() + " rows" : ""));
+	}
+
+	/**
+	 * The file to write, .xls or .xlsx
+	 */
+	private File outputFile;
+
+	public File getOutputFile() {
+		return outputFile;
+	}
+
+	public void setOutputFile(File outputFile) {
+		this.outputFile = outputFile;
+	}
+
+	/**
+	 * The seed of the random values
+	 */
+	private long seed = 1;
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The number of series (lines after the header) of the data sheet
+	 */
+	private int rows = 1000;
+
+	public int getRows() {
+		return rows;
+	}
+
+	public void setRows(int rows) {
+		this.rows = rows;
+	}
+
+	/**
+	 * The number of periods
+	 */
+	private int periods = 20;
+
+	public int getPeriods() {
+		return periods;
+	}
+
+	public void setPeriods(int periods) {
+		this.periods = periods;
+	}
+
+	/**
+	 * true for yyyy_mm periods, false for years
+	 */
+	private boolean monthly = false;
+
+	public boolean isMonthly() {
+		return monthly;
+	}
+
+	public void setMonthly(boolean monthly) {
+		this.monthly = monthly;
+	}
+
+	/**
+	 * The year of the first period
+	 */
+	private int firstYear = 2000;
+
+	public int getFirstYear() {
+		return firstYear;
+	}
+
+	public void setFirstYear(int firstYear) {
+		this.firstYear = firstYear;
+	}
+
+	/**
+	 * The number of lines of titles above the header
+	 */
+	private int linesToCopy = 2;
+
+	public int getLinesToCopy() {
+		return linesToCopy;
+	}
+
+	public void setLinesToCopy(int linesToCopy) {
+		this.linesToCopy = linesToCopy;
+	}
+
+	/**
+	 * The number of columns before the periods
+	 */
+	private int serieNb = 3;
+
+	public int getSerieNb() {
+		return serieNb;
+	}
+
+	public void setSerieNb(int serieNb) {
+		this.serieNb = serieNb;
+	}
+
+	/**
+	 * The number of text columns after the periods
+	 */
+	private int rightNb = 2;
+
+	public int getRightNb() {
+		return rightNb;
+	}
+
+	public void setRightNb(int rightNb) {
+		this.rightNb = rightNb;
+	}
+
+	/**
+	 * The part of the values left blank, between 0 and 1
+	 */
+	private double blankRatio = 0.1;
+
+	public double getBlankRatio() {
+		return blankRatio;
+	}
+
+	public void setBlankRatio(double blankRatio) {
+		this.blankRatio = blankRatio;
+	}
+
+	/**
+	 * The part of the values having a comment, between 0 and 1
+	 */
+	private double commentDensity = 0.01;
+
+	public double getCommentDensity() {
+		return commentDensity;
+	}
+
+	public void setCommentDensity(double commentDensity) {
+		this.commentDensity = commentDensity;
+	}
+
+	/**
+	 * The number of series of the "suppression" sheet, 0 for no such sheet
+	 */
+	private int suppressionRows = 0;
+
+	public int getSuppressionRows() {
+		return suppressionRows;
+	}
+
+	public void setSuppressionRows(int suppressionRows) {
+		this.suppressionRows = suppressionRows;
+	}
+
+	/**
+	 * Checks that the workbook fits in its format.
+	 * @throws IllegalArgumentException
+	 * 		If a parameter is out of its bounds
+	 */
+	public void check() {
+		if (outputFile == null) {
+			throw new IllegalArgumentException("No output file");
+		}
+		SpreadsheetVersion version = isXlsx() ? SpreadsheetVersion.EXCEL2007 : SpreadsheetVersion.EXCEL97;
+		String format = isXlsx() ? "A .xlsx" : "A .xls";
+		if (rows < 1 || periods < 1 || serieNb < 1 || rightNb < 0 || linesToCopy < 0 || suppressionRows < 0) {
+			throw new IllegalArgumentException("The numbers of rows, periods and columns must be positive");
+		}
+		if (linesToCopy + 1 + Math.max(rows, suppressionRows) > version.getMaxRows()) {
+			throw new IllegalArgumentException(format + " sheet can't have more than " + version.getMaxRows() + " rows");
+		}
+		if (serieNb + periods + rightNb > version.getMaxColumns()) {
+			throw new IllegalArgumentException(format + " sheet can't have more than " + version.getMaxColumns() + " columns");
+		}
+		if (blankRatio < 0 || blankRatio > 1 || commentDensity < 0 || commentDensity > 1) {
+			throw new IllegalArgumentException("The blank ratio and the comment density must be between 0 and 1");
+		}
+		// The comments are drawn at random : a few standard deviations over the expected number, so that
+		// the limit of a .xls sheet isn't reached by chance
+		double comments = (double) Math.max(rows, suppressionRows) * periods * (1 - blankRatio) * commentDensity;
+		if (!isXlsx() && comments + 4 * Math.sqrt(comments) > MAX_XLS_COMMENTS) {
+			throw new IllegalArgumentException(String.format("A .xls sheet can't have more than %d comments (about %.0f expected) :"
+					+ " lower the rows, the periods or the comment density, or write a .xlsx", MAX_XLS_COMMENTS, comments));
+		}
+		int lastYear = monthly ? firstYear + (periods - 1) / 12 : firstYear + periods - 1;
+		if (firstYear < 0 || lastYear > 9999) {
+			throw new IllegalArgumentException("The periods must be between the years 0 and 9999");
+		}
+	}
+
+	/**
+	 * @return
+	 * 		true if the output file is a .xlsx
+	 */
+	private boolean isXlsx() {
+		return outputFile.getName().toLowerCase().endsWith(".xlsx");
+	}
+
+	/**
+	 * Writes the workbook in {@link WorkbookGenerator#outputFile}.
+	 * @param file
+	 * 		The file, .xls or .xlsx
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	public void write(File file) throws IOException {
+
+		boolean xlsx = file.getName().toLowerCase().endsWith(".xlsx");
+		Workbook workbook = xlsx ? new SXSSFWorkbook(1000) : new HSSFWorkbook();
+		try {
+			fill(workbook);
+			OutputStream out = new FileOutputStream(file);
+			try {
+				workbook.write(out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			if (xlsx) {
+				((SXSSFWorkbook) workbook).dispose();
+			}
+			workbook.close();
+		}
+	}
+
+	/**
+	 * Creates the sheets in a workbook : "data", and "suppression" if {@link WorkbookGenerator#suppressionRows} isn't 0.
+	 * @param workbook
+	 * 		An empty workbook
+	 */
+	public void fill(Workbook workbook) {
+		Random random = new Random(seed);
+		fillSheet(workbook, workbook.createSheet("data"), rows, random);
+		if (suppressionRows > 0) {
+			fillSheet(workbook, workbook.createSheet("suppression"), suppressionRows, random);
+		}
+	}
+
+	/**
+	 * Fills a sheet.
+	 * @param workbook
+	 * 		The workbook of the sheet
+	 * @param sheet
+	 * 		The sheet
+	 * @param seriesNb
+	 * 		The number of series
+	 * @param random
+	 * 		The random values
+	 */
+	private void fillSheet(Workbook workbook, Sheet sheet, int seriesNb, Random random) {
+
+		CreationHelper helper = workbook.getCreationHelper();
+		Drawing drawing = commentDensity > 0 ? sheet.createDrawingPatriarch() : null;
+		CellStyle dateStyle = workbook.createCellStyle();
+		dateStyle.setDataFormat(helper.createDataFormat().getFormat("yyyy-mm-dd"));
+
+		// The lines of titles
+		for (int i = 0; i < linesToCopy; i++) {
+			sheet.createRow(i).createCell(0).setCellValue(i == 0 ? "Title " + sheet.getSheetName() : "generated with seed " + seed);
+		}
+
+		// The header
+		Row header = sheet.createRow(linesToCopy);
+		for (int i = 0; i < serieNb; i++) {
+			header.createCell(i).setCellValue(i == 0 ? "code" : i == 1 ? "label" : i == 2 ? "date" : "serie_" + i);
+		}
+		for (int i = 0; i < periods; i++) {
+			Cell period = header.createCell(serieNb + i);
+			if (monthly) {
+				period.setCellValue(String.format("%d_%02d", firstYear + i / 12, i % 12 + 1));
+			}
+			else {
+				period.setCellValue(firstYear + i);
+			}
+		}
+		for (int i = 0; i < rightNb; i++) {
+			header.createCell(serieNb + periods + i).setCellValue(i == 0 ? "unit" : i == 1 ? "note" : "right_" + i);
+		}
+
+		// The series
+		for (int j = 0; j < seriesNb; j++) {
+
+			Row row = sheet.createRow(linesToCopy + 1 + j);
+			for (int i = 0; i < serieNb; i++) {
+				Cell cell = row.createCell(i);
+				if (i == 0) {
+					cell.setCellValue(j);
+				}
+				else if (i == 2) {
+					cell.setCellValue(40179 + random.nextInt(3650));
+					cell.setCellStyle(dateStyle);
+				}
+				else {
+					cell.setCellValue("serie " + j + (i == 1 ? "" : "." + i));
+				}
+			}
+
+			for (int i = 0; i < periods; i++) {
+				if (random.nextDouble() < blankRatio) {
+					// A blank value is either a missing cell or a blank one
+					if (random.nextBoolean()) {
+						row.createCell(serieNb + i);
+					}
+					continue;
+				}
+				Cell cell = row.createCell(serieNb + i);
+				cell.setCellValue(Math.round(random.nextDouble() * 100000) / 100.0);
+				if (random.nextDouble() < commentDensity) {
+					ClientAnchor anchor = helper.createClientAnchor();
+					anchor.setCol1(serieNb + i);
+					anchor.setRow1(row.getRowNum());
+					anchor.setCol2(serieNb + i + 2);
+					anchor.setRow2(row.getRowNum() + 3);
+					Comment comment = drawing.createCellComment(anchor);
+					comment.setString(helper.createRichTextString(commentText(random)));
+					cell.setCellComment(comment);
+				}
+			}
+
+			for (int i = 0; i < rightNb; i++) {
+				row.createCell(serieNb + periods + i).setCellValue(i == 0 ? "EUR" : "n" + random.nextInt(10));
+			}
+		}
+	}
+
+	/**
+	 * Draws the text of a comment : some of the key-words, in any order, each one followed by its text,
+	 * or a text without key-word.
+	 * @param random
+	 * 		The random values
+	 * @return
+	 * 		The text
+	 */
+	private static String commentText(Random random) {
+
+		StringBuilder text = new StringBuilder();
+		int first = random.nextInt(KEY_WORDS.length);
+		for (int i = 0; i < KEY_WORDS.length; i++) {
+			int k = (first + i) % KEY_WORDS.length;
+			if (random.nextBoolean()) {
+				text.append(text.length() == 0 ? "" : " ").append(KEY_WORDS[k]);
+				text.append(KEY_WORD_TEXTS[k][random.nextInt(KEY_WORD_TEXTS[k].length)]);
+			}
+		}
+		if (text.length() == 0) {
+			text.append(FREE_TEXTS[random.nextInt(FREE_TEXTS.length)]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Reads the parameters of the generator from the arguments of the command line.
+	 * @param args
+	 * 		The arguments : the output file and the options
+	 * @return
+	 * 		The generator
+	 * @throws IllegalArgumentException
+	 * 		If an option is unknown or misses its value
+	 */
+	public static WorkbookGenerator parse(String[] args) {
+
+		WorkbookGenerator g = new WorkbookGenerator();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-seed":
+				g.setSeed(Long.parseLong(value(args, ++i)));
+				break;
+			case "-rows":
+				g.setRows(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-periods":
+				g.setPeriods(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-monthly":
+				g.setMonthly(true);
+				break;
+			case "-firstYear":
+				g.setFirstYear(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-linesToCopy":
+				g.setLinesToCopy(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-serieNb":
+				g.setSerieNb(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-right":
+				g.setRightNb(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-blanks":
+				g.setBlankRatio(Double.parseDouble(value(args, ++i)));
+				break;
+			case "-comments":
+				g.setCommentDensity(Double.parseDouble(value(args, ++i)));
+				break;
+			case "-suppression":
+				g.setSuppressionRows(Integer.parseInt(value(args, ++i)));
+				break;
+			default:
+				if (args[i].startsWith("-") || g.getOutputFile() != null) {
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+				g.setOutputFile(new File(args[i]));
+				break;
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * Returns the value following an option.
+	 * @param args
+	 * 		The arguments of the command line
+	 * @param i
+	 * 		The index of the value
+	 * @return
+	 * 		The value
+	 */
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for option " + args[i - 1]);
+		}
+		return args[i];
+	}
+
+}
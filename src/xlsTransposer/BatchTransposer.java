@@ -0,0 +1,252 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Transposes many files in one run, {@link Parameters#getThreads()} files at the same time.
+ * The inputs are files, directories (all their .xls and .xlsx files, but the outputs) or globs on the file name (data/*_2017.xls).
+ * A file that fails is cancelled alone, the others go on. A summary is printed at the end,
+ * with the throughput of the whole batch.
+ * @author hamme
+ *
+ */
+public class BatchTransposer {
+
+	/**
+	 * Constructor
+	 * @param params
+	 * 		The parameters of the batch, used for each file
+	 */
+	public BatchTransposer(Parameters params) {
+		this.params = params;
+	}
+
+	/**
+	 * The parameters of the batch, used for each file
+	 */
+	private Parameters params;
+
+	/**
+	 * Lists the files to transpose.
+	 * A file given twice (by a directory and a glob for example) is only kept once.
+	 * Two files with the same output (a.xls and a.xlsx, both written in aTransposed.xlsx) fail the batch,
+	 * as they would be written at the same time.
+	 * @return
+	 * 		The names of the files, in the order of the inputs
+	 * @throws IOException
+	 * 		If a directory can't be read, or two files have the same output
+	 */
+	public List<String> listFiles() throws IOException {
+
+		Set<String> files = new LinkedHashSet<String>();
+		// The workbooks written by a previous run
+		String outputSuffix = params.isUntranspose() ? "Untransposed.xlsx" : "Transposed.xlsx";
+
+		for (String input : params.getInputs()) {
+
+			File file = new File(input);
+			// A directory : all its .xls and .xlsx files, but the outputs of a previous run
+			if (file.isDirectory()) {
+				addFiles(files, file.toPath(), "*.{xls,xlsx}", outputSuffix);
+			}
+			// A glob on the file name
+			else if (input.contains("*") || input.contains("?") || input.contains("[") || input.contains("{")) {
+				Path parent = Paths.get(input).getParent();
+				addFiles(files, parent == null ? Paths.get(".") : parent, Paths.get(input).getFileName().toString(), outputSuffix);
+			}
+			// A file, even if it doesn't exist : it will be reported as not found
+			else {
+				files.add(input);
+			}
+		}
+
+		// The same file named in two ways is only kept once too
+		List<String> listed = new ArrayList<String>();
+		Map<String, String> outputs = new HashMap<String, String>();
+		for (String file : files) {
+			String output = params.isUntranspose() ? MainXLS.getUntransposedName(file) : MainXLS.getOutputName(file);
+			String other = outputs.put(new File(output).getCanonicalPath(), file);
+			if (other == null) {
+				listed.add(file);
+			}
+			else if (!new File(other).getCanonicalPath().equals(new File(file).getCanonicalPath())) {
+				throw new IOException(other + " and " + file + " would both be written in " + output);
+			}
+		}
+		return listed;
+	}
+
+	/**
+	 * Adds the files of a directory matching a glob, sorted by name, but the outputs.
+	 * @param files
+	 * 		The list to add them to
+	 * @param directory
+	 * 		The directory
+	 * @param glob
+	 * 		The glob
+	 * @param outputSuffix
+	 * 		The end of the names of the outputs
+	 * @throws IOException
+	 * 		If the directory can't be read
+	 */
+	private static void addFiles(Set<String> files, Path directory, String glob, String outputSuffix) throws IOException {
+
+		List<String> found = new ArrayList<String>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob);
+		try {
+			for (Path p : stream) {
+				// An output isn't transposed again
+				// Nor the continuation files of an output (see SplittingSink)
+				String name = p.getFileName().toString();
+				if (Files.isRegularFile(p) && !name.endsWith(outputSuffix) && !name.matches(".*Transposed_.*_[0-9]+\\.xlsx")) {
+					found.add(p.toString());
+				}
+			}
+		} finally {
+			stream.close();
+		}
+		Collections.sort(found);
+		files.addAll(found);
+	}
+
+	/**
+	 * Transposes all the files and prints the summary.
+	 * @return
+	 * 		The result of each file, in the order of {@link BatchTransposer#listFiles()}
+	 */
+	public List<TranspositionResult> run() {
+
+		List<TranspositionResult> results = new ArrayList<TranspositionResult>();
+		List<String> files;
+		try {
+			files = listFiles();
+		} catch (IOException e) {
+			System.out.println("Can't list the files of the batch : " + e.getMessage());
+			return results;
+		}
+
+		long start = System.currentTimeMillis();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(params.getThreads(), Math.max(files.size(), 1)));
+		List<Future<TranspositionResult>> futures = new ArrayList<Future<TranspositionResult>>();
+
+		for (final String file : files) {
+			futures.add(pool.submit(new Callable<TranspositionResult>() {
+				@Override
+				public TranspositionResult call() {
+					return transposeOne(file);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				// transposeOne catches everything, only an Error gets here
+				TranspositionResult failed = new TranspositionResult(files.get(i), MainXLS.getOutputName(files.get(i)));
+				failed.setError(new Exception(e.getCause()));
+				results.add(failed);
+			}
+		}
+
+		printSummary(results, System.currentTimeMillis() - start);
+		return results;
+	}
+
+	/**
+	 * Transposes one file, catching anything that goes wrong so that the other files aren't affected.
+	 * @param file
+	 * 		The name of the file
+	 * @return
+	 * 		The result, holding the exception if the transposition was cancelled
+	 */
+	private TranspositionResult transposeOne(String file) {
+
+		long start = System.currentTimeMillis();
+		try {
+			return MainXLS.transpose(file, params);
+		} catch (Exception e) {
+			MainXLS.reportFailure(file, e);
+			TranspositionResult failed = new TranspositionResult(file, MainXLS.getOutputName(file));
+			failed.setError(e);
+			failed.setDuration(System.currentTimeMillis() - start);
+			return failed;
+		}
+	}
+
+	/**
+	 * Prints the summary of the batch, and writes it in {@link Parameters#getSummaryName()} (one line per file)
+	 * if there is one.
+	 * @param results
+	 * 		The result of each file
+	 * @param duration
+	 * 		The time the whole batch took, in milliseconds
+	 */
+	private void printSummary(List<TranspositionResult> results, long duration) {
+
+		int succeeded = 0;
+		int cached = 0;
+		long readLines = 0;
+		long writtenLines = 0;
+		for (TranspositionResult r : results) {
+			// The rows of a file skipped thanks to the cache weren't read this time : they aren't in the throughput
+			if (r.isSuccess() && r.isCached()) {
+				cached++;
+			}
+			else if (r.isSuccess()) {
+				succeeded++;
+				readLines += r.getReadLinesNb();
+				writtenLines += r.getWrittenLinesNb();
+			}
+		}
+		double seconds = Math.max(duration, 1) / 1000.0;
+
+		System.out.println(String.format("Batch done in %.1f s : %d file(s) transposed, %d unchanged since the cache, %d cancelled, %d threads.",
+				seconds, succeeded, cached, results.size() - succeeded - cached, params.getThreads()));
+		System.out.println(String.format("Throughput : %.2f files/s, %.0f input rows/s, %.0f output rows/s.",
+				succeeded / seconds, readLines / seconds, writtenLines / seconds));
+		System.out.println(params.getCommentCache().getReport());
+		if (params.isPhaseTable()) {
+			System.out.println(params.getPhaseTimes().getReport());
+		}
+		MainXLS.saveResultCache(params);
+
+		if (params.getSummaryName() != null) {
+			try {
+				PrintWriter summary = new PrintWriter(params.getSummaryName(), "UTF-8");
+				summary.println("input;output;status;inputRows;outputRows;milliseconds;error");
+				for (TranspositionResult r : results) {
+					summary.println(r.getInputName() + ";" + r.getOutputName() + ";" + (!r.isSuccess() ? "CANCELLED" : r.isCached() ? "CACHED" : "OK") + ";"
+							+ r.getReadLinesNb() + ";" + r.getWrittenLinesNb() + ";" + r.getDuration() + ";"
+							+ (r.isSuccess() ? "" : String.valueOf(r.getError())));
+				}
+				summary.close();
+			} catch (IOException e) {
+				System.out.println("Can't write the summary in " + params.getSummaryName() + " : " + e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package xlsTransposer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * The styles of an output workbook, one per format : all the cells having the same format share one style
+ * instead of each one creating its own (a workbook is limited to 64,000 styles).
+ * Shared by the sheets of the workbook, which can be written by several threads.
+ * @author hamme
+ *
+ */
+public class CellStylePool {
+
+	/**
+	 * Constructor
+	 * @param workbook
+	 * 		The output workbook
+	 */
+	public CellStylePool(Workbook workbook) {
+		this.workbook = workbook;
+	}
+
+	/**
+	 * The output workbook
+	 */
+	private Workbook workbook;
+	/**
+	 * The styles, by format string
+	 */
+	private Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
+
+	/**
+	 * Returns the style of a format, created the first time.
+	 * @param format
+	 * 		The format string, as read in the input
+	 * @return
+	 * 		The style
+	 */
+	public synchronized CellStyle getStyle(String format) {
+		CellStyle style = styles.get(format);
+		if (style == null) {
+			style = workbook.createCellStyle();
+			style.setDataFormat(workbook.createDataFormat().getFormat(format));
+			styles.put(format, style);
+		}
+		return style;
+	}
+
+}
@@ -0,0 +1,232 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Where the transposition of a sheet into a text file ({@link CsvSink}) was, saved in a file next to the output
+ * every few seconds : the next input line, the next output row, the blank values skipped so far, the counters
+ * and the length of the output up to the last line written. A run killed on the way can then be resumed
+ * (<code>-resume</code>) : the output is cut at the saved length and the body goes on from the saved input line.
+ * Once the body is written, the checkpoint says the sheet is done, so that it is skipped if another sheet
+ * of the file has to be resumed. The checkpoints of a file are deleted when the whole file is done.
+ * A checkpoint is only used with the same input (same length and date) as when it was saved.
+ * @author hamme
+ *
+ */
+public class Checkpoint {
+
+	/**
+	 * Constructor
+	 * @param file
+	 * 		The file of the checkpoint
+	 * @param input
+	 * 		The input file transposed
+	 */
+	public Checkpoint(File file, File input) {
+		this.file = file;
+		this.input = input;
+	}
+
+	/**
+	 * The file of the checkpoint
+	 */
+	private File file;
+	/**
+	 * The input file transposed
+	 */
+	private File input;
+	/**
+	 * The sink whose length is saved
+	 */
+	private CsvSink sink;
+	/**
+	 * True if the state was read from the file
+	 */
+	private boolean loaded;
+	/**
+	 * True once the body of the sheet is written
+	 */
+	private boolean done;
+	/**
+	 * The next input line to transpose
+	 */
+	private int inputLine;
+	/**
+	 * The row of the first output line of {@link Checkpoint#inputLine}
+	 */
+	private int outputRow;
+	private int deletedValuesNb;
+	private int readLinesNb;
+	private int writtenLinesNb;
+	private int writtenCommentsNb;
+	/**
+	 * The length of the output up to the last line written
+	 */
+	private long outputLength;
+	/**
+	 * The number of fields of the lines of the output
+	 */
+	private int outputWidth;
+
+	/**
+	 * Returns the file of the checkpoint of an output.
+	 * @param output
+	 * 		The output file
+	 * @return
+	 * 		The file of its checkpoint
+	 */
+	public static File fileOf(File output) {
+		return new File(output.getPath() + ".checkpoint");
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public CsvSink getSink() {
+		return sink;
+	}
+
+	public void setSink(CsvSink sink) {
+		this.sink = sink;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	public int getInputLine() {
+		return inputLine;
+	}
+
+	public int getOutputRow() {
+		return outputRow;
+	}
+
+	public int getDeletedValuesNb() {
+		return deletedValuesNb;
+	}
+
+	public int getReadLinesNb() {
+		return readLinesNb;
+	}
+
+	public int getWrittenLinesNb() {
+		return writtenLinesNb;
+	}
+
+	public int getWrittenCommentsNb() {
+		return writtenCommentsNb;
+	}
+
+	public long getOutputLength() {
+		return outputLength;
+	}
+
+	public int getOutputWidth() {
+		return outputWidth;
+	}
+
+	/**
+	 * Reads the checkpoint saved by a previous run, if there is one for the same input.
+	 * @return
+	 * 		true if the transposition can be resumed from it
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public boolean load() throws IOException {
+
+		if (!file.exists()) {
+			return false;
+		}
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			p.load(in);
+		} finally {
+			in.close();
+		}
+		if (Long.parseLong(p.getProperty("inputLength", "-1")) != input.length()
+				|| Long.parseLong(p.getProperty("inputModified", "-1")) != input.lastModified()) {
+			System.out.println("The input " + input.getName() + " changed since " + file.getName() + " was saved : starting over.");
+			return false;
+		}
+		done = Boolean.parseBoolean(p.getProperty("done"));
+		inputLine = Integer.parseInt(p.getProperty("inputLine"));
+		outputRow = Integer.parseInt(p.getProperty("outputRow"));
+		deletedValuesNb = Integer.parseInt(p.getProperty("deletedValuesNb"));
+		readLinesNb = Integer.parseInt(p.getProperty("readLinesNb"));
+		writtenLinesNb = Integer.parseInt(p.getProperty("writtenLinesNb"));
+		writtenCommentsNb = Integer.parseInt(p.getProperty("writtenCommentsNb"));
+		outputLength = Long.parseLong(p.getProperty("outputLength"));
+		outputWidth = Integer.parseInt(p.getProperty("outputWidth"));
+		loaded = true;
+		return true;
+	}
+
+	/**
+	 * Saves where a sheet couple is, once all the output lines of its last input line are written :
+	 * the lines are first written in the output, then the checkpoint replaces the previous one at once.
+	 * @param duo
+	 * 		The sheet couple
+	 * @param done
+	 * 		true if the body is written
+	 * @throws IOException
+	 * 		If the output or the checkpoint can't be written
+	 */
+	public void save(SheetCouple duo, boolean done) throws IOException {
+
+		this.done = done;
+		inputLine = duo.getNextInputLine();
+		outputRow = duo.getNextOutputRow();
+		deletedValuesNb = duo.getDeletedValuesNb();
+		readLinesNb = duo.getReadLinesNb();
+		writtenLinesNb = duo.getWrittenLinesNb();
+		writtenCommentsNb = duo.getWrittenCommentsNb();
+		outputLength = sink.flush();
+		outputWidth = sink.getWidth();
+
+		Properties p = new Properties();
+		p.setProperty("inputLength", String.valueOf(input.length()));
+		p.setProperty("inputModified", String.valueOf(input.lastModified()));
+		p.setProperty("sheet", duo.getSheetName());
+		p.setProperty("done", String.valueOf(done));
+		p.setProperty("inputLine", String.valueOf(inputLine));
+		p.setProperty("outputRow", String.valueOf(outputRow));
+		p.setProperty("deletedValuesNb", String.valueOf(deletedValuesNb));
+		p.setProperty("readLinesNb", String.valueOf(readLinesNb));
+		p.setProperty("writtenLinesNb", String.valueOf(writtenLinesNb));
+		p.setProperty("writtenCommentsNb", String.valueOf(writtenCommentsNb));
+		p.setProperty("outputLength", String.valueOf(outputLength));
+		p.setProperty("outputWidth", String.valueOf(outputWidth));
+
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			p.store(out, "Checkpoint of " + input.getName());
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the file of the checkpoint, once the whole input is transposed.
+	 */
+	public void delete() {
+		file.delete();
+	}
+
+}
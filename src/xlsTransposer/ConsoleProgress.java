@@ -0,0 +1,52 @@
+package xlsTransposer;
+
+/**
+ * Prints the progress of the sheets on the console, one line per call : the lines read and written,
+ * the blanks skipped, the comments written, the output lines per second and the time left.
+ * The time left is estimated from the output lines expected ({@link SheetCouple#getExpectedLinesNb()}),
+ * blanks included, so it is rather too long than too short.
+ * @author hamme
+ *
+ */
+public class ConsoleProgress implements ProgressListener {
+
+	@Override
+	public void progress(SheetCouple duo, long millis, boolean done) {
+
+		long written = duo.getWrittenLinesNb();
+		// Each value of the input is either written or skipped
+		long handled = written + duo.getDeletedValuesNb();
+		long expected = Math.max(duo.getExpectedLinesNb(), handled);
+		double seconds = Math.max(millis, 1) / 1000.0;
+		double rate = written / seconds;
+
+		StringBuilder line = new StringBuilder(String.format("%s : %d input lines, %d output lines, %d blanks skipped, %d comments, %.0f lines/s",
+				duo.getSheetName(), duo.getReadLinesNb(), written, duo.getDeletedValuesNb(), duo.getWrittenCommentsNb(), rate));
+		if (done) {
+			line.append(String.format(", done in %.1f s", seconds));
+		}
+		else if (expected > 0) {
+			double eta = handled == 0 ? 0 : (expected - handled) * seconds / handled;
+			line.append(String.format(", %.0f %%, %s left", 100.0 * handled / expected, handled == 0 ? "?" : format(eta)));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * @param seconds
+	 * 		A time
+	 * @return
+	 * 		The time in hours, minutes and seconds
+	 */
+	private static String format(double seconds) {
+		long s = Math.round(seconds);
+		if (s >= 3600) {
+			return String.format("%dh%02dm%02ds", s / 3600, s / 60 % 60, s % 60);
+		}
+		if (s >= 60) {
+			return String.format("%dm%02ds", s / 60, s % 60);
+		}
+		return s + "s";
+	}
+
+}
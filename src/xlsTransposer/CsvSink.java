@@ -0,0 +1,371 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Writes the output in a delimited text file (CSV or TSV, UTF-8), without any spreadsheet object.
+ * Each line is built in a buffer and encoded into a byte buffer written to the file channel
+ * when full, so the memory used doesn't depend on the size of the output.
+ * The cells of a row are written in increasing column order, the missing ones are left empty.
+ * The dates are written as "yyyy-MM-dd" (with the time if it isn't midnight), whatever their format.
+ * All the lines have as many fields as the first one written (the header).
+ * The rows before {@link CsvSink#firstRow} (the lines copied from the top of the input) are skipped,
+ * so the file starts with the header.
+ * A file can also be written in several times (see {@link Checkpoint}) : {@link CsvSink#flush()} writes
+ * the lines in the file and gives its length, from which another sink goes on.
+ * @author hamme
+ *
+ */
+public class CsvSink implements OutputSink {
+
+	/**
+	 * Constructor, opens the file.
+	 * @param file
+	 * 		The file to write in
+	 * @param delimiter
+	 * 		The delimiter of the cells : ',' or ';' for a CSV, '\t' for a TSV
+	 * @param firstRow
+	 * 		The first row written, the rows before being skipped
+	 * @throws IOException
+	 * 		If the file can't be opened
+	 */
+	public CsvSink(File file, char delimiter, int firstRow) throws IOException {
+		this.file = file;
+		this.channel = new FileOutputStream(file).getChannel();
+		this.delimiter = delimiter;
+		this.firstRow = firstRow;
+	}
+
+	/**
+	 * Constructor, goes on writing a file : cuts it at a length, the lines after it being written again.
+	 * @param file
+	 * 		The file to write in
+	 * @param delimiter
+	 * 		The delimiter of the cells
+	 * @param firstRow
+	 * 		The first row written, the rows before being already in the file
+	 * @param length
+	 * 		The length of the file up to the last line kept, given by {@link CsvSink#flush()}
+	 * @param width
+	 * 		The number of fields of the lines of the file, given by {@link CsvSink#getWidth()}
+	 * @throws IOException
+	 * 		If the file can't be opened or is shorter than the length
+	 */
+	@SuppressWarnings("resource")
+	public CsvSink(File file, char delimiter, int firstRow, long length, int width) throws IOException {
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+		if (channel.size() < length) {
+			channel.close();
+			throw new IOException(file.getName() + " is shorter than its checkpoint");
+		}
+		this.channel.truncate(length);
+		this.channel.position(length);
+		this.file = file;
+		this.startLength = length;
+		this.delimiter = delimiter;
+		this.firstRow = firstRow;
+		this.width = width;
+	}
+
+	/**
+	 * Size of the byte buffer written to the file.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The file
+	 */
+	private File file;
+	/**
+	 * The length of the file when it is gone on with, -1 for a new file
+	 */
+	private long startLength = -1;
+	/**
+	 * The channel of the file
+	 */
+	private FileChannel channel;
+	/**
+	 * The bytes waiting to be written in the file
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/**
+	 * Encodes the lines in UTF-8
+	 */
+	private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	/**
+	 * The delimiter of the cells
+	 */
+	private char delimiter;
+	/**
+	 * The first row written
+	 */
+	private int firstRow;
+	/**
+	 * The current line, not yet encoded
+	 */
+	private StringBuilder line = new StringBuilder(256);
+	/**
+	 * The characters of the line being encoded, reused from one line to the next
+	 */
+	private CharBuffer chars = CharBuffer.allocate(256);
+	/**
+	 * The number of the current row, -1 before the first one
+	 */
+	private int currentRow = -1;
+	/**
+	 * The field of the line the delimiters have been written up to
+	 */
+	private int column;
+	/**
+	 * True if the {@link CsvSink#column} field has been written
+	 */
+	private boolean written;
+	/**
+	 * The number of fields of the first line written, 0 before it
+	 */
+	private int width;
+	/**
+	 * Writes the dates
+	 */
+	private DateText dateText = new DateText();
+
+	@Override
+	public void createRow(int rowId) {
+		endLine();
+		currentRow = rowId;
+		column = 0;
+		written = false;
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		moveTo(columnId);
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		if (moveTo(columnId)) {
+			// Whole numbers are written without decimals
+			if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+				line.append((long) value);
+			}
+			else {
+				line.append(value);
+			}
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		if (moveTo(columnId)) {
+			line.append(dateText.format(value));
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		if (moveTo(columnId)) {
+			appendText(value);
+		}
+	}
+
+	/**
+	 * Only the current row can be written.
+	 */
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		if (rowId != currentRow) {
+			throw new IllegalStateException("Row " + rowId + " has already been written");
+		}
+		setValue(columnId, value);
+	}
+
+	/**
+	 * @return
+	 * 		The number of fields of the lines, 0 before the first one is written
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Ends the current row, which can't be written anymore, and writes all the lines in the file, on the disk.
+	 * @return
+	 * 		The length of the file
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	public long flush() throws IOException {
+		endLine();
+		currentRow = -1;
+		drain();
+		channel.force(false);
+		return channel.position();
+	}
+
+	/**
+	 * Starts the file over, before anything was written : a file whose end was to be written (see {@link OutputLayout})
+	 * is written whole after all.
+	 * @param firstRow
+	 * 		The first row written, the rows before being skipped
+	 * @throws IOException
+	 * 		If the file can't be cut
+	 */
+	public void restart(int firstRow) throws IOException {
+		channel.truncate(0);
+		channel.position(0);
+		buffer.clear();
+		line.setLength(0);
+		this.firstRow = firstRow;
+		this.currentRow = -1;
+		this.width = 0;
+	}
+
+	/**
+	 * Writes the last line and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			endLine();
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Drops the lines not written yet and deletes the file, or cuts it back to its length when it was gone on with.
+	 */
+	@Override
+	public void abort() throws IOException {
+		try {
+			if (startLength >= 0) {
+				channel.truncate(startLength);
+			}
+		} finally {
+			channel.close();
+		}
+		if (startLength < 0) {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * Writes a number as a text, without decimals if it is a whole number.
+	 * @param value
+	 * 		The number
+	 * @return
+	 * 		The text
+	 */
+	static String formatNumber(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Adds the delimiters up to a column of the current line.
+	 * @param columnId
+	 * 		The column
+	 * @return
+	 * 		false if the row is skipped
+	 */
+	private boolean moveTo(int columnId) {
+		if (currentRow < firstRow) {
+			return false;
+		}
+		if (columnId < column || (columnId == column && written)) {
+			throw new IllegalStateException("Column " + columnId + " written after column " + column);
+		}
+		for (; column < columnId; column++) {
+			line.append(delimiter);
+		}
+		written = true;
+		return true;
+	}
+
+	/**
+	 * Appends a text to the line, between quotes if it contains a delimiter, a quote or a line break.
+	 * @param text
+	 * 		The text
+	 */
+	private void appendText(String text) {
+		boolean quote = false;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			char c = text.charAt(i);
+			quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			line.append(text);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+
+	/**
+	 * Encodes the current line (if it isn't skipped) into the buffer.
+	 */
+	private void endLine() {
+		if (currentRow < firstRow) {
+			return;
+		}
+		if (width == 0) {
+			width = column + 1;
+		}
+		// Padding the line to the width of the header
+		for (; column < width - 1; column++) {
+			line.append(delimiter);
+		}
+		line.append('\n');
+		if (chars.capacity() < line.length()) {
+			chars = CharBuffer.allocate(2 * line.length());
+		}
+		chars.clear();
+		line.getChars(0, line.length(), chars.array(), 0);
+		chars.limit(line.length());
+		while (encoder.encode(chars, buffer, false) == CoderResult.OVERFLOW) {
+			drain();
+		}
+		line.setLength(0);
+	}
+
+	/**
+	 * Writes the buffer in the file.
+	 */
+	private void drain() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,76 @@
+package xlsTransposer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Remembers, for each format index of a workbook, if it is a date format.
+ * {@link DateUtil#isCellDateFormatted(Cell)} parses the format string of the cell each time it is called,
+ * once per period for each cell of the left header : here it is parsed once per format.
+ * Can be shared by the threads reading the sheets of a workbook : a decision written by one thread
+ * is the same as the one another thread would have written.
+ * @author hamme
+ *
+ */
+public class DateFormatCache {
+
+	/**
+	 * The caches of the workbooks, one per workbook
+	 */
+	private static final Map<Workbook, DateFormatCache> caches = new WeakHashMap<Workbook, DateFormatCache>();
+
+	/**
+	 * Returns the cache of a workbook, created the first time.
+	 * @param workbook
+	 * 		The workbook
+	 * @return
+	 * 		Its cache
+	 */
+	public static synchronized DateFormatCache forWorkbook(Workbook workbook) {
+		DateFormatCache cache = caches.get(workbook);
+		if (cache == null) {
+			cache = new DateFormatCache();
+			caches.put(workbook, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Decisions taken for a format index
+	 */
+	private static final byte UNKNOWN = 0;
+	private static final byte DATE = 1;
+	private static final byte NOT_DATE = 2;
+
+	/**
+	 * The decision for each format index (an unsigned short)
+	 */
+	private final byte[] decisions = new byte[1 << 16];
+
+	/**
+	 * Checks if a numeric cell is a date, like {@link DateUtil#isCellDateFormatted(Cell)}.
+	 * @param cell
+	 * 		The numeric cell
+	 * @return
+	 * 		true if its format is a date format and its value a valid date
+	 */
+	public boolean isDate(Cell cell) {
+		CellStyle style = cell.getCellStyle();
+		if (style == null) {
+			return false;
+		}
+		int index = style.getDataFormat() & 0xFFFF;
+		byte decision = decisions[index];
+		if (decision == UNKNOWN) {
+			decision = DateUtil.isADateFormat(index, style.getDataFormatString()) ? DATE : NOT_DATE;
+			decisions[index] = decision;
+		}
+		return decision == DATE && DateUtil.isValidExcelDate(cell.getNumericCellValue());
+	}
+
+}
@@ -0,0 +1,47 @@
+package xlsTransposer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Writes dates as texts : "yyyy-MM-dd", followed by the time if it isn't midnight.
+ * The last date written is remembered, as it is usually written again for each period of a line.
+ * One per sink : it can't be shared between threads.
+ * @author hamme
+ *
+ */
+class DateText {
+
+	/**
+	 * The format of the dates
+	 */
+	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	/**
+	 * The time of the last date written, its text being {@link DateText#lastText}
+	 */
+	private long lastTime;
+	/**
+	 * The text of the last date written, null before the first one
+	 */
+	private String lastText;
+
+	/**
+	 * @param value
+	 * 		The date
+	 * @return
+	 * 		The date as a text
+	 */
+	String format(Date value) {
+		if (lastText == null || value.getTime() != lastTime) {
+			String date = dateFormat.format(value);
+			// A date at midnight is written without time
+			if (date.endsWith(" 00:00:00")) {
+				date = date.substring(0, date.length() - 9);
+			}
+			lastTime = value.getTime();
+			lastText = date;
+		}
+		return lastText;
+	}
+
+}
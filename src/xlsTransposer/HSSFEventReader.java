@@ -0,0 +1,529 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.CommonObjectDataSubRecord;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NoteRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.ObjRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.record.SubRecord;
+import org.apache.poi.hssf.record.TextObjectRecord;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * Reads one sheet of a .xls file with the event model (record by record) instead of loading
+ * the whole HSSFWorkbook. The other sheets are never decoded : the workbook globals (the formats,
+ * the shared strings and the positions of the sheets) are read first, then the reading jumps
+ * to the first record of the sheet ({@link BoundSheetRecord#getPositionOfBof()}).
+ * The records are pulled only when a row is asked for : the decoded rows are put in a small
+ * window sheet and dropped once the transposition went past them, so only a few rows are in memory.
+ * The sheet is read twice : a first pass retrieves the comments (stored after the cells in a .xls)
+ * and the dimensions, the second one the cells.
+ * Formula cells are read as their cached result. Encrypted files can't be read this way.
+ * @author hamme
+ *
+ */
+public class HSSFEventReader implements SheetReader, HSSFListener {
+
+	/**
+	 * Constructor, reads the comments of the sheet and opens the stream of its cells.
+	 * @param file
+	 * 		The .xls file to read
+	 * @param sheetNb
+	 * 		The index (starting at 0) of the sheet to read
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public HSSFEventReader(File file, int sheetNb) throws IOException {
+		this.sheetNb = sheetNb;
+		this.fs = new NPOIFSFileSystem(file, true);
+		this.formats = new FormatTrackingHSSFListener(this);
+
+		int position;
+		try {
+			// The workbook globals : the formats, the shared strings and the sheets
+			RecordFactoryInputStream globals = openRecords(0);
+			List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+			Record record;
+			// The globals end with the first EOF record
+			while ((record = globals.nextRecord()) != null && record.getSid() != EOFRecord.sid) {
+				formats.processRecordInternally(record);
+				switch (record.getSid()) {
+				case BoundSheetRecord.sid:
+					boundSheets.add((BoundSheetRecord) record);
+					break;
+				case SSTRecord.sid:
+					sst = (SSTRecord) record;
+					break;
+				case FilePassRecord.sid:
+					throw new IOException(file.getName() + " is encrypted : it can't be read with the event model");
+				}
+			}
+			BoundSheetRecord[] ordered = BoundSheetRecord.orderByBofPosition(boundSheets);
+			for (BoundSheetRecord b : ordered) {
+				sheetNames.add(b.getSheetname());
+			}
+			if (sheetNb >= sheetNames.size()) {
+				throw new IOException("No sheet number " + sheetNb + " in " + file.getName());
+			}
+			position = ordered[sheetNb].getPositionOfBof();
+
+			// First pass, from the beginning of the sheet : its dimensions and comments
+			this.indexing = true;
+			RecordFactoryInputStream index = openRecords(position);
+			while (!done && (record = index.nextRecord()) != null) {
+				processRecord(record);
+			}
+		} catch (IOException | RuntimeException e) {
+			fs.close();
+			throw e;
+		}
+
+		// Second pass : the cells, read on demand
+		this.indexing = false;
+		this.done = false;
+		this.depth = 0;
+		this.records = openRecords(position);
+		this.window = new HSSFWorkbook();
+		this.sheet = window.createSheet(getSheetName());
+	}
+
+	/**
+	 * Number of rows kept behind the last row asked for.
+	 */
+	private static final int BACKLOG = 2;
+
+	/**
+	 * The file system of the .xls file.
+	 */
+	private NPOIFSFileSystem fs;
+	/**
+	 * The records of the second pass.
+	 */
+	private RecordFactoryInputStream records;
+	/**
+	 * Keeps track of the formats, to know which numeric cells are dates.
+	 */
+	private FormatTrackingHSSFListener formats;
+	/**
+	 * True during the first pass.
+	 */
+	private boolean indexing;
+	/**
+	 * The index of the sheet to read.
+	 */
+	private int sheetNb;
+	/**
+	 * The depth of the current BOF/EOF block (charts are nested in sheets).
+	 */
+	private int depth = 0;
+	/**
+	 * True once the EOF record of the sheet has been read.
+	 */
+	private boolean done = false;
+	/**
+	 * The highest row index read so far. The rows before it are complete.
+	 */
+	private int lastRow = -1;
+	/**
+	 * The last row of the sheet, from its dimensions read by the first pass.
+	 */
+	private int lastRowNum = -1;
+	/**
+	 * The first row still in the {@link HSSFEventReader#sheet}.
+	 */
+	private int firstKeptRow = 0;
+
+	/**
+	 * The names of the sheets, in the order of the file.
+	 */
+	private List<String> sheetNames = new ArrayList<String>();
+
+	public List<String> getSheetNames() {
+		return sheetNames;
+	}
+
+	/**
+	 * The shared strings of the workbook.
+	 */
+	private SSTRecord sst;
+	/**
+	 * The comment texts of the sheet by cell.
+	 */
+	private Map<CellAddress, String> comments = new HashMap<CellAddress, String>();
+	/**
+	 * The texts of the comment objects of the sheet by object id, until they are matched with their note.
+	 */
+	private Map<Integer, String> commentTexts = new HashMap<Integer, String>();
+	/**
+	 * The notes (the commented cells) of the sheet.
+	 */
+	private List<NoteRecord> notes = new ArrayList<NoteRecord>();
+	/**
+	 * The id of the last comment object read, -1 if the last object wasn't a comment.
+	 */
+	private int commentObjectId = -1;
+
+	/**
+	 * The workbook holding the {@link HSSFEventReader#sheet}.
+	 */
+	private HSSFWorkbook window;
+	/**
+	 * The date formats of the {@link HSSFEventReader#window}, its own format indexes.
+	 */
+	private DateFormatCache dateFormats = new DateFormatCache();
+	/**
+	 * The sheet holding the rows read but not yet dropped.
+	 */
+	private HSSFSheet sheet;
+	/**
+	 * The styles of the window workbook, by format index of the file.
+	 */
+	private Map<Integer, HSSFCellStyle> styles = new HashMap<Integer, HSSFCellStyle>();
+	/**
+	 * The formula cell waiting for its string result (in the following StringRecord).
+	 */
+	private HSSFCell pendingFormulaCell;
+
+	/**
+	 * Reads the names of the sheets of a .xls file, only decoding the workbook globals.
+	 * @param file
+	 * 		The .xls file
+	 * @return
+	 * 		The names of the sheets, in the order of the file
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public static List<String> readSheetNames(File file) throws IOException {
+
+		NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+		List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+		try {
+			String name = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+			RecordFactoryInputStream globals = new RecordFactoryInputStream(fs.createDocumentInputStream(name), false);
+			Record record;
+			// The globals end with the first EOF record
+			while ((record = globals.nextRecord()) != null && record.getSid() != EOFRecord.sid) {
+				if (record.getSid() == BoundSheetRecord.sid) {
+					boundSheets.add((BoundSheetRecord) record);
+				}
+			}
+		} finally {
+			fs.close();
+		}
+		List<String> names = new ArrayList<String>();
+		for (BoundSheetRecord b : BoundSheetRecord.orderByBofPosition(boundSheets)) {
+			names.add(b.getSheetname());
+		}
+		return names;
+	}
+
+	/**
+	 * Opens the records of the Workbook stream of the file, from a record.
+	 * @param position
+	 * 		The position of the first record in the stream : 0 for the workbook globals,
+	 * 		the position of its BOF record for a sheet
+	 * @return
+	 * 		The records
+	 * @throws IOException
+	 * 		If the stream can't be opened
+	 */
+	private RecordFactoryInputStream openRecords(int position) throws IOException {
+		String name = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+		DocumentInputStream in = fs.createDocumentInputStream(name);
+		long skipped = 0;
+		while (skipped < position) {
+			long n = in.skip(position - skipped);
+			if (n <= 0) {
+				in.close();
+				throw new IOException("The sheet starts after the end of the workbook");
+			}
+			skipped += n;
+		}
+		return new RecordFactoryInputStream(in, false);
+	}
+
+	/**
+	 * Returns a row, reading the file up to the end of it. The rows more than
+	 * {@link HSSFEventReader#BACKLOG} rows before it are dropped.
+	 */
+	@Override
+	public Row getRow(int rowId) {
+
+		// Reading until a further row is reached (the row is then complete) or the end of the sheet
+		while (!done && lastRow <= rowId) {
+			Record record = records.nextRecord();
+			if (record == null) {
+				done = true;
+			}
+			else {
+				formats.processRecord(record);
+			}
+		}
+		// Dropping the rows we went past
+		for (; firstKeptRow < rowId - BACKLOG; firstKeptRow++) {
+			HSSFRow old = sheet.getRow(firstKeptRow);
+			if (old != null) {
+				sheet.removeRow(old);
+			}
+		}
+		return sheet.getRow(rowId);
+	}
+
+	/**
+	 * Read by the first pass.
+	 */
+	@Override
+	public int getLastRowNum() {
+		return lastRowNum;
+	}
+
+	@Override
+	public String getComment(int rowId, int columnId) {
+		return comments.get(new CellAddress(rowId, columnId));
+	}
+
+	/**
+	 * Read by the first pass.
+	 */
+	@Override
+	public Map<CellAddress, String> getComments() {
+		return Collections.unmodifiableMap(comments);
+	}
+
+	@Override
+	public DateFormatCache getDateFormats() {
+		return dateFormats;
+	}
+
+	/**
+	 * The rows are read once, in order.
+	 */
+	@Override
+	public boolean isRandomAccess() {
+		return false;
+	}
+
+	@Override
+	public String getSheetName() {
+		return sheetNames.get(sheetNb);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (window != null) {
+			window.close();
+		}
+		fs.close();
+	}
+
+	/**
+	 * Handles one record of the sheet, read from its BOF record. Keeps track of the nested blocks
+	 * (charts) and dispatches the records of the sheet itself to {@link HSSFEventReader#index(Record)}
+	 * during the first pass and to {@link HSSFEventReader#readCell(Record)} during the second one.
+	 */
+	@Override
+	public void processRecord(Record record) {
+
+		switch (record.getSid()) {
+		case BOFRecord.sid:
+			depth++;
+			break;
+		case EOFRecord.sid:
+			depth--;
+			// The end of the sheet
+			if (depth == 0) {
+				if (indexing) {
+					resolveComments();
+				}
+				done = true;
+			}
+			break;
+		default:
+			if (depth == 1) {
+				if (indexing) {
+					index(record);
+				}
+				else {
+					readCell(record);
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Retrieves the dimensions, the comment objects, their text and the notes of the sheet.
+	 * @param record
+	 * 		A record of the sheet
+	 */
+	private void index(Record record) {
+
+		switch (record.getSid()) {
+		case ObjRecord.sid:
+			commentObjectId = -1;
+			for (SubRecord sub : ((ObjRecord) record).getSubRecords()) {
+				if (sub instanceof CommonObjectDataSubRecord
+						&& ((CommonObjectDataSubRecord) sub).getObjectType() == CommonObjectDataSubRecord.OBJECT_TYPE_COMMENT) {
+					commentObjectId = ((CommonObjectDataSubRecord) sub).getObjectId();
+				}
+			}
+			break;
+		case TextObjectRecord.sid:
+			// The text of the comment follows its object
+			if (commentObjectId != -1) {
+				commentTexts.put(commentObjectId, ((TextObjectRecord) record).getStr().getString());
+				commentObjectId = -1;
+			}
+			break;
+		case NoteRecord.sid:
+			notes.add((NoteRecord) record);
+			break;
+		case DimensionsRecord.sid:
+			// The row after the last one
+			lastRowNum = ((DimensionsRecord) record).getLastRow() - 1;
+			break;
+		}
+	}
+
+	/**
+	 * Matches the notes of the sheet with the text of their comment object.
+	 */
+	private void resolveComments() {
+		for (NoteRecord note : notes) {
+			String text = commentTexts.get(note.getShapeId());
+			if (text != null) {
+				comments.put(new CellAddress(note.getRow(), note.getColumn()), text);
+			}
+		}
+		notes.clear();
+		commentTexts.clear();
+	}
+
+	/**
+	 * Writes a cell record of the sheet in the {@link HSSFEventReader#sheet}.
+	 * @param record
+	 * 		A record of the sheet
+	 */
+	private void readCell(Record record) {
+
+		// The string result of a formula
+		if (record.getSid() == StringRecord.sid) {
+			if (pendingFormulaCell != null) {
+				pendingFormulaCell.setCellValue(((StringRecord) record).getString());
+				pendingFormulaCell = null;
+			}
+			return;
+		}
+		if (!(record instanceof CellValueRecordInterface)) {
+			return;
+		}
+
+		CellValueRecordInterface cellRecord = (CellValueRecordInterface) record;
+		lastRow = Math.max(lastRow, cellRecord.getRow());
+		HSSFRow row = sheet.getRow(cellRecord.getRow());
+		if (row == null) {
+			row = sheet.createRow(cellRecord.getRow());
+		}
+		HSSFCell cell = row.createCell(cellRecord.getColumn());
+
+		switch (record.getSid()) {
+		case NumberRecord.sid:
+			cell.setCellValue(((NumberRecord) record).getValue());
+			cell.setCellStyle(getStyle(cellRecord));
+			break;
+		case LabelSSTRecord.sid:
+			cell.setCellValue(sst.getString(((LabelSSTRecord) record).getSSTIndex()).getString());
+			break;
+		case LabelRecord.sid:
+			cell.setCellValue(((LabelRecord) record).getValue());
+			break;
+		case BoolErrRecord.sid:
+			if (((BoolErrRecord) record).isBoolean()) {
+				cell.setCellValue(((BoolErrRecord) record).getBooleanValue());
+			}
+			else {
+				cell.setCellType(Cell.CELL_TYPE_ERROR);
+			}
+			break;
+		case FormulaRecord.sid:
+			FormulaRecord formula = (FormulaRecord) record;
+			switch (formula.getCachedResultType()) {
+			case Cell.CELL_TYPE_NUMERIC:
+				cell.setCellValue(formula.getValue());
+				cell.setCellStyle(getStyle(cellRecord));
+				break;
+			case Cell.CELL_TYPE_STRING:
+				pendingFormulaCell = cell;
+				break;
+			case Cell.CELL_TYPE_BOOLEAN:
+				cell.setCellValue(formula.getCachedBooleanValue());
+				break;
+			case Cell.CELL_TYPE_ERROR:
+				cell.setCellType(Cell.CELL_TYPE_ERROR);
+				break;
+			}
+			break;
+		case BlankRecord.sid:
+			// Nothing to write, the cell stays blank
+			break;
+		}
+	}
+
+	/**
+	 * Returns the style of the window workbook having the same format as a cell of the file,
+	 * creating it if needed. Needed to recognize the dates.
+	 * @param cellRecord
+	 * 		The record of the cell
+	 * @return
+	 * 		The style
+	 */
+	private HSSFCellStyle getStyle(CellValueRecordInterface cellRecord) {
+
+		int formatIndex = formats.getFormatIndex(cellRecord);
+		HSSFCellStyle style = styles.get(formatIndex);
+
+		if (style == null) {
+			style = window.createCellStyle();
+			String formatString = formats.getFormatString(cellRecord);
+			if (formatString != null) {
+				style.setDataFormat(window.createDataFormat().getFormat(formatString));
+			}
+			styles.put(formatIndex, style);
+		}
+		return style;
+	}
+
+}
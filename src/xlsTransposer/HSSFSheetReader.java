@@ -0,0 +1,101 @@
+package xlsTransposer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFComment;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * Reads a sheet of a workbook fully loaded in memory (HSSFWorkbook).
+ * @author hamme
+ *
+ */
+public class HSSFSheetReader implements SheetReader {
+
+	/**
+	 * Constructor. Loads the drawing patriarch of the sheet (where the comments are) : 
+	 * the first comment lookup would otherwise create it, which changes the whole workbook 
+	 * and can't be done by several threads reading different sheets at once.
+	 * @param sheet
+	 * 		The sheet that will be read
+	 */
+	public HSSFSheetReader(HSSFSheet sheet) {
+		this.sheet = sheet;
+		if (sheet.getDrawingPatriarch() == null) {
+			sheet.createDrawingPatriarch();
+		}
+	}
+
+	/**
+	 * The sheet that will be read
+	 */
+	private HSSFSheet sheet;
+
+	public HSSFSheet getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public Row getRow(int rowId) {
+		return sheet.getRow(rowId);
+	}
+
+	@Override
+	public int getLastRowNum() {
+		return sheet.getPhysicalNumberOfRows() == 0 ? -1 : sheet.getLastRowNum();
+	}
+
+	@Override
+	public String getComment(int rowId, int columnId) {
+		Comment comment = sheet.getCellComment(rowId, columnId);
+		if (comment == null) {
+			return null;
+		}
+		return comment.getString().getString();
+	}
+
+	/**
+	 * Goes thru the drawing patriarch once, instead of once per cell like {@link HSSFSheetReader#getComment(int, int)}.
+	 */
+	@Override
+	public Map<CellAddress, String> getComments() {
+		Map<CellAddress, String> texts = new HashMap<CellAddress, String>();
+		for (Map.Entry<CellAddress, HSSFComment> e : sheet.getCellComments().entrySet()) {
+			texts.put(e.getKey(), e.getValue().getString().getString());
+		}
+		return texts;
+	}
+
+	/**
+	 * Shared by the readers of all the sheets of the workbook.
+	 */
+	@Override
+	public DateFormatCache getDateFormats() {
+		return DateFormatCache.forWorkbook(sheet.getWorkbook());
+	}
+
+	/**
+	 * The sheet is in memory and only read.
+	 */
+	@Override
+	public boolean isRandomAccess() {
+		return true;
+	}
+
+	@Override
+	public String getSheetName() {
+		return sheet.getSheetName();
+	}
+
+	/**
+	 * Nothing to do, the workbook is closed by its owner.
+	 */
+	@Override
+	public void close() {
+	}
+
+}
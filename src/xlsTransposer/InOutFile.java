@@ -1,7 +1,7 @@
 package xlsTransposer;
 
 import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.ss.usermodel.Sheet;
 
 /**
  * A class describing a sheet. Can be a sheet in which it will be written (OutputFile) OR read (Inputfile) but not both.
@@ -41,17 +41,43 @@ public class InOutFile {
 	}
 	
 	/**
-	 * The sheet of the output file (with a .xlsx extension)
+	 * The reader of the input sheet, the {@link InOutFile#hSheet} in memory or a stream.
 	 */
-	private XSSFSheet xSheet;
+	private SheetReader reader;
 	
-	public XSSFSheet getXSheet() {
+	public SheetReader getReader() {
+		return reader;
+	}
+
+	public void setReader(SheetReader reader) {
+		this.reader = reader;
+	}
+	
+	/**
+	 * The sheet of the output file (with a .xlsx extension), in memory or streamed.
+	 */
+	private Sheet xSheet;
+	
+	public Sheet getXSheet() {
 		return xSheet;
 	}
 
-	public void setXSheet(XSSFSheet sheet) {
+	public void setXSheet(Sheet sheet) {
 		this.xSheet = sheet;
 	}
+	
+	/**
+	 * Where the output is written : the {@link InOutFile#xSheet} or a text file.
+	 */
+	private OutputSink sink;
+	
+	public OutputSink getSink() {
+		return sink;
+	}
+
+	public void setSink(OutputSink sink) {
+		this.sink = sink;
+	}
 
 
 
@@ -65,6 +91,17 @@ public class InOutFile {
 	public InOutFile(HSSFSheet sheet) {
 		this.currentLine = 0;
 		this.hSheet = sheet;
+		this.reader = new HSSFSheetReader(sheet);
+	}
+	/**
+	 * Constructer for handling the input file through a reader.
+	 * Sets the the current line to 0.
+	 * @param {@link InOutFile#reader}
+	 * @see InOutFile#currentLine
+	 */
+	public InOutFile(SheetReader reader) {
+		this.currentLine = 0;
+		this.reader = reader;
 	}
 	/**
 	 * Constructer for handling the output file.
@@ -72,9 +109,23 @@ public class InOutFile {
 	 * @param {@link InOutFile#hSheet}
 	 * @see InOutFile#currentLine
 	 */
-	public InOutFile(XSSFSheet sheet) {
+	public InOutFile(Sheet sheet) {
 		this.currentLine = 0;
 		this.xSheet = sheet;
+		this.sink = new SheetSink(sheet);
+	}
+	/**
+	 * Constructer for handling the output file through a sink.
+	 * Sets the the current line to 0.
+	 * @param {@link InOutFile#sink}
+	 * @see InOutFile#currentLine
+	 */
+	public InOutFile(OutputSink sink) {
+		this.currentLine = 0;
+		this.sink = sink;
+		if (sink instanceof SheetSink) {
+			this.xSheet = ((SheetSink) sink).getSheet();
+		}
 	}
 	
 	
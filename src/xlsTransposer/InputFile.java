@@ -1,7 +1,6 @@
 package xlsTransposer;
 
 
-import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
@@ -23,6 +22,19 @@ public class InputFile extends InOutFile{
 			allDone = false;
 		}
 		
+		/**
+		 * Constructor
+		 * @param reader
+		 * 		The reader of the sheet in which it will be read.
+		 * @param linesToCopy
+		 * 		Number of lines in the file that should be copy/pasted 
+		 */
+		public InputFile(SheetReader reader, int linesToCopy) {
+			super(reader);
+			this.linesToCopy = linesToCopy;
+			allDone = false;
+		}
+		
 		/**
 		 * Constructor
 		 * @param sheet
@@ -132,9 +144,9 @@ public class InputFile extends InOutFile{
 		 */
 		public void findFirstBlankColumn(int rowId, int serieNb) {
 
-			HSSFRow row = getHSheet().getRow(rowId);
+			Row row = getReader().getRow(rowId);
 			int eof = row.getLastCellNum();
-			HSSFRow rowUnder = getHSheet().getRow(rowId + 1);
+			Row rowUnder = getReader().getRow(rowId + 1);
 			boolean stringFound = false;
 
 			for (int i = serieNb; i < eof; i++) {
@@ -1,102 +1,936 @@
 package xlsTransposer;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.poifs.filesystem.DocumentFactoryHelper;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class MainXLS {
 
+	public static final String USAGE = "Usage : MainXLS inputFile [sheetNb] [-sheets all|i,j,name] [-threads n] [-rowThreads n] [-window rows] [-event] [-format xlsx|csv|tsv|parquet] [-commentCache n] [-progress seconds] [-checkpoint seconds] [-resume] [-incremental] [-sort period|column,... [-sortBudget megabytes]] [-maxRows n] [-untranspose [-groupBudget n]] [-cache file] [-phases]\n"
+			+ "        MainXLS -batch dirOrGlob... [-sheet sheetNb] [-sheets all|i,j,name] [-threads n] [-rowThreads n] [-summary file] [-window rows] [-event] [-format xlsx|csv|tsv|parquet] [-commentCache n] [-progress seconds] [-checkpoint seconds] [-resume] [-incremental] [-sort period|column,... [-sortBudget megabytes]] [-maxRows n] [-untranspose [-groupBudget n]] [-cache file] [-phases]";
+
 	public static void main(String[] args) {
-		
-		String inputName = ""; // TODO : REWORK because ugly af
-		int sheetNb = 0;
-		final int linesToCopy = 2;
-		final int serieNb = 3;
-		
-		
-		switch (args.length) {
-		case 1:
-			inputName = args[0];
-			break;
-		case 2:
-			inputName = args[0];
-			sheetNb = Integer.parseInt(args[1]);
-			break;
-		default:
-			
-			break;	
-		}
-		
-		String[] parts = inputName.split("\\.");
-		String outputName = parts[0] + "Transposed.xlsx";
-		
+
+		Parameters params;
+		try {
+			params = Parameters.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(USAGE);
+			return;
+		}
+
+		if (params.isBatch()) {
+			new BatchTransposer(params).run();
+			return;
+		}
+
+		String inputName = params.getInputName();
+
+		try {
+			transpose(inputName, params);
+			System.out.println(params.getCommentCache().getReport());
+			saveResultCache(params);
+			if (params.isPhaseTable()) {
+				System.out.println(params.getPhaseTimes().getReport());
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// An option that doesn't fit the file (a sort column not in the header) is only found during the transposition
+			reportFailure(inputName, e);
+		}
+
+	}
+
+	/**
+	 * Returns the name of the output file of an input file : its name without the extension, followed by "Transposed.xlsx".
+	 * @param inputName
+	 * 		The name of the input file
+	 * @return
+	 * 		The name of the output file
+	 */
+	public static String getOutputName(String inputName) {
+		return getBaseName(inputName) + "Transposed.xlsx";
+	}
+
+	/**
+	 * Returns the name of the output file of an untransposition : the name of the transposed file without
+	 * the extension and without "Transposed", followed by "Untransposed.xlsx".
+	 * @param inputName
+	 * 		The name of the transposed file
+	 * @return
+	 * 		The name of the output file
+	 */
+	public static String getUntransposedName(String inputName) {
+		String base = getBaseName(inputName);
+		if (base.endsWith("Transposed")) {
+			base = base.substring(0, base.length() - "Transposed".length());
+		}
+		return base + "Untransposed.xlsx";
+	}
+
+	/**
+	 * Returns the name of the text file a sheet of an input file is written in : the name of the input 
+	 * without the extension, followed by "Transposed_", the name of the sheet and the extension.
+	 * The characters of the name of the sheet that may not be allowed in a file name are replaced by '_'.
+	 * @param inputName
+	 * 		The name of the input file
+	 * @param sheetName
+	 * 		The name of the sheet
+	 * @param extension
+	 * 		The extension of the output file, "csv" or "tsv"
+	 * @return
+	 * 		The name of the output file
+	 */
+	public static String getOutputName(String inputName, String sheetName, String extension) {
+		return getBaseName(inputName) + "Transposed_" + sheetName.replaceAll("[^A-Za-z0-9_-]", "_") + "." + extension;
+	}
+
+	/**
+	 * Returns the name of a continuation file of a sheet of the output workbook (see {@link SplittingSink}) :
+	 * the name of the input without the extension, followed by "Transposed_", the name of the sheet,
+	 * the number of the part and ".xlsx".
+	 * @param inputName
+	 * 		The name of the input file
+	 * @param sheetName
+	 * 		The name of the sheet
+	 * @param part
+	 * 		The number of the part, from 2
+	 * @return
+	 * 		The name of the continuation file
+	 */
+	public static String getPartName(String inputName, String sheetName, int part) {
+		return getOutputName(inputName, sheetName + "_" + part, "xlsx");
+	}
+
+	/**
+	 * Returns the name of a file without its extension.
+	 * @param inputName
+	 * 		The name of the file
+	 * @return
+	 * 		The name without the extension
+	 */
+	private static String getBaseName(String inputName) {
+		int dot = inputName.lastIndexOf('.');
+		// A dot in a directory name isn't an extension
+		if (dot <= inputName.lastIndexOf(File.separatorChar) || dot <= inputName.lastIndexOf('/')) {
+			dot = inputName.length();
+		}
+		return inputName.substring(0, dot);
+	}
+
+	/**
+	 * Tells if a file is a .xlsx workbook (a zip package) rather than a .xls one, from its first bytes,
+	 * whatever its extension.
+	 * @param file
+	 * 		The file
+	 * @return
+	 * 		true for a .xlsx workbook
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public static boolean isOOXML(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return DocumentFactoryHelper.hasOOXMLHeader(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Transposes the sheet of number {@link Parameters#getSheetNb()} of a file and its "suppression" sheet if there is one,
+	 * or the sheets of {@link Parameters#getSheetSelection()} at the same time.
+	 * The file is a .xls or a .xlsx workbook : a .xlsx one is always read as a stream ({@link XSSFEventReader}).
+	 * The result is written in the file named by {@link MainXLS#getOutputName(String)} or, depending on 
+	 * {@link Parameters#getFormat()}, in one file per sheet named by {@link MainXLS#getOutputName(String, String, String)}.
+	 * @param inputName
+	 * 		The name of the file to transpose
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The number of lines read and written and the time it took
+	 * @throws IOException
+	 * 		If the input can't be read or the output written
+	 */
+	public static TranspositionResult transpose(String inputName, Parameters params) throws IOException {
+
+		long start = System.currentTimeMillis();
+
+		// A file that didn't change since it was transposed with the same parameters is skipped
+		ResultCache cache = params.getResultCache();
+		ResultCache.InputState state = null;
+		if (cache != null) {
+			state = new ResultCache.InputState(inputName);
+			TranspositionResult cached = cache.lookup(inputName, state, params);
+			if (cached != null) {
+				System.out.println(inputName + " didn't change since it was transposed in " + cached.getOutputName() + " : skipped.");
+				cached.setDuration(System.currentTimeMillis() - start);
+				return cached;
+			}
+			// The content recorded is the one transposed, even if the file is replaced meanwhile
+			if (state.exists()) {
+				state.getHash();
+			}
+		}
+
+		if (params.isUntranspose()) {
+			TranspositionResult result = Untransposer.untranspose(inputName, params);
+			if (cache != null) {
+				cache.record(result, state, params);
+			}
+			return result;
+		}
+
+		String outputName = getOutputName(inputName);
+		TranspositionResult result = new TranspositionResult(inputName, outputName);
+
+		File inputFile = new File(inputName);
+		HSSFWorkbook iWorkbook = null;
+		List<String> sheetNames;
+
+		// A .xlsx file is always read as a stream, like a .xls file with the event model
+		if (inputFile.exists() && isOOXML(inputFile)) {
+			sheetNames = XSSFEventReader.readSheetNames(inputFile);
+		}
+		// The event model only decodes the transposed sheets, row by row
+		else if (params.isEventModel()) {
+			if (!inputFile.exists()) {
+				throw new FileNotFoundException(inputName);
+			}
+			sheetNames = HSSFEventReader.readSheetNames(inputFile);
+		}
+		else {
+			PhaseEvent open = params.getPhaseTimes().begin(PhaseTimes.OPEN);
+			FileInputStream fis = new FileInputStream(inputFile);
+			iWorkbook = new HSSFWorkbook(fis);
+			fis.close();
+			params.getPhaseTimes().end(open, null, 0, 0);
+			sheetNames = new ArrayList<String>();
+			for (int i = 0; i < iWorkbook.getNumberOfSheets(); i++) {
+				sheetNames.add(iWorkbook.getSheetName(i));
+			}
+		}
+		List<Integer> sheets = selectSheets(sheetNames, params);
+
+	    // A text or columnar output is written as it goes, one file per sheet
+	    if (params.isFilePerSheet()) {
+	    	List<OutputSink> sinks = new ArrayList<OutputSink>();
+	    	// A text output can be saved on the way and resumed
+	    	List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+	    	// Or only get the new periods
+	    	List<OutputLayout> layouts = new ArrayList<OutputLayout>();
+	    	StringBuilder outputNames = new StringBuilder();
+	    	Throwable failure = null;
+	    	try {
+	    		for (int i : sheets) {
+	    			String name = getOutputName(inputName, sheetNames.get(i), params.getFormat());
+	    			Checkpoint checkpoint = null;
+	    			if (params.getCheckpointInterval() > 0) {
+	    				checkpoint = new Checkpoint(Checkpoint.fileOf(new File(name)), inputFile);
+	    				if (params.isResume() && checkpoint.load()) {
+	    					System.out.println("Resuming " + name + (checkpoint.isDone() ? " : already done." : " from input line " + checkpoint.getInputLine() + "."));
+	    				}
+	    			}
+	    			OutputLayout layout = null;
+	    			if (params.isIncremental()) {
+	    				layout = new OutputLayout(OutputLayout.fileOf(new File(name)));
+	    				layout.load(new File(name));
+	    			}
+	    			sinks.add(sorted(createSink(new File(name), params, checkpoint, layout), params));
+	    			checkpoints.add(checkpoint);
+	    			layouts.add(layout);
+	    			outputNames.append(outputNames.length() == 0 ? "" : ", ").append(name);
+	    		}
+	    		result.setOutputName(outputNames.toString());
+	    		transposeSheets(inputFile, iWorkbook, sheets, sinks, checkpoints, layouts, params, result);
+	    	} catch (Throwable e) {
+	    		failure = e;
+	    		throw e;
+	    	} finally {
+	    		closeSinks(sinks, checkpoints, sheets, sheetNames, failure, params);
+	    	}
+	    	// The whole file is done
+	    	for (int k = 0; k < sinks.size(); k++) {
+	    		if (checkpoints.get(k) != null) {
+	    			checkpoints.get(k).delete();
+	    		}
+	    		if (layouts.get(k) != null) {
+	    			layouts.get(k).save(new File(getOutputName(inputName, sheetNames.get(sheets.get(k)), params.getFormat())));
+	    		}
+	    	}
+	    }
+	    else {
+	    	transposeWorkbook(inputFile, iWorkbook, sheets, sheetNames, outputName, params, result);
+	    }
+
+		if (iWorkbook != null) {
+			iWorkbook.close();
+		}
+
+		if (cache != null) {
+			cache.record(result, state, params);
+		}
+
+		result.setDuration(System.currentTimeMillis() - start);
+		return result;
+	}
+
+	/**
+	 * Writes the manifest of the files transposed, if there is one, and prints its hits and misses.
+	 * @param params
+	 * 		The parameters of the run
+	 */
+	public static void saveResultCache(Parameters params) {
+		ResultCache cache = params.getResultCache();
+		if (cache == null) {
+			return;
+		}
+		System.out.println(cache.getReport());
 		try {
-		
-		FileInputStream fis = new FileInputStream(new File(inputName));
-		HSSFWorkbook iWorkbook = new HSSFWorkbook(fis);
-	    HSSFSheet iSheet = iWorkbook.getSheetAt(sheetNb);
-	    
-	    XSSFWorkbook oWorkbook = new XSSFWorkbook();
-	    XSSFSheet oSheet = oWorkbook.createSheet(iSheet.getSheetName());
-	    
-	    
-	    SheetCouple duo = new SheetCouple(iSheet, oSheet, linesToCopy);
-	    
-	    duo.getInputFile().setSerieNb(serieNb);
-	    
+			cache.save();
+		} catch (IOException e) {
+			System.out.println("Can't write the result cache " + params.getResultCacheName() + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the sink writing a sheet in its own file, in the format of {@link Parameters#getFormat()}.
+	 * A text file resumed from a checkpoint is cut where the checkpoint was saved, and its sink
+	 * skips the rows before : nothing is written if the sheet was done.
+	 * A text file appended to is written after its end.
+	 * @param file
+	 * 		The file
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @param checkpoint
+	 * 		The checkpoint of the sheet (only for a text file), null if there is none
+	 * @param layout
+	 * 		The layout of the previous output of the sheet (only for a text file), null if it isn't appended to
+	 * @return
+	 * 		The sink
+	 * @throws IOException
+	 * 		If the file can't be opened
+	 */
+	private static OutputSink createSink(File file, Parameters params, Checkpoint checkpoint, OutputLayout layout) throws IOException {
+		if (params.getFormat().equals("parquet")) {
+			return new ParquetSink(file, params.getLinesToCopy(), params.getSerieNb());
+		}
+		char delimiter = params.getFormat().equals("tsv") ? '\t' : ',';
+		CsvSink sink;
+		if (checkpoint != null && checkpoint.isLoaded()) {
+			sink = new CsvSink(file, delimiter, checkpoint.isDone() ? Integer.MAX_VALUE : checkpoint.getOutputRow(),
+					checkpoint.getOutputLength(), checkpoint.getOutputWidth());
+		}
+		else if (layout != null && layout.isLoaded()) {
+			sink = new CsvSink(file, delimiter, layout.getNextOutputRow(), layout.getOutputLength(), layout.getOutputWidth());
+		}
+		else {
+			sink = new CsvSink(file, delimiter, params.getLinesToCopy());
+		}
+		if (checkpoint != null) {
+			checkpoint.setSink(sink);
+		}
+		if (layout != null) {
+			layout.setSink(sink);
+		}
+		return sink;
+	}
+
+	/**
+	 * Closes the sinks of the sheets, each one even if another one fails. Closing a sink writes what it still holds.
+	 * After a failure, the sinks that can't be resumed from a checkpoint are aborted instead, so that no
+	 * partial output looks complete : a sink with a checkpoint is closed, to be resumed.
+	 * @param sinks
+	 * 		The sinks
+	 * @param checkpoints
+	 * 		The checkpoint of each sink, in the same order (null for none)
+	 * @param sheets
+	 * 		The indexes of the sheets
+	 * @param sheetNames
+	 * 		The names of all the sheets of the input
+	 * @param failure
+	 * 		The failure of the transposition, null if it succeeded : the errors of the sinks are added to it
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @throws IOException
+	 * 		If a sink couldn't be closed after a transposition that succeeded, with the errors of the other sinks
+	 */
+	private static void closeSinks(List<OutputSink> sinks, List<Checkpoint> checkpoints, List<Integer> sheets, List<String> sheetNames,
+			Throwable failure, Parameters params) throws IOException {
+
+		Exception error = null;
+		for (int k = 0; k < sinks.size(); k++) {
+			PhaseEvent write = params.getPhaseTimes().begin(PhaseTimes.WRITE);
+			try {
+				if (failure != null && checkpoints.get(k) == null) {
+					sinks.get(k).abort();
+				}
+				else {
+					sinks.get(k).close();
+				}
+			} catch (IOException | RuntimeException e) {
+				if (failure != null) {
+					failure.addSuppressed(e);
+				}
+				else if (error == null) {
+					error = e;
+				}
+				else {
+					error.addSuppressed(e);
+				}
+			}
+			params.getPhaseTimes().end(write, sheetNames.get(sheets.get(k)), 0, 0);
+		}
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error != null) {
+			throw (RuntimeException) error;
+		}
+	}
+
+	/**
+	 * Puts a {@link SortingSink} before a sink if the lines are sorted ({@link Parameters#getSortColumns()}).
+	 * @param sink
+	 * 		The sink
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The sink the lines are written in
+	 */
+	private static OutputSink sorted(OutputSink sink, Parameters params) {
+		if (params.getSortColumns() == null) {
+			return sink;
+		}
+		return new SortingSink(sink, params.getLinesToCopy(), params.getSerieNb(), params.getSortColumns(), params.getSortBudget());
+	}
+
+	/**
+	 * Transposes the sheets in a workbook and writes it in a file.
+	 * @param inputFile
+	 * 		The input file
+	 * @param iWorkbook
+	 * 		The input workbook, null if it is read as a stream (event model or .xlsx file)
+	 * @param sheets
+	 * 		The indexes of the sheets to transpose
+	 * @param sheetNames
+	 * 		The names of the sheets of the input
+	 * @param outputName
+	 * 		The name of the output file
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @param result
+	 * 		The result the lines read and written are added to
+	 * @throws IOException
+	 * 		If a sheet couldn't be transposed or the output written
+	 */
+	private static void transposeWorkbook(File inputFile, HSSFWorkbook iWorkbook, List<Integer> sheets, List<String> sheetNames, 
+			String outputName, Parameters params, TranspositionResult result) throws IOException {
+
+	    Workbook oWorkbook = createWorkbook(params);
+
+	    // The output sheets are created in the order of the selection, whatever sheet ends first
+	    // The sheets share one style per date format
+	    // A sheet going over the rows of a .xlsx sheet goes on in continuation files
+	    CellStylePool styles = new CellStylePool(oWorkbook);
+	    List<OutputSink> oSheets = new ArrayList<OutputSink>();
+	    List<SplittingSink> splitSheets = new ArrayList<SplittingSink>();
+	    for (int i : sheets) {
+	    	SplittingSink split = new SplittingSink(new SheetSink(oWorkbook.createSheet(sheetNames.get(i)), styles),
+	    			inputFile.getPath(), sheetNames.get(i), params);
+	    	splitSheets.add(split);
+	    	oSheets.add(sorted(split, params));
+	    }
+
+	    final List<Workbook> workbooks = new ArrayList<Workbook>();
+	    final List<String> names = new ArrayList<String>();
+	    workbooks.add(oWorkbook);
+	    names.add(outputName);
+	    Throwable failure = null;
+	    try {
+	    	transposeSheets(inputFile, iWorkbook, sheets, oSheets, null, null, params, result);
+
+	    	PhaseEvent write = params.getPhaseTimes().begin(PhaseTimes.WRITE);
+	    	// A sorted sheet is only written now
+	    	for (OutputSink oSheet : oSheets) {
+	    		oSheet.close();
+	    	}
+	    	StringBuilder outputNames = new StringBuilder(outputName);
+	    	for (SplittingSink split : splitSheets) {
+	    		for (SplittingSink.Part part : split.getParts().subList(1, split.getParts().size())) {
+	    			workbooks.add(part.getWorkbook());
+	    			names.add(part.getName());
+	    			outputNames.append(", ").append(part.getName());
+	    		}
+	    	}
+	    	result.setOutputName(outputNames.toString());
+	    	writeWorkbooks(workbooks, names, params);
+	    	params.getPhaseTimes().end(write, null, 0, 0);
+	    } catch (Throwable e) {
+	    	failure = e;
+	    	throw e;
+	    } finally {
+	    	// After a failure, the lines spilled by the sorted sheets are deleted
+	    	if (failure != null) {
+	    		for (OutputSink oSheet : oSheets) {
+	    			try {
+	    				oSheet.abort();
+	    			} catch (IOException | RuntimeException e) {
+	    				failure.addSuppressed(e);
+	    			}
+	    		}
+	    	}
+	    	for (Workbook workbook : workbooks) {
+	    		// Deleting the temporary files of the streamed output
+	    		if (workbook instanceof SXSSFWorkbook) {
+	    			((SXSSFWorkbook) workbook).dispose();
+	    		}
+	    		workbook.close();
+	    	}
+	    }
+	}
+
+	/**
+	 * Creates an output workbook.
+	 * A streamed output only keeps the last rows in memory.
+	 * Sheets written at the same time need it too : the in memory output shares its strings between sheets.
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The workbook, streamed or in memory
+	 */
+	public static Workbook createWorkbook(Parameters params) {
+	    if (params.isStreamed()) {
+	    	return new SXSSFWorkbook(params.getRowWindow());
+	    }
+	    else if (params.isConcurrentSheets()) {
+	    	return new SXSSFWorkbook(SXSSFWorkbook.DEFAULT_WINDOW_SIZE);
+	    }
+	    return new XSSFWorkbook();
+	}
+
+	/**
+	 * Writes the output workbook and its continuation files, at the same time if there are several of them :
+	 * each one is a zip package of its own.
+	 * @param workbooks
+	 * 		The workbooks
+	 * @param names
+	 * 		The names of their files, in the same order
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @throws IOException
+	 * 		If a workbook couldn't be written
+	 */
+	private static void writeWorkbooks(List<Workbook> workbooks, List<String> names, Parameters params) throws IOException {
+
+		if (workbooks.size() == 1 || params.getThreads() == 1) {
+			for (int k = 0; k < workbooks.size(); k++) {
+				writeWorkbook(workbooks.get(k), names.get(k));
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(params.getThreads(), workbooks.size()));
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int k = 0; k < workbooks.size(); k++) {
+			final Workbook workbook = workbooks.get(k);
+			final String name = names.get(k);
+			futures.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					writeWorkbook(workbook, name);
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		try {
+			for (Future<Void> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Writing interrupted");
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes a workbook in a file.
+	 * @param workbook
+	 * 		The workbook
+	 * @param name
+	 * 		The name of the file
+	 * @throws IOException
+	 * 		If it couldn't be written
+	 */
+	private static void writeWorkbook(Workbook workbook, String name) throws IOException {
+		FileOutputStream out = new FileOutputStream(new File(name));
+		try {
+			workbook.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Transposes the selected sheets, one after the other or at the same time.
+	 * @param inputFile
+	 * 		The input file
+	 * @param iWorkbook
+	 * 		The input workbook, null if it is read as a stream (event model or .xlsx file)
+	 * @param sheets
+	 * 		The indexes of the sheets to transpose
+	 * @param oSheets
+	 * 		Where each sheet is written, in the same order
+	 * @param checkpoints
+	 * 		The checkpoint of each sheet, in the same order (null for none), or null
+	 * @param layouts
+	 * 		The layout of the previous output of each sheet, in the same order (null for none), or null
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @param result
+	 * 		The result the lines read and written are added to
+	 * @throws IOException
+	 * 		If a sheet couldn't be transposed
+	 */
+	private static void transposeSheets(File inputFile, HSSFWorkbook iWorkbook, List<Integer> sheets, List<OutputSink> oSheets,
+			List<Checkpoint> checkpoints, List<OutputLayout> layouts, Parameters params, TranspositionResult result) throws IOException {
+		if (!params.isConcurrentSheets()) {
+			for (int k = 0; k < sheets.size(); k++) {
+				SheetReader iSheet = openSheet(inputFile, iWorkbook, sheets.get(k), params);
+				result.add(transposeSheet(iSheet, oSheets.get(k), checkpoints == null ? null : checkpoints.get(k),
+						layouts == null ? null : layouts.get(k), params));
+				iSheet.close();
+			}
+		}
+		else {
+			transposeConcurrently(inputFile, iWorkbook, sheets, oSheets, checkpoints, layouts, params, result);
+		}
+	}
+
+	/**
+	 * Returns the indexes of the sheets to transpose. By default the sheet {@link Parameters#getSheetNb()} 
+	 * followed by the "suppression" sheet if there is one. Otherwise all the sheets or the ones in 
+	 * {@link Parameters#getSheetSelection()}, given by index or by name.
+	 * @param sheetNames
+	 * 		The names of the sheets of the file
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The indexes of the sheets, in the order they will be in the output
+	 * @throws IOException
+	 * 		If a selected sheet isn't in the file
+	 */
+	public static List<Integer> selectSheets(List<String> sheetNames, Parameters params) throws IOException {
+
+		List<Integer> sheets = new ArrayList<Integer>();
+
+		if (!params.isConcurrentSheets()) {
+			sheets.add(params.getSheetNb());
+		}
+		else if (params.getSheetSelection().equals("all")) {
+			for (int i = 0; i < sheetNames.size(); i++) {
+				sheets.add(i);
+			}
+			return sheets;
+		}
+		else {
+			for (String s : params.getSheetSelection().split(",")) {
+				int i = sheetNames.indexOf(s.trim());
+				if (i == -1 && s.trim().matches("[0-9]+")) {
+					i = Integer.parseInt(s.trim());
+				}
+				if (i == -1 || i >= sheetNames.size()) {
+					throw new IOException("No sheet " + s.trim() + " in the file");
+				}
+				if (!sheets.contains(i)) {
+					sheets.add(i);
+				}
+			}
+		}
+		if (sheets.get(0) >= sheetNames.size()) {
+			throw new IOException("No sheet number " + sheets.get(0) + " in the file");
+		}
+		// The suppression sheet goes with the transposed one
+		int suppNb = sheetNames.indexOf("suppression");
+		if (suppNb != -1 && !sheets.contains(suppNb)) {
+			sheets.add(suppNb);
+		}
+		return sheets;
+	}
+
+	/**
+	 * Opens the reader of a sheet of the input.
+	 * @param inputFile
+	 * 		The input file
+	 * @param iWorkbook
+	 * 		The input workbook, null if it is read as a stream (event model or .xlsx file)
+	 * @param sheetNb
+	 * 		The index of the sheet
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The reader
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	private static SheetReader openSheet(File inputFile, HSSFWorkbook iWorkbook, int sheetNb, Parameters params) throws IOException {
+		PhaseEvent open = params.getPhaseTimes().begin(PhaseTimes.OPEN);
+		SheetReader reader;
+		if (iWorkbook == null) {
+			reader = isOOXML(inputFile) ? new XSSFEventReader(inputFile, sheetNb) : new HSSFEventReader(inputFile, sheetNb);
+		}
+		else {
+			reader = new HSSFSheetReader(iWorkbook.getSheetAt(sheetNb));
+		}
+		params.getPhaseTimes().end(open, reader.getSheetName(), 0, 0);
+		return reader;
+	}
+
+	/**
+	 * Transposes one sheet : copies the first lines, writes the header, analyzes the comments and writes the body,
+	 * each one being a phase of {@link Parameters#getPhaseTimes()}.
+	 * @param iSheet
+	 * 		The reader of the input sheet
+	 * @param oSheet
+	 * 		Where the output is written
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The sheet couple, once its body is written
+	 */
+	public static SheetCouple transposeSheet(SheetReader iSheet, OutputSink oSheet, Parameters params) {
+		return transposeSheet(iSheet, oSheet, null, null, params);
+	}
+
+	/**
+	 * Transposes one sheet like {@link MainXLS#transposeSheet(SheetReader, OutputSink, Parameters)}, saving
+	 * where it is in a checkpoint. A sheet resumed from its checkpoint goes on from there : a sheet already done
+	 * is only counted.
+	 * A sheet with the layout of its previous output only gets its new periods transposed, if it didn't change
+	 * otherwise : else the output is started over.
+	 * @param iSheet
+	 * 		The reader of the input sheet
+	 * @param oSheet
+	 * 		Where the output is written
+	 * @param checkpoint
+	 * 		The checkpoint of the sheet, null for none
+	 * @param layout
+	 * 		The layout of the previous output, null if the sheet isn't transposed incrementally
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The sheet couple, once its body is written
+	 */
+	public static SheetCouple transposeSheet(SheetReader iSheet, OutputSink oSheet, Checkpoint checkpoint, OutputLayout layout, Parameters params) {
+
+		final int linesToCopy = params.getLinesToCopy();
+		final PhaseTimes phases = params.getPhaseTimes();
+		final String sheetName = iSheet.getSheetName();
+
+		SheetCouple duo = new SheetCouple(iSheet, oSheet, linesToCopy);
+		duo.setCommentCache(params.getCommentCache());
+		duo.setProgressListener(params.getProgressListener(), params.getProgressInterval());
+
+	    duo.getInputFile().setSerieNb(params.getSerieNb());
+
+	    // The output is written again if the input changed more than its periods
+	    if (layout != null) {
+	    	layout.readHeader(iSheet, linesToCopy, params.getSerieNb());
+	    	if (layout.isLoaded() && !layout.matches(params.getSerieNb())) {
+	    		System.out.println(sheetName + " changed since its last transposition, not only its periods : transposing it again.");
+	    		try {
+	    			layout.getSink().restart(linesToCopy);
+	    		} catch (IOException e) {
+	    			throw new UncheckedIOException(e);
+	    		}
+	    	}
+	    }
+
+	    PhaseEvent phase = phases.begin(PhaseTimes.COPY);
 	    duo.copy(0, 0, linesToCopy);
-	    
+	    phases.end(phase, sheetName, linesToCopy, linesToCopy);
+
+	    phase = phases.begin(PhaseTimes.HEADER);
 	    duo.writeHeader(linesToCopy);
-	    
-	    duo.writeBody();
-	    	    
-	    HSSFSheet iSuppSheet;
-	    
-	    if ((iSuppSheet = iWorkbook.getSheet("suppression")) != null) {
-	    	
-	    	XSSFSheet oSuppSheet = oWorkbook.createSheet("suppression");
-	    	
-	    	SheetCouple duoSupp = new SheetCouple(iSuppSheet, oSuppSheet, linesToCopy);
-	    	
-	    	duoSupp.getInputFile().setSerieNb(serieNb);
-	    	
-	    	duoSupp.copy(0, 0, linesToCopy);
-		    
-		    duoSupp.writeHeader(linesToCopy);
-		    
-		    duoSupp.writeBody();
-
-		  
+	    phases.end(phase, sheetName, 1, 1);
+
+	    if (checkpoint != null) {
+	    	if (checkpoint.isLoaded()) {
+	    		duo.resume(checkpoint);
+	    		if (checkpoint.isDone()) {
+	    			return duo;
+	    		}
+	    	}
+	    	duo.setCheckpoint(checkpoint, params.getCheckpointInterval());
 	    }
-	    
-	    
-	    FileOutputStream out = new FileOutputStream(new File(outputName));
-		oWorkbook.write(out);
-		out.close();
-		
-		iWorkbook.close();
-		oWorkbook.close();
-		
-
-		} catch (FileNotFoundException e) {
+
+	    if (layout != null && layout.isLoaded()) {
+	    	int newPeriodsNb = duo.getOutputFile().getPeriodCodec().size() - layout.getPeriodsNb();
+	    	if (newPeriodsNb < 0) {
+	    		throw new IllegalStateException(sheetName + " has less periods than its layout");
+	    	}
+	    	System.out.println(sheetName + " : " + newPeriodsNb + " new period(s) appended.");
+	    	duo.append(layout.getPeriodsNb(), layout.getNextOutputRow());
+	    	if (newPeriodsNb == 0) {
+	    		layout.update(duo);
+	    		return duo;
+	    	}
+	    }
+
+	    phase = phases.begin(PhaseTimes.COMMENTS);
+	    duo.indexComments();
+	    phases.end(phase, sheetName, duo.getCommentsNb(), 0);
+
+	    phase = phases.begin(PhaseTimes.BODY);
+	    // The lines can only be transposed by several threads if the input can be read by several threads
+	    if (params.getRowThreads() > 1 && iSheet.isRandomAccess()) {
+	    	ForkJoinPool pool = new ForkJoinPool(params.getRowThreads());
+	    	try {
+	    		duo.writeBody(pool);
+	    	} finally {
+	    		pool.shutdown();
+	    	}
+	    }
+	    else {
+	    	duo.writeBody();
+	    }
+	    phases.end(phase, sheetName, duo.getReadLinesNb(), duo.getWrittenLinesNb());
+
+	    if (layout != null) {
+	    	layout.update(duo);
+	    }
+	    return duo;
+	}
+
+	/**
+	 * Transposes several sheets at the same time, each one with its own {@link SheetCouple} on its own thread.
+	 * With the event model, each thread opens its own reader ; the in memory sheets are prepared 
+	 * beforehand (see {@link HSSFSheetReader#HSSFSheetReader(org.apache.poi.hssf.usermodel.HSSFSheet)}).
+	 * If one sheet fails, the whole file is cancelled.
+	 * @param inputFile
+	 * 		The input file
+	 * @param iWorkbook
+	 * 		The input workbook, null if it is read as a stream (event model or .xlsx file)
+	 * @param sheets
+	 * 		The indexes of the sheets to transpose
+	 * @param oSheets
+	 * 		Where each sheet is written, in the same order
+	 * @param checkpoints
+	 * 		The checkpoint of each sheet, in the same order (null for none), or null
+	 * @param layouts
+	 * 		The layout of the previous output of each sheet, in the same order (null for none), or null
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @param result
+	 * 		The result the lines read and written are added to
+	 * @throws IOException
+	 * 		If a sheet couldn't be transposed
+	 */
+	private static void transposeConcurrently(final File inputFile, final HSSFWorkbook iWorkbook, List<Integer> sheets, List<OutputSink> oSheets,
+			List<Checkpoint> checkpoints, List<OutputLayout> layouts, final Parameters params, TranspositionResult result) throws IOException {
+
+		final List<SheetReader> readers = new ArrayList<SheetReader>();
+		for (int k = 0; k < sheets.size(); k++) {
+			readers.add(iWorkbook == null ? null : openSheet(inputFile, iWorkbook, sheets.get(k), params));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(params.getThreads(), sheets.size()));
+		List<Future<SheetCouple>> futures = new ArrayList<Future<SheetCouple>>();
+
+		for (int k = 0; k < sheets.size(); k++) {
+			final int sheetNb = sheets.get(k);
+			final SheetReader prepared = readers.get(k);
+			final OutputSink oSheet = oSheets.get(k);
+			final Checkpoint checkpoint = checkpoints == null ? null : checkpoints.get(k);
+			final OutputLayout layout = layouts == null ? null : layouts.get(k);
+			futures.add(pool.submit(new Callable<SheetCouple>() {
+				@Override
+				public SheetCouple call() throws IOException {
+					SheetReader iSheet = prepared != null ? prepared : openSheet(inputFile, null, sheetNb, params);
+					try {
+						return transposeSheet(iSheet, oSheet, checkpoint, layout, params);
+					} finally {
+						iSheet.close();
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+
+		try {
+			for (Future<SheetCouple> f : futures) {
+				result.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Transposition interrupted");
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Prints why the transposition of a file has been cancelled.
+	 * @param inputName
+	 * 		The name of the file
+	 * @param e
+	 * 		The exception that cancelled the transposition
+	 */
+	public static void reportFailure(String inputName, Exception e) {
+		if (e instanceof FileNotFoundException) {
 			System.out.println("File " + inputName + " not found.");
 			System.out.println("Cancelling transposition of this file.");
-		} catch (IOException e) {
+		}
+		else if (e instanceof IllegalArgumentException) {
+			System.out.println(e.getMessage() + " for file " + inputName + ".");
+			System.out.println("Cancelling transposition of this file.");
+		}
+		else {
 			System.out.println("Unknown exception raised for file " + inputName + ".");
 			System.out.println("Cancelling transposition of this file.");
 			System.out.println("Stack Trace following : ");
 			e.printStackTrace();
-		} 
-
-		
-
+		}
 	}
 
 }
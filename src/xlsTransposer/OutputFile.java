@@ -1,7 +1,7 @@
 package xlsTransposer;
 
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.ss.usermodel.Sheet;
 
 public class OutputFile extends InOutFile {
 	
@@ -11,48 +11,28 @@ public class OutputFile extends InOutFile {
 	 * @param sheet 
 	 * 		The sheet in which it will be written
 	 */
-	public OutputFile(XSSFSheet sheet) {
+	public OutputFile(Sheet sheet) {
 		super(sheet);
 	}
 	/**
-	 * An array containing all the years (used in the case of a yearly period) 
-	 * @see SheetCouple#isMonthly()
+	 * Constructor
+	 * @param sink 
+	 * 		Where it will be written : a sheet or a text file
 	 */
-	private Cell[] years;
-	
-	
-	public Cell[] getYears() {
-		return years;
-	}
-
-	public void setYears(Cell[] years) {
-		this.years = years;
+	public OutputFile(OutputSink sink) {
+		super(sink);
 	}
 	/**
-	 * An array containing all the years (used in the case of a monthly period)
-	 * @see SheetCouple#isMonthly()
+	 * The periods of the header, parsed once
 	 */
-	private int[] yearsInt;
+	private PeriodCodec periodCodec;
 	
-	public int[] getYearsInt() {
-		return yearsInt;
+	public PeriodCodec getPeriodCodec() {
+		return periodCodec;
 	}
 
-	public void setYearsInt(int[] yearsString) {
-		this.yearsInt = yearsString;
-	}
-	/**
-	 * An array containing all the months (used in the case of a monthly period)
-	 * @see SheetCouple#isMonthly()
-	 */
-	public int[] months;
-	
-	public int[] getMonths() {
-		return months;
-	}
-
-	public void setMonths(int[] months) {
-		this.months = months;
+	public void setPeriodCodec(PeriodCodec periodCodec) {
+		this.periodCodec = periodCodec;
 	}
 	/**
 	 * The right part of the header that will be written in the sheet.
@@ -93,46 +73,69 @@ public class OutputFile extends InOutFile {
 		this.commentColumnId = commentColumnId;
 	}
 	/**
-	 * All the values (one per period) of one line of the input sheet.
+	 * The line of the input sheet being transposed : its left header, its values (one per period) 
+	 * and its right header. Filled again for each line.
 	 */
-	private Cell[] values;
+	private RowBuffer line;
 	
- 	public Cell[] getValues() {
-		return values;
+ 	public RowBuffer getLine() {
+		return line;
 	}
-	public void setValues(Cell[] values) {
-		this.values = values;
+	public void setLine(RowBuffer line) {
+		this.line = line;
 	}
 	/**
 	 * Divides the header of the input sheet between {@link OutputFile#leftHeader}, 
-	 * {@link OutputFile#years} and {@link OutputFile#rightHeader}.
+	 * the periods (parsed in {@link OutputFile#periodCodec}) and {@link OutputFile#rightHeader}.
 	 * @param header 
 	 * 		The header of the input sheet
 	 * @param serieNb
 	 * 		The number of cells of the {@link OutputFile#leftHeader}
 	 * @param firstRightHeader
 	 * 		The index of the first cell of the {@link OutputFile#rightHeader} 
+	 * @param dateFormats
+	 * 		The date formats of the workbook of the header
 	 */
-	public void divideHeader(Cell[] header, int serieNb, int firstRightHeader) {
+	public void divideHeader(Cell[] header, int serieNb, int firstRightHeader, DateFormatCache dateFormats) {
 		this.leftHeader = new Cell[serieNb];
 		Cell[] left = new Cell[header.length - serieNb];
 		Tools.divide(header, leftHeader, left);
-		years = new Cell[firstRightHeader - serieNb];
-		rightHeader = new Cell[left.length - years.length];
-		Tools.divide(left, years, rightHeader);
+		Cell[] periods = new Cell[firstRightHeader - serieNb];
+		rightHeader = new Cell[left.length - periods.length];
+		Tools.divide(left, periods, rightHeader);
+		periodCodec = new PeriodCodec(periods, dateFormats);
 	}
 	
 	
 	/**
 	 * Just the columns added in the output if yearly period.
-	 * @see SheetCouple#isMonthly()
+	 * @see PeriodCodec#getColumns()
 	 */
 	public static final String[] periodValueYearly = {"period", "value"};
 	/**
 	 * Just the columns added in the output if monthly period.
-	 * @see SheetCouple#isMonthly()
+	 * @see PeriodCodec#getColumns()
 	 */
 	public static final String[] periodValueMonthly = {"year", "month", "value"};
+	/**
+	 * Just the columns added in the output if quarterly period.
+	 * @see PeriodCodec#getColumns()
+	 */
+	public static final String[] periodValueQuarterly = {"year", "quarter", "value"};
+	/**
+	 * Just the columns added in the output if semester period.
+	 * @see PeriodCodec#getColumns()
+	 */
+	public static final String[] periodValueSemester = {"year", "semester", "value"};
+	/**
+	 * Just the columns added in the output if weekly period.
+	 * @see PeriodCodec#getColumns()
+	 */
+	public static final String[] periodValueWeekly = {"year", "week", "value"};
+	/**
+	 * All the columns that can be added for the period and the value.
+	 */
+	public static final String[][] periodValues = {periodValueYearly, periodValueSemester, periodValueQuarterly, periodValueMonthly, periodValueWeekly};
 	/**
 	 * Just the columns added for the comments.
 	 */
@@ -0,0 +1,266 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * The layout of a sheet transposed in a text file (<code>-incremental</code>), saved next to the output :
+ * the header of the input, the number of periods, the last row, and where the output ends.
+ * When the input gets new period columns (between the last period and the right header), the next run only
+ * transposes the new periods and appends their lines to the output : the input lines are still all read,
+ * but only rows x new periods lines are written.
+ * The input can be appended to only if the header is the same apart from the new periods, and it has the same rows.
+ * Otherwise it is transposed again from the start.
+ * @author hamme
+ *
+ */
+public class OutputLayout {
+
+	/**
+	 * Constructor
+	 * @param file
+	 * 		The file of the layout
+	 */
+	public OutputLayout(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * The file of the layout
+	 */
+	private File file;
+	/**
+	 * The sink writing the output
+	 */
+	private CsvSink sink;
+	/**
+	 * True if the layout was read from the file, and the output can be appended to
+	 */
+	private boolean loaded;
+	/**
+	 * The texts of the header of the input, up to its last column
+	 */
+	private String[] header;
+	/**
+	 * The texts of the header of the sheet being transposed, read by {@link OutputLayout#readHeader(SheetReader, int, int)}
+	 */
+	private String[] currentHeader;
+	/**
+	 * The last row of the sheet being transposed
+	 */
+	private int currentLastRowNum;
+	/**
+	 * The number of periods of the input
+	 */
+	private int periodsNb;
+	/**
+	 * The last row of the input
+	 */
+	private int lastRowNum;
+	/**
+	 * The row of the next line of the output
+	 */
+	private int nextOutputRow;
+	/**
+	 * The length of the output
+	 */
+	private long outputLength;
+	/**
+	 * The number of fields of the lines of the output
+	 */
+	private int outputWidth;
+
+	/**
+	 * Returns the file of the layout of an output.
+	 * @param output
+	 * 		The output file
+	 * @return
+	 * 		The file of its layout
+	 */
+	public static File fileOf(File output) {
+		return new File(output.getPath() + ".layout");
+	}
+
+	public CsvSink getSink() {
+		return sink;
+	}
+
+	public void setSink(CsvSink sink) {
+		this.sink = sink;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public int getPeriodsNb() {
+		return periodsNb;
+	}
+
+	public int getNextOutputRow() {
+		return nextOutputRow;
+	}
+
+	public long getOutputLength() {
+		return outputLength;
+	}
+
+	public int getOutputWidth() {
+		return outputWidth;
+	}
+
+	/**
+	 * Reads the layout saved with the output, if the output is still as it was then.
+	 * @param output
+	 * 		The output file
+	 * @return
+	 * 		true if the output can be appended to
+	 * @throws IOException
+	 * 		If the layout can't be read
+	 */
+	public boolean load(File output) throws IOException {
+
+		if (!file.exists()) {
+			return false;
+		}
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			p.load(in);
+		} finally {
+			in.close();
+		}
+		outputLength = Long.parseLong(p.getProperty("outputLength"));
+		if (output.length() != outputLength) {
+			System.out.println(output.getName() + " changed since its layout was saved : transposing it again.");
+			return false;
+		}
+		header = new String[Integer.parseInt(p.getProperty("headerSize"))];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = p.getProperty("header." + i);
+		}
+		periodsNb = Integer.parseInt(p.getProperty("periodsNb"));
+		lastRowNum = Integer.parseInt(p.getProperty("lastRowNum"));
+		nextOutputRow = Integer.parseInt(p.getProperty("nextOutputRow"));
+		outputWidth = Integer.parseInt(p.getProperty("outputWidth"));
+		loaded = true;
+		return true;
+	}
+
+	/**
+	 * Reads the header of the sheet being transposed, before anything else is read.
+	 * @param reader
+	 * 		The reader of the sheet
+	 * @param headerRowId
+	 * 		The row of the header
+	 * @param serieNb
+	 * 		The number of columns of the left header
+	 */
+	public void readHeader(SheetReader reader, int headerRowId, int serieNb) {
+		currentHeader = headerOf(reader.getRow(headerRowId), serieNb);
+		currentLastRowNum = reader.getLastRowNum();
+	}
+
+	/**
+	 * Checks if the sheet being transposed is the sheet of the layout with new periods : the same left header,
+	 * the same periods followed by new ones, the same right header and the same last row.
+	 * If it isn't, the layout is dropped.
+	 * @param serieNb
+	 * 		The number of columns of the left header
+	 * @return
+	 * 		true if the sheet can be appended to the output
+	 */
+	public boolean matches(int serieNb) {
+
+		int added = currentHeader.length - header.length;
+		int firstRight = serieNb + periodsNb;
+		boolean same = added >= 0 && firstRight <= header.length && currentLastRowNum == lastRowNum
+				&& Arrays.equals(Arrays.copyOfRange(currentHeader, 0, firstRight), Arrays.copyOfRange(header, 0, firstRight))
+				&& Arrays.equals(Arrays.copyOfRange(currentHeader, firstRight + added, currentHeader.length),
+						Arrays.copyOfRange(header, firstRight, header.length));
+		if (!same) {
+			loaded = false;
+		}
+		return same;
+	}
+
+	/**
+	 * Takes the layout of the sheet being transposed, once its body is written.
+	 * @param duo
+	 * 		The sheet couple
+	 */
+	public void update(SheetCouple duo) {
+		header = currentHeader;
+		lastRowNum = currentLastRowNum;
+		periodsNb = duo.getOutputFile().getPeriodCodec().size();
+		nextOutputRow = duo.getNextOutputRow();
+	}
+
+	/**
+	 * Returns the texts of a header, up to the first blank cell after the left header
+	 * (see {@link InputFile#findFirstBlankColumn(int, int)}).
+	 * @param row
+	 * 		The header
+	 * @param serieNb
+	 * 		The number of columns of the left header
+	 * @return
+	 * 		The texts of its cells
+	 */
+	private static String[] headerOf(Row row, int serieNb) {
+		List<String> texts = new ArrayList<String>();
+		if (row != null) {
+			for (int i = 0; i < row.getLastCellNum(); i++) {
+				Cell cell = row.getCell(i, Row.RETURN_BLANK_AS_NULL);
+				if (cell == null && i >= serieNb) {
+					break;
+				}
+				texts.add(cell == null ? "" : cell.toString());
+			}
+		}
+		return texts.toArray(new String[texts.size()]);
+	}
+
+	/**
+	 * Saves the layout, once the output is closed.
+	 * @param output
+	 * 		The output file
+	 * @throws IOException
+	 * 		If the layout can't be written
+	 */
+	public void save(File output) throws IOException {
+
+		Properties p = new Properties();
+		p.setProperty("headerSize", String.valueOf(header.length));
+		for (int i = 0; i < header.length; i++) {
+			p.setProperty("header." + i, header[i]);
+		}
+		p.setProperty("periodsNb", String.valueOf(periodsNb));
+		p.setProperty("lastRowNum", String.valueOf(lastRowNum));
+		p.setProperty("nextOutputRow", String.valueOf(nextOutputRow));
+		p.setProperty("outputLength", String.valueOf(output.length()));
+		p.setProperty("outputWidth", String.valueOf(sink.getWidth()));
+
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			p.store(out, "Layout of " + output.getName());
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
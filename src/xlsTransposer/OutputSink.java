@@ -0,0 +1,83 @@
+package xlsTransposer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Where the lines of the output are written : a sheet or a delimited text file.
+ * The rows are written in increasing order. Once a row is created, its cells are set
+ * until the next row is created.
+ * A sink is either closed, completing the output, or aborted after a failure.
+ * @author hamme
+ *
+ */
+public interface OutputSink extends Closeable {
+
+	/**
+	 * Creates a row. It becomes the current row, the one the cells are set in.
+	 * @param rowId
+	 * 		The number of the row, greater than the one of the previous row
+	 */
+	public void createRow(int rowId);
+
+	/**
+	 * Creates an empty cell in the current row.
+	 * @param columnId
+	 * 		The column of the cell
+	 */
+	public void setBlank(int columnId);
+
+	/**
+	 * Sets a number in a cell of the current row.
+	 * @param columnId
+	 * 		The column of the cell
+	 * @param value
+	 * 		The number
+	 */
+	public void setValue(int columnId, double value);
+
+	/**
+	 * Sets a date in a cell of the current row.
+	 * @param columnId
+	 * 		The column of the cell
+	 * @param value
+	 * 		The date
+	 * @param format
+	 * 		The style of the input cell, giving the format of the date
+	 */
+	public void setValue(int columnId, Date value, CellStyle format);
+
+	/**
+	 * Sets a text in a cell of the current row.
+	 * @param columnId
+	 * 		The column of the cell
+	 * @param value
+	 * 		The text
+	 */
+	public void setValue(int columnId, String value);
+
+	/**
+	 * Sets a text in a cell of a row already created. The row should be the current one
+	 * (some sinks can reach back to older rows).
+	 * @param rowId
+	 * 		The row of the cell
+	 * @param columnId
+	 * 		The column of the cell
+	 * @param value
+	 * 		The text
+	 */
+	public void setValue(int rowId, int columnId, String value);
+
+	/**
+	 * Drops the output after a failure, instead of closing it : what the sink still holds isn't written,
+	 * and a file it wrote is deleted (or cut back to what it held before), so that no partial output
+	 * looks complete.
+	 * @throws IOException
+	 * 		If the file can't be closed
+	 */
+	public void abort() throws IOException;
+
+}
@@ -0,0 +1,613 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import commentsHandler.CommentCache;
+
+/**
+ * The parameters of a transposition, read from the command line.
+ * Usage : <code>MainXLS inputFile [sheetNb] [-window rows] [-event]</code>
+ * or, for a batch : <code>MainXLS -batch dirOrGlob... [-sheet sheetNb] [-threads n] [-summary file] [...]</code>
+ * <code>-sheets all</code> or <code>-sheets 0,2,name</code> transposes several sheets of each file at the same time.
+ * <code>-rowThreads n</code> transposes the lines of each sheet with n threads.
+ * <code>-format csv</code>, <code>-format tsv</code> or <code>-format parquet</code> writes each sheet in its own file instead of a workbook.
+ * <code>-commentCache n</code> keeps up to n analyzed comments by text for the whole run.
+ * <code>-progress seconds</code> prints the progress of each sheet every few seconds (see {@link ConsoleProgress}).
+ * <code>-checkpoint seconds</code> saves where each sheet is every few seconds, <code>-resume</code> goes on from there
+ * (see {@link Checkpoint}) : only with the csv and tsv formats.
+ * <code>-incremental</code> only appends the new periods of an input to its previous output (see {@link OutputLayout}) :
+ * only with the csv and tsv formats.
+ * <code>-untranspose</code> goes back from a transposed file to the wide layout (see {@link Untransposer}),
+ * keeping up to <code>-groupBudget n</code> series in memory.
+ * <code>-sort period|column,...</code> sorts the lines of the body by period or by columns of the header
+ * (see {@link SortingSink}), keeping up to <code>-sortBudget megabytes</code> of lines in memory.
+ * <code>-maxRows n</code> goes on in continuation files when a sheet of the workbook gets over n rows,
+ * the limit of a .xlsx sheet by default (see {@link SplittingSink}).
+ * <code>-cache file</code> skips the files that didn't change since they were transposed (see {@link ResultCache}).
+ * <code>-phases</code> prints the time of each phase of the transposition at the end (see {@link PhaseTimes}).
+ * @author hamme
+ *
+ */
+public class Parameters {
+
+	/**
+	 * The name of the file to transpose.
+	 */
+	private String inputName = "";
+
+	public String getInputName() {
+		return inputName;
+	}
+
+	public void setInputName(String inputName) {
+		this.inputName = inputName;
+	}
+
+	/**
+	 * The index (starting at 0) of the sheet to transpose.
+	 */
+	private int sheetNb = 0;
+
+	public int getSheetNb() {
+		return sheetNb;
+	}
+
+	public void setSheetNb(int sheetNb) {
+		this.sheetNb = sheetNb;
+	}
+
+	/**
+	 * The number of lines at the top of the input sheet that are copy/pasted.
+	 */
+	private int linesToCopy = 2;
+
+	public int getLinesToCopy() {
+		return linesToCopy;
+	}
+
+	public void setLinesToCopy(int linesToCopy) {
+		this.linesToCopy = linesToCopy;
+	}
+
+	/**
+	 * Number of columns before the actual value or period.
+	 */
+	private int serieNb = 3;
+
+	public int getSerieNb() {
+		return serieNb;
+	}
+
+	public void setSerieNb(int serieNb) {
+		this.serieNb = serieNb;
+	}
+
+	/**
+	 * The number of output rows kept in memory when the output is streamed.
+	 * Older rows are flushed to a temporary file. 0 builds the whole output in memory.
+	 */
+	private int rowWindow = 0;
+
+	public int getRowWindow() {
+		return rowWindow;
+	}
+
+	public void setRowWindow(int rowWindow) {
+		this.rowWindow = rowWindow;
+	}
+
+	/**
+	 * Tests if the output should be streamed.
+	 * @see Parameters#rowWindow
+	 * @return
+	 * 		true if streamed, false if built in memory
+	 */
+	public boolean isStreamed() {
+		return rowWindow > 0;
+	}
+
+	/**
+	 * True if the input is read record by record (event model) instead of being loaded in memory.
+	 */
+	private boolean eventModel = false;
+
+	public boolean isEventModel() {
+		return eventModel;
+	}
+
+	public void setEventModel(boolean eventModel) {
+		this.eventModel = eventModel;
+	}
+
+	/**
+	 * True if several files (directories or globs) are transposed in one run.
+	 */
+	private boolean batch = false;
+
+	public boolean isBatch() {
+		return batch;
+	}
+
+	public void setBatch(boolean batch) {
+		this.batch = batch;
+	}
+
+	/**
+	 * The directories, globs or files to transpose in a batch.
+	 */
+	private List<String> inputs = new ArrayList<String>();
+
+	public List<String> getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * The number of files transposed at the same time in a batch.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * The file the summary of a batch is written in, null to only print it.
+	 */
+	private String summaryName = null;
+
+	public String getSummaryName() {
+		return summaryName;
+	}
+
+	public void setSummaryName(String summaryName) {
+		this.summaryName = summaryName;
+	}
+
+	/**
+	 * The sheets to transpose at the same time : "all" or a list of indexes and names separated by commas.
+	 * null to transpose the sheet {@link Parameters#sheetNb} (and the "suppression" sheet) one after the other.
+	 */
+	private String sheetSelection = null;
+
+	public String getSheetSelection() {
+		return sheetSelection;
+	}
+
+	public void setSheetSelection(String sheetSelection) {
+		this.sheetSelection = sheetSelection;
+	}
+
+	/**
+	 * Tests if several sheets are transposed at the same time.
+	 * @see Parameters#sheetSelection
+	 * @return
+	 * 		true if they are, false otherwise
+	 */
+	public boolean isConcurrentSheets() {
+		return sheetSelection != null;
+	}
+
+	/**
+	 * The number of threads transposing the lines of one sheet, 1 to write them one after the other.
+	 * Only used when the input is in memory.
+	 * @see SheetCouple#writeBody(java.util.concurrent.ForkJoinPool)
+	 */
+	private int rowThreads = 1;
+
+	public int getRowThreads() {
+		return rowThreads;
+	}
+
+	public void setRowThreads(int rowThreads) {
+		this.rowThreads = rowThreads;
+	}
+
+	/**
+	 * The format of the output : "xlsx" (one workbook), "csv", "tsv" (one text file per sheet) 
+	 * or "parquet" (one columnar file per sheet).
+	 */
+	private String format = "xlsx";
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+
+	/**
+	 * @return
+	 * 		true if the output is written in one file per sheet
+	 */
+	public boolean isFilePerSheet() {
+		return !format.equals("xlsx");
+	}
+
+	/**
+	 * The maximal number of analyzed comments kept by text, 0 to analyze each comment.
+	 * @see commentsHandler.CommentCache
+	 */
+	private int commentCacheSize = 4096;
+
+	public int getCommentCacheSize() {
+		return commentCacheSize;
+	}
+
+	public void setCommentCacheSize(int commentCacheSize) {
+		this.commentCacheSize = commentCacheSize;
+	}
+
+	/**
+	 * The analyzed comments, shared by all the sheets (and files) transposed with these parameters.
+	 * Created the first time it is asked for.
+	 */
+	private CommentCache commentCache = null;
+
+	public synchronized CommentCache getCommentCache() {
+		if (commentCache == null) {
+			commentCache = SheetCouple.createCommentCache(commentCacheSize);
+		}
+		return commentCache;
+	}
+
+	/**
+	 * Told how the body of each sheet is going, null if nobody listens.
+	 */
+	private ProgressListener progressListener = null;
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * The minimal time between two calls of the {@link Parameters#progressListener}, in milliseconds.
+	 */
+	private long progressInterval = 1000;
+
+	public long getProgressInterval() {
+		return progressInterval;
+	}
+
+	public void setProgressInterval(long progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * The minimal time between two checkpoints of a sheet, in milliseconds, 0 for none.
+	 */
+	private long checkpointInterval = 0;
+
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * If the transposition goes on from the checkpoints of a previous run.
+	 */
+	private boolean resume = false;
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * The columns the lines of the body are sorted by, null to keep the order of the input.
+	 */
+	private String[] sortColumns;
+
+	public String[] getSortColumns() {
+		return sortColumns;
+	}
+
+	public void setSortColumns(String[] sortColumns) {
+		this.sortColumns = sortColumns;
+	}
+
+	/**
+	 * The number of bytes of lines a sorted sheet keeps in memory before they are spilled to disk,
+	 * a sixteenth of the heap by default.
+	 */
+	private long sortBudget = Runtime.getRuntime().maxMemory() / 16;
+
+	public long getSortBudget() {
+		return sortBudget;
+	}
+
+	public void setSortBudget(long sortBudget) {
+		this.sortBudget = sortBudget;
+	}
+
+	/**
+	 * The number of rows of a sheet of the output workbook, the following lines going in continuation files.
+	 */
+	private int maxRows = SplittingSink.MAX_ROWS;
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	public void setMaxRows(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * If the file is untransposed instead of transposed.
+	 */
+	private boolean untranspose = false;
+
+	public boolean isUntranspose() {
+		return untranspose;
+	}
+
+	public void setUntranspose(boolean untranspose) {
+		this.untranspose = untranspose;
+	}
+
+	/**
+	 * The number of series an untransposition keeps in memory before they are spilled to disk.
+	 */
+	private int groupBudget = 500000;
+
+	public int getGroupBudget() {
+		return groupBudget;
+	}
+
+	public void setGroupBudget(int groupBudget) {
+		this.groupBudget = groupBudget;
+	}
+
+	/**
+	 * If only the new periods of an input are appended to its previous output.
+	 */
+	private boolean incremental = false;
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * The manifest of the files already transposed, null for none.
+	 */
+	private String resultCacheName = null;
+
+	public String getResultCacheName() {
+		return resultCacheName;
+	}
+
+	public void setResultCacheName(String resultCacheName) {
+		this.resultCacheName = resultCacheName;
+	}
+
+	/**
+	 * The files already transposed, read from {@link Parameters#resultCacheName} the first time it is asked for.
+	 */
+	private ResultCache resultCache = null;
+
+	/**
+	 * @return
+	 * 		The files already transposed, null if there is no manifest
+	 */
+	public synchronized ResultCache getResultCache() {
+		if (resultCache == null && resultCacheName != null) {
+			resultCache = new ResultCache(new File(resultCacheName));
+		}
+		return resultCache;
+	}
+
+	/**
+	 * If the table of the phases is printed at the end of the run.
+	 */
+	private boolean phaseTable = false;
+
+	public boolean isPhaseTable() {
+		return phaseTable;
+	}
+
+	public void setPhaseTable(boolean phaseTable) {
+		this.phaseTable = phaseTable;
+	}
+
+	/**
+	 * The measure of the phases of all the transpositions with these parameters.
+	 * Created the first time it is asked for.
+	 */
+	private PhaseTimes phaseTimes = null;
+
+	public synchronized PhaseTimes getPhaseTimes() {
+		if (phaseTimes == null) {
+			phaseTimes = new PhaseTimes(phaseTable);
+		}
+		return phaseTimes;
+	}
+
+	/**
+	 * Reads the parameters from the arguments of the command line.
+	 * The first argument that isn't an option is the input file, the second one the sheet number.
+	 * In a batch, all the arguments that aren't options are inputs.
+	 * @param args
+	 * 		The arguments of the command line
+	 * @return
+	 * 		The parameters
+	 * @throws IllegalArgumentException
+	 * 		If an option is unknown or misses its value
+	 */
+	public static Parameters parse(String[] args) {
+
+		Parameters p = new Parameters();
+		List<String> positionals = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-window":
+				p.setRowWindow(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-event":
+				p.setEventModel(true);
+				break;
+			case "-batch":
+				p.setBatch(true);
+				break;
+			case "-sheet":
+				p.setSheetNb(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-sheets":
+				p.setSheetSelection(value(args, ++i));
+				break;
+			case "-rowThreads":
+				p.setRowThreads(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-threads":
+				p.setThreads(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-summary":
+				p.setSummaryName(value(args, ++i));
+				break;
+			case "-commentCache":
+				p.setCommentCacheSize(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-progress":
+				p.setProgressListener(new ConsoleProgress());
+				p.setProgressInterval(Math.round(Double.parseDouble(value(args, ++i)) * 1000));
+				break;
+			case "-checkpoint":
+				p.setCheckpointInterval(Math.round(Double.parseDouble(value(args, ++i)) * 1000));
+				break;
+			case "-resume":
+				p.setResume(true);
+				break;
+			case "-sort":
+				p.setSortColumns(value(args, ++i).split(","));
+				break;
+			case "-sortBudget":
+				p.setSortBudget(Long.parseLong(value(args, ++i)) << 20);
+				break;
+			case "-maxRows":
+				p.setMaxRows(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-untranspose":
+				p.setUntranspose(true);
+				break;
+			case "-groupBudget":
+				p.setGroupBudget(Integer.parseInt(value(args, ++i)));
+				break;
+			case "-incremental":
+				p.setIncremental(true);
+				break;
+			case "-cache":
+				p.setResultCacheName(value(args, ++i));
+				break;
+			case "-phases":
+				p.setPhaseTable(true);
+				break;
+			case "-format":
+				p.setFormat(value(args, ++i).toLowerCase());
+				break;
+			default:
+				if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+				positionals.add(args[i]);
+				break;
+			}
+		}
+		
+		if (p.isBatch()) {
+			p.getInputs().addAll(positionals);
+			if (p.getInputs().isEmpty()) {
+				throw new IllegalArgumentException("No input for the batch");
+			}
+		}
+		// Positional arguments : the input file, then the sheet number
+		else {
+			if (positionals.size() > 0) {
+				p.setInputName(positionals.get(0));
+			}
+			if (positionals.size() > 1) {
+				p.setSheetNb(Integer.parseInt(positionals.get(1)));
+			}
+		}
+		if (!p.getFormat().matches("xlsx|csv|tsv|parquet")) {
+			throw new IllegalArgumentException("Unknown format " + p.getFormat());
+		}
+		if (p.getCommentCacheSize() < 0) {
+			throw new IllegalArgumentException("The size of the comment cache can't be negative");
+		}
+		if (p.getProgressInterval() < 0) {
+			throw new IllegalArgumentException("The interval of the progress can't be negative");
+		}
+		if (p.getCheckpointInterval() < 0) {
+			throw new IllegalArgumentException("The interval of the checkpoints can't be negative");
+		}
+		// A resumed run keeps saving its checkpoints
+		if (p.isResume() && p.getCheckpointInterval() == 0) {
+			p.setCheckpointInterval(60000);
+		}
+		if (p.getCheckpointInterval() > 0 && !p.getFormat().matches("csv|tsv")) {
+			throw new IllegalArgumentException("Only the csv and tsv outputs can be resumed");
+		}
+		if (p.isIncremental() && !p.getFormat().matches("csv|tsv")) {
+			throw new IllegalArgumentException("Only the csv and tsv outputs can be appended to");
+		}
+		if (p.isIncremental() && p.getCheckpointInterval() > 0) {
+			throw new IllegalArgumentException("An incremental transposition can't be checkpointed");
+		}
+		if (p.isUntranspose() && (!p.getFormat().equals("xlsx") || p.getCheckpointInterval() > 0 || p.isIncremental())) {
+			throw new IllegalArgumentException("An untransposition only writes a workbook, from the start");
+		}
+		if (p.getSortColumns() != null && (p.getCheckpointInterval() > 0 || p.isIncremental())) {
+			throw new IllegalArgumentException("A sorted output is written at the end : it can't be resumed or appended to");
+		}
+		if (p.getSortBudget() < 1) {
+			throw new IllegalArgumentException("The sort budget must be at least 1");
+		}
+		if (p.getMaxRows() <= p.getLinesToCopy() + 1 || p.getMaxRows() > SplittingSink.MAX_ROWS) {
+			throw new IllegalArgumentException("A sheet has between " + (p.getLinesToCopy() + 2) + " and " + SplittingSink.MAX_ROWS + " rows");
+		}
+		if (p.getGroupBudget() < 1) {
+			throw new IllegalArgumentException("The group budget must be at least 1");
+		}
+		if (p.getThreads() < 1 || p.getRowThreads() < 1) {
+			throw new IllegalArgumentException("The number of threads must be at least 1");
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the value following an option.
+	 * @param args
+	 * 		The arguments of the command line
+	 * @param i
+	 * 		The index of the value
+	 * @return
+	 * 		The value
+	 */
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for option " + args[i - 1]);
+		}
+		return args[i];
+	}
+}
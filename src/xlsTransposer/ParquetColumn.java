@@ -0,0 +1,443 @@
+package xlsTransposer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A column of a {@link ParquetSink}. Keeps the values of the current row group and writes them
+ * as a column chunk : a dictionary page (for the texts) followed by a data page, compressed with gzip.
+ * All the columns are optional : a blank cell is a null value.
+ * @author hamme
+ *
+ */
+class ParquetColumn {
+
+	/**
+	 * Kinds of column : texts encoded with a dictionary, 32 bits integers, doubles
+	 */
+	static final int TEXT = 0;
+	static final int INT32 = 1;
+	static final int DOUBLE = 2;
+
+	/**
+	 * Parquet physical types, encodings, page types and codec
+	 */
+	private static final int TYPE_INT32 = 1;
+	private static final int TYPE_DOUBLE = 5;
+	private static final int TYPE_BYTE_ARRAY = 6;
+	private static final int ENCODING_PLAIN = 0;
+	private static final int ENCODING_RLE = 3;
+	private static final int ENCODING_RLE_DICTIONARY = 8;
+	private static final int PAGE_DATA = 0;
+	private static final int PAGE_DICTIONARY = 2;
+	private static final int CODEC_GZIP = 2;
+	private static final int CONVERTED_UTF8 = 0;
+	private static final int OPTIONAL = 1;
+
+	/**
+	 * Constructor
+	 * @param name
+	 * 		The name of the column
+	 * @param kind
+	 * 		{@link ParquetColumn#TEXT}, {@link ParquetColumn#INT32} or {@link ParquetColumn#DOUBLE}
+	 */
+	ParquetColumn(String name, int kind) {
+		this.name = name;
+		this.kind = kind;
+	}
+
+	/**
+	 * The name of the column
+	 */
+	private String name;
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * The kind of the column
+	 */
+	private int kind;
+
+	int getKind() {
+		return kind;
+	}
+
+	/**
+	 * The number of values (null ones included) of the current row group
+	 */
+	private int size;
+	/**
+	 * The definition level of each value : 1 if it isn't null, 0 otherwise
+	 */
+	private int[] levels = new int[1024];
+	/**
+	 * The integer values, or the indexes in the dictionary of the texts
+	 */
+	private int[] ints;
+	/**
+	 * The double values
+	 */
+	private double[] doubles;
+	/**
+	 * The index in {@link ParquetColumn#dictionary} of each text
+	 */
+	private Map<String, Integer> indexes = new HashMap<String, Integer>();
+	/**
+	 * The different texts of the row group, in the order they were met
+	 */
+	private List<String> dictionary = new ArrayList<String>();
+	/**
+	 * The number of values that couldn't be converted to the type of the column, left null
+	 */
+	private long invalidNb;
+
+	long getInvalidNb() {
+		return invalidNb;
+	}
+
+	void addNull() {
+		grow();
+		levels[size++] = 0;
+	}
+
+	void addText(String value) {
+		if (kind == DOUBLE) {
+			try {
+				addDouble(Double.parseDouble(value.trim()));
+			} catch (NumberFormatException e) {
+				addInvalid();
+			}
+			return;
+		}
+		if (kind == INT32) {
+			try {
+				addInt(Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				addInvalid();
+			}
+			return;
+		}
+		Integer index = indexes.get(value);
+		if (index == null) {
+			index = dictionary.size();
+			indexes.put(value, index);
+			dictionary.add(value);
+		}
+		grow();
+		ints[size] = index;
+		levels[size++] = 1;
+	}
+
+	void addNumber(double value) {
+		if (kind == TEXT) {
+			addText(CsvSink.formatNumber(value));
+		}
+		else if (kind == INT32) {
+			if (value == Math.rint(value) && Math.abs(value) <= Integer.MAX_VALUE) {
+				addInt((int) value);
+			}
+			else {
+				addInvalid();
+			}
+		}
+		else {
+			addDouble(value);
+		}
+	}
+
+	/**
+	 * A value that isn't of the type of the column
+	 */
+	void addInvalid() {
+		invalidNb++;
+		addNull();
+	}
+
+	private void addInt(int value) {
+		grow();
+		ints[size] = value;
+		levels[size++] = 1;
+	}
+
+	private void addDouble(double value) {
+		grow();
+		doubles[size] = value;
+		levels[size++] = 1;
+	}
+
+	/**
+	 * Makes room for one more value.
+	 */
+	private void grow() {
+		if (ints == null && doubles == null) {
+			if (kind == DOUBLE) {
+				doubles = new double[levels.length];
+			}
+			else {
+				ints = new int[levels.length];
+			}
+		}
+		if (size == levels.length) {
+			levels = Arrays.copyOf(levels, size * 2);
+			if (ints != null) {
+				ints = Arrays.copyOf(ints, size * 2);
+			}
+			if (doubles != null) {
+				doubles = Arrays.copyOf(doubles, size * 2);
+			}
+		}
+	}
+
+	/**
+	 * Writes the description of the column in the schema of the file.
+	 * @param meta
+	 * 		The writer of the footer
+	 */
+	void writeSchema(ThriftCompactWriter meta) {
+		meta.beginStructElement();
+		meta.writeI32(1, kind == TEXT ? TYPE_BYTE_ARRAY : kind == INT32 ? TYPE_INT32 : TYPE_DOUBLE);
+		meta.writeI32(3, OPTIONAL);
+		meta.writeString(4, name);
+		if (kind == TEXT) {
+			meta.writeI32(6, CONVERTED_UTF8);
+		}
+		meta.endStruct();
+	}
+
+	/**
+	 * Writes the values of the current row group as a column chunk and empties the column.
+	 * @param out
+	 * 		The file
+	 * @param offset
+	 * 		The position in the file of the column chunk
+	 * @param sizes
+	 * 		Receives the size of the column chunk : uncompressed in sizes[0], written in sizes[1]
+	 * @return
+	 * 		The metadata of the column chunk, a ColumnChunk structure of the footer
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	byte[] writeChunk(OutputStream out, long offset, long[] sizes) throws IOException {
+
+		long position = offset;
+		long uncompressed = 0;
+		long dictionaryOffset = -1;
+
+		// The dictionary page : the texts, each one preceded by its length
+		if (kind == TEXT) {
+			ByteArrayOutputStream page = new ByteArrayOutputStream();
+			for (String s : dictionary) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				writeIntLE(page, bytes.length);
+				page.write(bytes);
+			}
+			ThriftCompactWriter header = new ThriftCompactWriter();
+			byte[] body = compress(page.toByteArray());
+			header.writeI32(1, PAGE_DICTIONARY);
+			header.writeI32(2, page.size());
+			header.writeI32(3, body.length);
+			header.beginStruct(7);
+			header.writeI32(1, dictionary.size());
+			header.writeI32(2, ENCODING_PLAIN);
+			header.endStruct();
+			header.endStruct();
+			dictionaryOffset = position;
+			position += writePage(out, header.toByteArray(), body);
+			uncompressed += header.toByteArray().length + page.size();
+		}
+
+		// The data page : the definition levels, then the values that aren't null
+		ByteArrayOutputStream page = new ByteArrayOutputStream();
+		ByteArrayOutputStream levelBytes = new ByteArrayOutputStream();
+		encodeHybrid(levels, size, 1, levelBytes);
+		writeIntLE(page, levelBytes.size());
+		levelBytes.writeTo(page);
+
+		if (kind == TEXT) {
+			int[] defined = new int[size];
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (levels[i] == 1) {
+					defined[n++] = ints[i];
+				}
+			}
+			int bitWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(0, dictionary.size() - 1)));
+			page.write(bitWidth);
+			encodeHybrid(defined, n, bitWidth, page);
+		}
+		else {
+			for (int i = 0; i < size; i++) {
+				if (levels[i] == 1) {
+					if (kind == INT32) {
+						writeIntLE(page, ints[i]);
+					}
+					else {
+						long bits = Double.doubleToLongBits(doubles[i]);
+						writeIntLE(page, (int) bits);
+						writeIntLE(page, (int) (bits >>> 32));
+					}
+				}
+			}
+		}
+
+		ThriftCompactWriter header = new ThriftCompactWriter();
+		byte[] body = compress(page.toByteArray());
+		header.writeI32(1, PAGE_DATA);
+		header.writeI32(2, page.size());
+		header.writeI32(3, body.length);
+		header.beginStruct(5);
+		header.writeI32(1, size);
+		header.writeI32(2, kind == TEXT ? ENCODING_RLE_DICTIONARY : ENCODING_PLAIN);
+		header.writeI32(3, ENCODING_RLE);
+		header.writeI32(4, ENCODING_RLE);
+		header.endStruct();
+		header.endStruct();
+		long dataOffset = position;
+		position += writePage(out, header.toByteArray(), body);
+		uncompressed += header.toByteArray().length + page.size();
+
+		// The metadata of the chunk
+		ThriftCompactWriter meta = new ThriftCompactWriter();
+		meta.writeI64(2, offset);
+		meta.beginStruct(3);
+		meta.writeI32(1, kind == TEXT ? TYPE_BYTE_ARRAY : kind == INT32 ? TYPE_INT32 : TYPE_DOUBLE);
+		if (kind == TEXT) {
+			meta.beginList(2, ThriftCompactWriter.I32, 3);
+			meta.writeI32Element(ENCODING_PLAIN);
+			meta.writeI32Element(ENCODING_RLE);
+			meta.writeI32Element(ENCODING_RLE_DICTIONARY);
+		}
+		else {
+			meta.beginList(2, ThriftCompactWriter.I32, 2);
+			meta.writeI32Element(ENCODING_PLAIN);
+			meta.writeI32Element(ENCODING_RLE);
+		}
+		meta.beginList(3, ThriftCompactWriter.BINARY, 1);
+		meta.writeStringElement(name);
+		meta.writeI32(4, CODEC_GZIP);
+		meta.writeI64(5, size);
+		meta.writeI64(6, uncompressed);
+		meta.writeI64(7, position - offset);
+		meta.writeI64(9, dataOffset);
+		if (dictionaryOffset != -1) {
+			meta.writeI64(11, dictionaryOffset);
+		}
+		meta.endStruct();
+		meta.endStruct();
+
+		sizes[0] = uncompressed;
+		sizes[1] = position - offset;
+
+		// Emptying the column for the next row group
+		size = 0;
+		indexes.clear();
+		dictionary.clear();
+		return meta.toByteArray();
+	}
+
+	/**
+	 * Writes a page : its header then its body.
+	 * @return
+	 * 		The number of bytes written
+	 */
+	private static int writePage(OutputStream out, byte[] header, byte[] body) throws IOException {
+		out.write(header);
+		out.write(body);
+		return header.length + body.length;
+	}
+
+	private static byte[] compress(byte[] bytes) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		gzip.write(bytes);
+		gzip.close();
+		return compressed.toByteArray();
+	}
+
+	private static void writeIntLE(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	/**
+	 * Encodes integers with the RLE / bit-packing hybrid encoding of Parquet : a value repeated at least
+	 * 8 times is written once with its count, the others are bit-packed by groups of 8.
+	 * @param values
+	 * 		The values
+	 * @param count
+	 * 		The number of values to encode
+	 * @param bitWidth
+	 * 		The number of bits of the greatest value
+	 * @param out
+	 * 		Receives the encoded values
+	 */
+	private static void encodeHybrid(int[] values, int count, int bitWidth, ByteArrayOutputStream out) {
+
+		int byteWidth = (bitWidth + 7) / 8;
+		int i = 0;
+		while (i < count) {
+			int run = runLength(values, i, count, Integer.MAX_VALUE);
+			if (run >= 8) {
+				writeVarint(out, run << 1);
+				for (int b = 0; b < byteWidth; b++) {
+					out.write(values[i] >>> (8 * b));
+				}
+				i += run;
+			}
+			else {
+				// Groups of 8 values until a long enough run starts, the last group being padded
+				int start = i;
+				do {
+					i += 8;
+				} while (i < count && runLength(values, i, count, 8) < 8);
+				int groups = (i - start) / 8;
+				writeVarint(out, groups << 1 | 1);
+				long buffer = 0;
+				int bits = 0;
+				for (int k = start; k < i; k++) {
+					buffer |= (long) (k < count ? values[k] : 0) << bits;
+					bits += bitWidth;
+					while (bits >= 8) {
+						out.write((int) buffer);
+						buffer >>>= 8;
+						bits -= 8;
+					}
+				}
+				i = Math.min(i, count);
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		The number of values equal to the one at start following each other, up to max
+	 */
+	private static int runLength(int[] values, int start, int count, int max) {
+		int end = start + 1;
+		while (end < count && end - start < max && values[end] == values[start]) {
+			end++;
+		}
+		return end - start;
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+}
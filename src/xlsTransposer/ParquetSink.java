@@ -0,0 +1,385 @@
+package xlsTransposer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Writes the output in a Parquet file : column by column, by groups of {@link ParquetSink#ROW_GROUP_SIZE} rows.
+ * The header gives the names of the columns. The columns of one of the {@link OutputFile#periodValues}
+ * (following the {@link ParquetSink#serieNb} first columns) are typed :
+ * integers for the period, year, semester, quarter, month and week, doubles for the value. A value that can't be converted is left null
+ * and counted. All the other columns (left and right header, comments) are texts encoded with a dictionary,
+ * as they repeat once per period : numbers and dates are written as in a {@link CsvSink}.
+ * The rows before {@link ParquetSink#firstRow} (the lines copied from the top of the input) are skipped.
+ * @author hamme
+ *
+ */
+public class ParquetSink implements OutputSink {
+
+	/**
+	 * Constructor, opens the file.
+	 * @param file
+	 * 		The file to write in
+	 * @param firstRow
+	 * 		The first row written, the header, the rows before being skipped
+	 * @param serieNb
+	 * 		The number of columns of the left header, before the period columns
+	 * @throws IOException
+	 * 		If the file can't be opened
+	 */
+	public ParquetSink(File file, int firstRow, int serieNb) throws IOException {
+		this.file = file;
+		this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		this.firstRow = firstRow;
+		this.serieNb = serieNb;
+		out.write(MAGIC);
+		position = MAGIC.length;
+	}
+
+	/**
+	 * The number of rows kept in memory before their columns are written.
+	 */
+	private static final int ROW_GROUP_SIZE = 1 << 17;
+	/**
+	 * The bytes starting and ending a Parquet file
+	 */
+	private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The file
+	 */
+	private File file;
+	/**
+	 * The stream of the file
+	 */
+	private OutputStream out;
+	/**
+	 * The number of bytes written in the file
+	 */
+	private long position;
+	/**
+	 * The first row written, the header
+	 */
+	private int firstRow;
+	/**
+	 * The number of columns of the left header
+	 */
+	private int serieNb;
+	/**
+	 * The names of the columns, read in the header
+	 */
+	private List<String> names = new ArrayList<String>();
+	/**
+	 * The columns, created once the header is read
+	 */
+	private ParquetColumn[] columns;
+	/**
+	 * The number of the current row, -1 before the first one
+	 */
+	private int currentRow = -1;
+	/**
+	 * The columns set in the current row
+	 */
+	private boolean[] set;
+	/**
+	 * The number of rows of the current row group
+	 */
+	private int groupRows;
+	/**
+	 * The number of rows written in the file, header excluded
+	 */
+	private long rowsNb;
+	/**
+	 * The metadata of the row groups written, RowGroup structures of the footer
+	 */
+	private List<byte[]> rowGroups = new ArrayList<byte[]>();
+	/**
+	 * Writes the dates
+	 */
+	private DateText dateText = new DateText();
+
+	@Override
+	public void createRow(int rowId) {
+		endRow();
+		currentRow = rowId;
+		if (set != null) {
+			Arrays.fill(set, false);
+		}
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		if (moveTo(columnId)) {
+			columns[columnId].addNull();
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		if (currentRow == firstRow) {
+			setName(columnId, CsvSink.formatNumber(value));
+		}
+		else if (moveTo(columnId)) {
+			columns[columnId].addNumber(value);
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		if (currentRow == firstRow) {
+			setName(columnId, dateText.format(value));
+		}
+		else if (moveTo(columnId)) {
+			if (columns[columnId].getKind() == ParquetColumn.TEXT) {
+				columns[columnId].addText(dateText.format(value));
+			}
+			else {
+				columns[columnId].addInvalid();
+			}
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		if (currentRow == firstRow) {
+			setName(columnId, value);
+		}
+		else if (moveTo(columnId)) {
+			columns[columnId].addText(value);
+		}
+	}
+
+	/**
+	 * Only the current row can be written.
+	 */
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		if (rowId != currentRow) {
+			throw new IllegalStateException("Row " + rowId + " has already been written");
+		}
+		setValue(columnId, value);
+	}
+
+	/**
+	 * Writes the last row group and the footer, and closes the file.
+	 * Prints the number of values that couldn't be converted to the type of their column.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			endRow();
+			if (columns == null) {
+				createColumns();
+			}
+			if (groupRows > 0) {
+				writeRowGroup();
+			}
+			writeFooter();
+			for (ParquetColumn c : columns) {
+				if (c.getInvalidNb() > 0) {
+					System.out.println(c.getInvalidNb() + " values of the column " + c.getName() + " couldn't be converted and were left empty.");
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Closes the file without its footer and deletes it.
+	 */
+	@Override
+	public void abort() throws IOException {
+		try {
+			out.close();
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * Sets the name of a column, read in the header.
+	 * @param columnId
+	 * 		The column
+	 * @param name
+	 * 		The name
+	 */
+	private void setName(int columnId, String name) {
+		while (names.size() <= columnId) {
+			names.add(null);
+		}
+		names.set(columnId, name);
+	}
+
+	/**
+	 * Checks that a cell of the current row can be set.
+	 * @param columnId
+	 * 		The column of the cell
+	 * @return
+	 * 		false if the row is skipped
+	 */
+	private boolean moveTo(int columnId) {
+		if (currentRow <= firstRow) {
+			return false;
+		}
+		if (columnId >= columns.length) {
+			throw new IllegalStateException("Column " + columnId + " isn't in the header");
+		}
+		if (set[columnId]) {
+			throw new IllegalStateException("Column " + columnId + " already written");
+		}
+		set[columnId] = true;
+		return true;
+	}
+
+	/**
+	 * Ends the current row : the columns not set are null. Creates the columns after the header.
+	 */
+	private void endRow() {
+		if (currentRow < firstRow) {
+			return;
+		}
+		if (currentRow == firstRow) {
+			createColumns();
+			return;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (!set[i]) {
+				columns[i].addNull();
+			}
+		}
+		groupRows++;
+		rowsNb++;
+		if (groupRows == ROW_GROUP_SIZE) {
+			try {
+				writeRowGroup();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Creates the columns from the names read in the header. The period and value columns are typed
+	 * if the header follows one of the {@link OutputFile#periodValues}.
+	 */
+	private void createColumns() {
+
+		String[] typed = null;
+		for (String[] periodValue : OutputFile.periodValues) {
+			if (matches(periodValue)) {
+				typed = periodValue;
+			}
+		}
+
+		columns = new ParquetColumn[names.size()];
+		set = new boolean[names.size()];
+		Set<String> used = new HashSet<String>();
+		for (int i = 0; i < columns.length; i++) {
+			// The names of the columns have to be different
+			String name = names.get(i) == null || names.get(i).isEmpty() ? "column_" + i : names.get(i);
+			if (!used.add(name)) {
+				name = name + "_" + i;
+				used.add(name);
+			}
+			int kind = ParquetColumn.TEXT;
+			if (typed != null && i >= serieNb && i < serieNb + typed.length) {
+				// The last typed column is the value
+				kind = i == serieNb + typed.length - 1 ? ParquetColumn.DOUBLE : ParquetColumn.INT32;
+			}
+			columns[i] = new ParquetColumn(name, kind);
+		}
+	}
+
+	/**
+	 * @param periodValue
+	 * 		The names of the period and value columns
+	 * @return
+	 * 		true if the header has these columns after the {@link ParquetSink#serieNb} first ones
+	 */
+	private boolean matches(String[] periodValue) {
+		if (names.size() < serieNb + periodValue.length) {
+			return false;
+		}
+		for (int i = 0; i < periodValue.length; i++) {
+			if (!periodValue[i].equals(names.get(serieNb + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the columns of the current row group, one chunk per column.
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	private void writeRowGroup() throws IOException {
+
+		ThriftCompactWriter group = new ThriftCompactWriter();
+		group.beginList(1, ThriftCompactWriter.STRUCT, columns.length);
+		long totalSize = 0;
+		long[] sizes = new long[2];
+		for (ParquetColumn c : columns) {
+			group.writeRaw(c.writeChunk(out, position, sizes));
+			totalSize += sizes[0];
+			position += sizes[1];
+		}
+		group.writeI64(2, totalSize);
+		group.writeI64(3, groupRows);
+		group.endStruct();
+
+		rowGroups.add(group.toByteArray());
+		groupRows = 0;
+	}
+
+	/**
+	 * Writes the footer : the schema and the metadata of the row groups, its length and the magic bytes.
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	private void writeFooter() throws IOException {
+
+		ThriftCompactWriter meta = new ThriftCompactWriter();
+		meta.writeI32(1, 1);
+		// The schema : a root with one child per column
+		meta.beginList(2, ThriftCompactWriter.STRUCT, columns.length + 1);
+		meta.beginStructElement();
+		meta.writeString(4, "schema");
+		meta.writeI32(5, columns.length);
+		meta.endStruct();
+		for (ParquetColumn c : columns) {
+			c.writeSchema(meta);
+		}
+		meta.writeI64(3, rowsNb);
+		meta.beginList(4, ThriftCompactWriter.STRUCT, rowGroups.size());
+		for (byte[] group : rowGroups) {
+			meta.writeRaw(group);
+		}
+		meta.writeString(6, "xlsTransposer");
+		meta.endStruct();
+
+		byte[] footer = meta.toByteArray();
+		out.write(footer);
+		out.write(footer.length);
+		out.write(footer.length >>> 8);
+		out.write(footer.length >>> 16);
+		out.write(footer.length >>> 24);
+		out.write(MAGIC);
+	}
+
+}
@@ -0,0 +1,335 @@
+package xlsTransposer;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * The periods of the header of a sheet, parsed once when the header is read :
+ * the kind of period, the same for all of them, and an ordinal for each one (yyyy, yyyys, yyyyq, yyyymm or yyyyww),
+ * kept with its year and its number in the year in arrays of int, so that writing a line only reads them.
+ * <ul>
+ * <li>yearly : 2015 (a number or a text)</li>
+ * <li>semester : 2015S1, 2015_S2, 2015H1</li>
+ * <li>quarterly : 2015Q1, 2015_Q4, 2015T3</li>
+ * <li>monthly : 2015_1, 2015_03, 2015-12</li>
+ * <li>weekly : 2015W01, 2015_W52, 2015-W53</li>
+ * </ul>
+ * The kind is given by the first period. When the first period isn't of a known kind, or another period
+ * isn't of its kind, the periods are written as they are in the header ({@link PeriodCodec#RAW}).
+ * The years are written as they are in the header too, as numbers or texts.
+ * @author hamme
+ *
+ */
+public class PeriodCodec {
+
+	/**
+	 * Kinds of period
+	 */
+	public static final int RAW = 0;
+	public static final int YEARLY = 1;
+	public static final int SEMESTER = 2;
+	public static final int QUARTERLY = 3;
+	public static final int MONTHLY = 4;
+	public static final int WEEKLY = 5;
+
+	/**
+	 * The letters that can precede the number in the year, by kind (none for a month)
+	 */
+	private static final String[] LETTERS = {null, null, "SH", "QT", "", "W"};
+	/**
+	 * The number of periods in a year, by kind
+	 */
+	private static final int[] PER_YEAR = {0, 1, 2, 4, 12, 53};
+	/**
+	 * The factor of the year in the ordinal, by kind
+	 */
+	private static final int[] YEAR_FACTOR = {0, 1, 10, 10, 100, 100};
+
+	/**
+	 * Constructor, parses the periods.
+	 * @param periods
+	 * 		The cells of the periods in the header
+	 * @param dateFormats
+	 * 		The date formats of the workbook of the header, used to write {@link PeriodCodec#RAW} periods
+	 */
+	public PeriodCodec(Cell[] periods, DateFormatCache dateFormats) {
+
+		int size = periods.length;
+		years = new int[size];
+		numbers = new int[size];
+		ordinals = new int[size];
+
+		kind = size == 0 ? RAW : kindOf(periods[0]);
+		// A header mixing periods of a kind and other texts is written as it is
+		for (int i = 0; i < size && kind != RAW; i++) {
+			if (!parse(periods[i], i)) {
+				kind = RAW;
+				Arrays.fill(years, 0);
+				Arrays.fill(numbers, 0);
+				Arrays.fill(ordinals, 0);
+			}
+		}
+		// The years are written as they are in the header too, numbers or texts
+		if (kind == RAW || kind == YEARLY) {
+			labels = new RowBuffer(size);
+			labels.read(periods, dateFormats);
+		}
+	}
+
+	/**
+	 * The kind of the periods
+	 */
+	private int kind;
+	/**
+	 * The year of each period
+	 */
+	private int[] years;
+	/**
+	 * The number of each period in its year (semester, quarter, month or week), 0 for a year
+	 */
+	private int[] numbers;
+	/**
+	 * The ordinal of each period : the year, followed by the number in the year
+	 */
+	private int[] ordinals;
+	/**
+	 * The periods as they are in the header, for {@link PeriodCodec#RAW} and {@link PeriodCodec#YEARLY} periods
+	 */
+	private RowBuffer labels;
+
+	public int getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return
+	 * 		The number of periods
+	 */
+	public int size() {
+		return ordinals.length;
+	}
+
+	/**
+	 * @param period
+	 * 		The index of the period
+	 * @return
+	 * 		Its ordinal : yyyy, yyyys, yyyyq, yyyymm or yyyyww, 0 for a {@link PeriodCodec#RAW} period
+	 */
+	public int getOrdinal(int period) {
+		return ordinals[period];
+	}
+
+	public int getYear(int period) {
+		return years[period];
+	}
+
+	/**
+	 * @param period
+	 * 		The index of the period
+	 * @return
+	 * 		Its number in its year, 0 for a year
+	 */
+	public int getNumber(int period) {
+		return numbers[period];
+	}
+
+	/**
+	 * @return
+	 * 		The columns written for the period and the value
+	 */
+	public String[] getColumns() {
+		switch (kind) {
+		case SEMESTER:
+			return OutputFile.periodValueSemester;
+		case QUARTERLY:
+			return OutputFile.periodValueQuarterly;
+		case MONTHLY:
+			return OutputFile.periodValueMonthly;
+		case WEEKLY:
+			return OutputFile.periodValueWeekly;
+		default:
+			return OutputFile.periodValueYearly;
+		}
+	}
+
+	/**
+	 * Writes a period in the current row of a sink : the year or the period of the header in one cell,
+	 * or the year and the number in the year in two cells.
+	 * @param output
+	 * 		The sink
+	 * @param period
+	 * 		The index of the period
+	 * @param columnId
+	 * 		The column of the first cell
+	 * @return
+	 * 		The number of cells written
+	 */
+	public int write(OutputSink output, int period, int columnId) {
+		switch (kind) {
+		case RAW:
+		case YEARLY:
+			labels.write(output, period, columnId);
+			return 1;
+		default:
+			output.setValue(columnId, years[period]);
+			output.setValue(columnId + 1, numbers[period]);
+			return 2;
+		}
+	}
+
+	/**
+	 * Returns the ordinal of a period written in the period columns of an output.
+	 * @param kind
+	 * 		The kind of the period, other than {@link PeriodCodec#RAW}
+	 * @param year
+	 * 		Its year
+	 * @param number
+	 * 		Its number in the year, 0 for a year
+	 * @return
+	 * 		Its ordinal, as given by {@link PeriodCodec#getOrdinal(int)}
+	 */
+	public static int toOrdinal(int kind, int year, int number) {
+		return year * YEAR_FACTOR[kind] + number;
+	}
+
+	/**
+	 * Returns the text of a period in a header, the way it is parsed back : 2015, 2015S1, 2015Q1, 2015_01 or 2015W01.
+	 * @param kind
+	 * 		The kind of the period, other than {@link PeriodCodec#RAW}
+	 * @param ordinal
+	 * 		Its ordinal
+	 * @return
+	 * 		The text of the period
+	 */
+	public static String toLabel(int kind, int ordinal) {
+		int year = ordinal / YEAR_FACTOR[kind];
+		int number = ordinal % YEAR_FACTOR[kind];
+		switch (kind) {
+		case YEARLY:
+			return String.valueOf(year);
+		case MONTHLY:
+			return String.format("%04d_%02d", year, number);
+		case WEEKLY:
+			return String.format("%04dW%02d", year, number);
+		default:
+			return String.format("%04d%c%d", year, LETTERS[kind].charAt(0), number);
+		}
+	}
+
+	/**
+	 * Finds the kind of a period.
+	 * @param cell
+	 * 		The cell of the period
+	 * @return
+	 * 		Its kind, {@link PeriodCodec#RAW} if unknown
+	 */
+	private static int kindOf(Cell cell) {
+		for (int k = YEARLY; k <= WEEKLY; k++) {
+			if (ordinalOf(cell, k) != -1) {
+				return k;
+			}
+		}
+		return RAW;
+	}
+
+	/**
+	 * Parses a period of the {@link PeriodCodec#kind} in the arrays.
+	 * @param cell
+	 * 		The cell of the period
+	 * @param period
+	 * 		The index of the period
+	 * @return
+	 * 		false if it isn't of the kind
+	 */
+	private boolean parse(Cell cell, int period) {
+		int ordinal = ordinalOf(cell, kind);
+		if (ordinal == -1) {
+			return false;
+		}
+		ordinals[period] = ordinal;
+		years[period] = ordinal / YEAR_FACTOR[kind];
+		numbers[period] = ordinal % YEAR_FACTOR[kind];
+		return true;
+	}
+
+	/**
+	 * Parses a period of a kind, without regular expression.
+	 * @param cell
+	 * 		The cell of the period
+	 * @param kind
+	 * 		The kind
+	 * @return
+	 * 		Its ordinal, -1 if it isn't of the kind
+	 */
+	private static int ordinalOf(Cell cell, int kind) {
+
+		if (cell == null) {
+			return -1;
+		}
+		if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+			double value = cell.getNumericCellValue();
+			return kind == YEARLY && value == Math.rint(value) && value >= 0 && value <= 9999 ? (int) value : -1;
+		}
+		if (cell.getCellType() != Cell.CELL_TYPE_STRING) {
+			return -1;
+		}
+
+		String text = cell.getStringCellValue();
+		int year = digits(text, 0, 4);
+		if (year == -1 || (text.length() > 4 && Character.isDigit(text.charAt(4)))) {
+			return -1;
+		}
+		if (kind == YEARLY) {
+			return text.length() == 4 ? year : -1;
+		}
+
+		// The separator, the letter of the kind, then the number in the year
+		int i = 4;
+		if (i < text.length() && (text.charAt(i) == '_' || text.charAt(i) == '-')) {
+			i++;
+		}
+		if (LETTERS[kind].isEmpty()) {
+			if (i == 4) {
+				return -1;
+			}
+		}
+		else if (i < text.length() && LETTERS[kind].indexOf(Character.toUpperCase(text.charAt(i))) != -1) {
+			i++;
+		}
+		else {
+			return -1;
+		}
+		int number = digits(text, i, text.length() - i);
+		if (number < 1 || number > PER_YEAR[kind] || text.length() - i > 2) {
+			return -1;
+		}
+		return year * YEAR_FACTOR[kind] + number;
+	}
+
+	/**
+	 * @param text
+	 * 		A text
+	 * @param start
+	 * 		The first character
+	 * @param length
+	 * 		The number of characters
+	 * @return
+	 * 		The number written by these characters, -1 if they aren't all digits (or none)
+	 */
+	private static int digits(String text, int start, int length) {
+		if (length <= 0 || start + length > text.length()) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+}
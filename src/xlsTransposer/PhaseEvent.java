@@ -0,0 +1,60 @@
+package xlsTransposer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of a transposition in a Flight Recorder recording : opening the input, copying the first lines,
+ * writing the header, analyzing the comments, writing the body or writing the output (see {@link PhaseTimes}).
+ * Only recorded when a recording is running, for example with
+ * <code>java -XX:StartFlightRecording=filename=run.jfr ... MainXLS ...</code>.
+ * @author hamme
+ *
+ */
+@Name("xlsTransposer.Phase")
+@Label("Transposition Phase")
+@Category("xlsTransposer")
+@Description("A phase of the transposition of a sheet")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Sheet")
+	String sheet;
+
+	@Label("Rows In")
+	long rowsIn;
+
+	@Label("Rows Out")
+	long rowsOut;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the thread of the phase")
+	@DataAmount
+	long allocated;
+
+	/**
+	 * When the phase began, in nanoseconds. Not recorded, as the fields below.
+	 */
+	transient long startNanos;
+	/**
+	 * The bytes allocated by the thread when the phase began
+	 */
+	transient long startAllocated;
+	/**
+	 * The phase, one of the constants of {@link PhaseTimes}
+	 */
+	transient int phaseId;
+	/**
+	 * If the phase is measured, for the recording or for the table of {@link PhaseTimes}
+	 */
+	transient boolean measured;
+
+}
@@ -0,0 +1,174 @@
+package xlsTransposer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the phases of the transpositions : each phase is a {@link PhaseEvent}, recorded when a Flight Recorder
+ * recording is running, and added to the table printed by {@link PhaseTimes#getReport()} when asked for
+ * (<code>-phases</code>). Otherwise a phase is only an event created and dropped : the time and the allocated
+ * bytes aren't even read.
+ * The allocated bytes are the ones of the thread of the phase : the lines read by the other threads of
+ * <code>-rowThreads</code> aren't counted.
+ * Shared by all the sheets of a run, which can be transposed by several threads.
+ * @author hamme
+ *
+ */
+public class PhaseTimes {
+
+	/**
+	 * Reading the input workbook, or decoding a sheet with the event model
+	 */
+	public static final int OPEN = 0;
+	/**
+	 * Copying the first lines ({@link SheetCouple#copy(int, int, int)})
+	 */
+	public static final int COPY = 1;
+	/**
+	 * Writing the header ({@link SheetCouple#writeHeader(int)})
+	 */
+	public static final int HEADER = 2;
+	/**
+	 * Analyzing the comments ({@link SheetCouple#indexComments()})
+	 */
+	public static final int COMMENTS = 3;
+	/**
+	 * Writing the body ({@link SheetCouple#writeBody()})
+	 */
+	public static final int BODY = 4;
+	/**
+	 * Writing the output file
+	 */
+	public static final int WRITE = 5;
+
+	private static final String[] NAMES = {"open", "copy", "header", "comments", "body", "write"};
+
+	/**
+	 * Constructor
+	 * @param table
+	 * 		If the phases are added to the table
+	 */
+	public PhaseTimes(boolean table) {
+		this.table = table;
+	}
+
+	/**
+	 * If the phases are added to the table
+	 */
+	private boolean table;
+	/**
+	 * By phase, the number of times it was measured
+	 */
+	private long[] counts = new long[NAMES.length];
+	private long[] nanos = new long[NAMES.length];
+	private long[] rowsIn = new long[NAMES.length];
+	private long[] rowsOut = new long[NAMES.length];
+	private long[] allocated = new long[NAMES.length];
+
+	/**
+	 * Gives the bytes allocated by a thread, null if the JVM can't
+	 */
+	private static final com.sun.management.ThreadMXBean threads = allocationBean();
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+			allocation.setThreadAllocatedMemoryEnabled(true);
+			return allocation;
+		}
+		return null;
+	}
+
+	public boolean isTable() {
+		return table;
+	}
+
+	/**
+	 * Begins a phase, on the thread that will end it.
+	 * @param phaseId
+	 * 		The phase, {@link PhaseTimes#OPEN} for example
+	 * @return
+	 * 		The phase, to give to {@link PhaseTimes#end(PhaseEvent, String, long, long)}
+	 */
+	public PhaseEvent begin(int phaseId) {
+		PhaseEvent event = new PhaseEvent();
+		if (table || event.isEnabled()) {
+			event.measured = true;
+			event.phaseId = phaseId;
+			event.startAllocated = allocatedBytes();
+			event.startNanos = System.nanoTime();
+			event.begin();
+		}
+		return event;
+	}
+
+	/**
+	 * Ends a phase : records it if a recording is running, and adds it to the table.
+	 * @param event
+	 * 		The phase, returned by {@link PhaseTimes#begin(int)}
+	 * @param sheet
+	 * 		The name of the sheet, null for a phase of the whole file
+	 * @param in
+	 * 		The number of input lines of the phase
+	 * @param out
+	 * 		The number of output lines of the phase
+	 */
+	public void end(PhaseEvent event, String sheet, long in, long out) {
+		if (!event.measured) {
+			return;
+		}
+		event.end();
+		long duration = System.nanoTime() - event.startNanos;
+		long bytes = event.startAllocated < 0 ? 0 : allocatedBytes() - event.startAllocated;
+		if (event.shouldCommit()) {
+			event.phase = NAMES[event.phaseId];
+			event.sheet = sheet;
+			event.rowsIn = in;
+			event.rowsOut = out;
+			event.allocated = bytes;
+			event.commit();
+		}
+		if (table) {
+			synchronized (this) {
+				counts[event.phaseId]++;
+				nanos[event.phaseId] += duration;
+				rowsIn[event.phaseId] += in;
+				rowsOut[event.phaseId] += out;
+				allocated[event.phaseId] += bytes;
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		The bytes allocated by the current thread since it started, -1 if unknown
+	 */
+	private static long allocatedBytes() {
+		return threads == null ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the table of the phases : for each one, how many times it was measured, its time in total
+	 * and in part of the time of all the phases (which overlap when the sheets are transposed at the same time),
+	 * the lines read and written and the allocated bytes.
+	 * @return
+	 * 		The table, one line per phase
+	 */
+	public synchronized String getReport() {
+
+		long total = 0;
+		for (long n : nanos) {
+			total += n;
+		}
+		StringBuilder report = new StringBuilder(String.format("%-10s %6s %10s %6s %12s %12s %12s",
+				"Phase", "Count", "ms", "%", "Rows in", "Rows out", "Allocated MB"));
+		for (int i = 0; i < NAMES.length; i++) {
+			report.append(String.format("%n%-10s %6d %10.1f %6.1f %12d %12d %12.1f", NAMES[i], counts[i], nanos[i] / 1e6,
+					total == 0 ? 0 : 100.0 * nanos[i] / total, rowsIn[i], rowsOut[i], allocated[i] / (1024.0 * 1024.0)));
+		}
+		return report.toString();
+	}
+
+}
@@ -0,0 +1,26 @@
+package xlsTransposer;
+
+/**
+ * Told how the body of a sheet is going while it is written (see {@link SheetCouple#setProgressListener(ProgressListener, long)}),
+ * at most once per interval, and once more when it is done.
+ * Called by the thread writing the sheet : the sheets written at the same time call it from several threads.
+ * @author hamme
+ *
+ */
+public interface ProgressListener {
+
+	/**
+	 * Gives the progress of a sheet : its counters ({@link SheetCouple#getReadLinesNb()},
+	 * {@link SheetCouple#getWrittenLinesNb()}, {@link SheetCouple#getDeletedValuesNb()},
+	 * {@link SheetCouple#getWrittenCommentsNb()}) and the number of output lines expected
+	 * ({@link SheetCouple#getExpectedLinesNb()}).
+	 * @param duo
+	 * 		The sheet couple writing the body
+	 * @param millis
+	 * 		The time since the body began to be written
+	 * @param done
+	 * 		true for the last call, once the body is written
+	 */
+	public void progress(SheetCouple duo, long millis, boolean done);
+
+}
@@ -0,0 +1,370 @@
+package xlsTransposer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the files already transposed in a manifest (<code>-cache file</code>), so that a file that didn't change
+ * since is skipped. For each input : its size, its date, the SHA-256 of its content, the parameters of the
+ * transposition, the outputs written (with their size) and the lines read and written.
+ * A file is skipped if the parameters are the same, the outputs are still there with the same size, and
+ * it has the same size and date, or else the same content : the content is only read when the date changed.
+ * The size, the date and the content of an input are taken before it is transposed ({@link InputState}), so that
+ * a file replaced during its transposition isn't recorded with outputs of its previous content.
+ * Shared by all the files of a batch. The manifest is written by {@link ResultCache#save()}, at the end of the run.
+ * @author hamme
+ *
+ */
+public class ResultCache {
+
+	/**
+	 * Constructor, reads the manifest. A manifest that can't be read is started over.
+	 * @param file
+	 * 		The manifest
+	 */
+	public ResultCache(File file) {
+		this.file = file;
+		if (file.exists()) {
+			try {
+				load();
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Can't read the result cache " + file + " (" + e + ") : starting over.");
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * What is known of a transposed file.
+	 */
+	private static class Entry {
+		long size;
+		long modified;
+		String hash;
+		String parameters;
+		String outputs;
+		String outputSizes;
+		long readLinesNb;
+		long writtenLinesNb;
+	}
+
+	/**
+	 * The size, the date and the content of an input, taken before it is transposed.
+	 * The content is only read once, when it is needed.
+	 */
+	public static class InputState {
+
+		/**
+		 * Constructor, takes the size and the date of the file.
+		 * @param inputName
+		 * 		The name of the file
+		 */
+		public InputState(String inputName) {
+			this.file = new File(inputName);
+			this.size = file.length();
+			this.modified = file.lastModified();
+		}
+
+		private final File file;
+		private final long size;
+		private final long modified;
+		/**
+		 * The SHA-256 of the content, null until it is read
+		 */
+		private String hash;
+
+		/**
+		 * @return
+		 * 		The SHA-256 of the content, read the first time
+		 * @throws IOException
+		 * 		If the file can't be read
+		 */
+		public String getHash() throws IOException {
+			if (hash == null) {
+				hash = ResultCache.hash(file);
+			}
+			return hash;
+		}
+
+		public boolean exists() {
+			return file.isFile();
+		}
+	}
+
+	/**
+	 * The first line of the manifest
+	 */
+	private static final String HEADER = "input\tsize\tmodified\tsha256\tparameters\toutputs\toutputSizes\tinputRows\toutputRows";
+
+	/**
+	 * The manifest
+	 */
+	private File file;
+	/**
+	 * The transposed files, by absolute path
+	 */
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Number of files skipped
+	 */
+	private long hitsNb;
+	/**
+	 * Number of hits for which the content had to be read, its date having changed
+	 */
+	private long hashedHitsNb;
+	/**
+	 * Number of files never transposed before
+	 */
+	private long newNb;
+	/**
+	 * Number of files whose content changed
+	 */
+	private long changedNb;
+	/**
+	 * Number of files transposed before with other parameters
+	 */
+	private long parametersNb;
+	/**
+	 * Number of files whose outputs were deleted or changed
+	 */
+	private long outputsNb;
+
+	/**
+	 * Looks for a file in the cache.
+	 * @param inputName
+	 * 		The name of the file
+	 * @param state
+	 * 		Its size, date and content, taken before it is transposed
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The result of the previous transposition, null if the file has to be transposed
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public TranspositionResult lookup(String inputName, InputState state, Parameters params) throws IOException {
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(state.file.getAbsolutePath());
+		}
+		if (entry == null) {
+			count(0);
+			return null;
+		}
+		if (!entry.parameters.equals(key(params))) {
+			count(1);
+			return null;
+		}
+		String[] outputs = entry.outputs.split(", ");
+		String[] sizes = entry.outputSizes.split(",");
+		for (int i = 0; i < outputs.length; i++) {
+			if (i >= sizes.length || new File(outputs[i]).length() != Long.parseLong(sizes[i])) {
+				count(2);
+				return null;
+			}
+		}
+		boolean hashed = false;
+		if (state.size != entry.size) {
+			count(3);
+			return null;
+		}
+		if (state.modified != entry.modified) {
+			// Touched, maybe not changed
+			hashed = true;
+			if (!state.getHash().equals(entry.hash)) {
+				count(3);
+				return null;
+			}
+			synchronized (this) {
+				entry.modified = state.modified;
+			}
+		}
+		synchronized (this) {
+			hitsNb++;
+			if (hashed) {
+				hashedHitsNb++;
+			}
+		}
+
+		TranspositionResult result = new TranspositionResult(inputName, entry.outputs);
+		result.add(entry.readLinesNb, entry.writtenLinesNb);
+		result.setCached(true);
+		return result;
+	}
+
+	/**
+	 * Counts a miss.
+	 * @param reason
+	 * 		0 for a new file, 1 for other parameters, 2 for the outputs, 3 for a changed file
+	 */
+	private synchronized void count(int reason) {
+		switch (reason) {
+		case 0:
+			newNb++;
+			break;
+		case 1:
+			parametersNb++;
+			break;
+		case 2:
+			outputsNb++;
+			break;
+		default:
+			changedNb++;
+			break;
+		}
+	}
+
+	/**
+	 * Records a file transposed.
+	 * @param result
+	 * 		The result of its transposition, which succeeded
+	 * @param state
+	 * 		The size, date and content of the file, taken before it was transposed
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public void record(TranspositionResult result, InputState state, Parameters params) throws IOException {
+
+		Entry entry = new Entry();
+		entry.size = state.size;
+		entry.modified = state.modified;
+		entry.hash = state.getHash();
+		entry.parameters = key(params);
+		entry.outputs = result.getOutputName();
+		StringBuilder sizes = new StringBuilder();
+		for (String output : result.getOutputName().split(", ")) {
+			sizes.append(sizes.length() == 0 ? "" : ",").append(new File(output).length());
+		}
+		entry.outputSizes = sizes.toString();
+		entry.readLinesNb = result.getReadLinesNb();
+		entry.writtenLinesNb = result.getWrittenLinesNb();
+		synchronized (this) {
+			entries.put(state.file.getAbsolutePath(), entry);
+		}
+	}
+
+	/**
+	 * Returns the parameters that change the outputs of a file.
+	 * @param params
+	 * 		The parameters of the transposition
+	 * @return
+	 * 		The parameters, as a text
+	 */
+	private static String key(Parameters params) {
+		return "sheetNb=" + params.getSheetNb() + ",linesToCopy=" + params.getLinesToCopy() + ",serieNb=" + params.getSerieNb()
+				+ ",sheets=" + params.getSheetSelection() + ",format=" + params.getFormat() + (params.isUntranspose() ? ",untranspose,groupBudget=" + params.getGroupBudget() : "")
+				+ (params.getSortColumns() == null ? "" : ",sort=" + String.join(",", params.getSortColumns()))
+				+ ",maxRows=" + params.getMaxRows();
+	}
+
+	/**
+	 * Computes the SHA-256 of the content of a file.
+	 * @param input
+	 * 		The file
+	 * @return
+	 * 		The hash, in hexadecimal
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	static String hash(File input) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		InputStream in = new FileInputStream(input);
+		try {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Reads the manifest.
+	 * @throws IOException
+	 * 		If it can't be read
+	 */
+	private void load() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			if (!HEADER.equals(line)) {
+				throw new IOException("Not a result cache");
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				Entry entry = new Entry();
+				entry.size = Long.parseLong(fields[1]);
+				entry.modified = Long.parseLong(fields[2]);
+				entry.hash = fields[3];
+				entry.parameters = fields[4];
+				entry.outputs = fields[5];
+				entry.outputSizes = fields[6];
+				entry.readLinesNb = Long.parseLong(fields[7]);
+				entry.writtenLinesNb = Long.parseLong(fields[8]);
+				entries.put(fields[0], entry);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the manifest, replacing the previous one at once.
+	 * @throws IOException
+	 * 		If it can't be written
+	 */
+	public synchronized void save() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		PrintWriter out = new PrintWriter(tmp, "UTF-8");
+		try {
+			out.println(HEADER);
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				out.println(e.getKey() + "\t" + entry.size + "\t" + entry.modified + "\t" + entry.hash + "\t" + entry.parameters
+						+ "\t" + entry.outputs + "\t" + entry.outputSizes + "\t" + entry.readLinesNb + "\t" + entry.writtenLinesNb);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return
+	 * 		The hits and the misses, by reason
+	 */
+	public synchronized String getReport() {
+		long misses = newNb + changedNb + parametersNb + outputsNb;
+		return String.format("Result cache : %d hits (%d with the content read), %d misses (%d new, %d changed, %d other parameters, %d outputs missing).",
+				hitsNb, hashedHitsNb, misses, newNb, changedNb, parametersNb, outputsNb);
+	}
+
+}
@@ -0,0 +1,228 @@
+package xlsTransposer;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * The cells of one line, kept in arrays (one slot per cell) instead of Cell objects :
+ * a type, a number, a text or a date. One buffer is filled again for each line of the input,
+ * so reading and writing the lines doesn't allocate anything once the first lines are done.
+ * The missing cells of the input are read as blank without being created in the input sheet.
+ * @author hamme
+ *
+ */
+public class RowBuffer {
+
+	/**
+	 * Types of the slots
+	 */
+	public static final byte BLANK = 0;
+	public static final byte NUMBER = 1;
+	public static final byte DATE = 2;
+	public static final byte TEXT = 3;
+	/**
+	 * A boolean, formula or error cell : written as a blank cell, but not skipped like a blank value
+	 */
+	public static final byte OTHER = 4;
+
+	/**
+	 * Constructor
+	 * @param size
+	 * 		The number of slots
+	 */
+	public RowBuffer(int size) {
+		this.size = size;
+		types = new byte[size];
+		numbers = new double[size];
+		texts = new String[size];
+		dates = new Date[size];
+		formats = new CellStyle[size];
+	}
+
+	/**
+	 * The number of slots
+	 */
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The type of each slot
+	 */
+	private byte[] types;
+	/**
+	 * The numbers, and the dates as Excel numbers
+	 */
+	private double[] numbers;
+	/**
+	 * The texts
+	 */
+	private String[] texts;
+	/**
+	 * The dates, kept while the same date is read again in the slot
+	 */
+	private Date[] dates;
+	/**
+	 * The styles of the input date cells, giving their format
+	 */
+	private CellStyle[] formats;
+
+	public byte getType(int slot) {
+		return types[slot];
+	}
+
+	public double getNumber(int slot) {
+		return numbers[slot];
+	}
+
+	public String getText(int slot) {
+		return texts[slot];
+	}
+
+	public Date getDate(int slot) {
+		return dates[slot];
+	}
+
+	/**
+	 * @param slot
+	 * 		A {@link RowBuffer#DATE} slot
+	 * @return
+	 * 		The style of the input cell, giving the format of the date
+	 */
+	public CellStyle getFormat(int slot) {
+		return formats[slot];
+	}
+
+	/**
+	 * @param slot
+	 * 		The slot
+	 * @return
+	 * 		true if the slot is blank : a value that will be skipped
+	 */
+	public boolean isBlank(int slot) {
+		return types[slot] == BLANK;
+	}
+
+	/**
+	 * Fills the buffer with the cells of a row, starting at column 0.
+	 * @param row
+	 * 		The row, null if it doesn't exist
+	 * @param dateFormats
+	 * 		The date formats of the workbook of the row
+	 */
+	public void read(Row row, DateFormatCache dateFormats) {
+		if (row == null) {
+			Arrays.fill(types, BLANK);
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			read(row.getCell(i), i, dateFormats);
+		}
+	}
+
+	/**
+	 * Fills the buffer with cells.
+	 * @param cells
+	 * 		The cells, as many as slots
+	 * @param dateFormats
+	 * 		The date formats of the workbook of the cells
+	 */
+	public void read(Cell[] cells, DateFormatCache dateFormats) {
+		for (int i = 0; i < size; i++) {
+			read(cells[i], i, dateFormats);
+		}
+	}
+
+	/**
+	 * Fills a slot with a cell.
+	 * @param cell
+	 * 		The cell, null if it is missing
+	 * @param slot
+	 * 		The slot
+	 * @param dateFormats
+	 * 		The date formats of the workbook of the cell
+	 */
+	public void read(Cell cell, int slot, DateFormatCache dateFormats) {
+		if (cell == null) {
+			types[slot] = BLANK;
+			return;
+		}
+		switch (cell.getCellType()) {
+		case Cell.CELL_TYPE_NUMERIC:
+			double value = cell.getNumericCellValue();
+			if (dateFormats.isDate(cell)) {
+				// Lines following each other often have the same date
+				if (types[slot] != DATE || numbers[slot] != value) {
+					dates[slot] = cell.getDateCellValue();
+				}
+				formats[slot] = cell.getCellStyle();
+				types[slot] = DATE;
+			}
+			else {
+				types[slot] = NUMBER;
+			}
+			numbers[slot] = value;
+			break;
+		case Cell.CELL_TYPE_STRING:
+			types[slot] = TEXT;
+			texts[slot] = cell.getStringCellValue();
+			break;
+		case Cell.CELL_TYPE_BLANK:
+			types[slot] = BLANK;
+			break;
+		default:
+			types[slot] = OTHER;
+			break;
+		}
+	}
+
+	/**
+	 * Writes a slot in a cell of the current row of a sink.
+	 * @param output
+	 * 		The sink
+	 * @param slot
+	 * 		The slot
+	 * @param columnId
+	 * 		The column of the cell
+	 */
+	public void write(OutputSink output, int slot, int columnId) {
+		switch (types[slot]) {
+		case NUMBER:
+			output.setValue(columnId, numbers[slot]);
+			break;
+		case DATE:
+			output.setValue(columnId, dates[slot], formats[slot]);
+			break;
+		case TEXT:
+			output.setValue(columnId, texts[slot]);
+			break;
+		default:
+			output.setBlank(columnId);
+			break;
+		}
+	}
+
+	/**
+	 * Writes following slots in following cells of the current row of a sink.
+	 * @param output
+	 * 		The sink
+	 * @param from
+	 * 		The first slot
+	 * @param to
+	 * 		The slot after the last one
+	 * @param columnId
+	 * 		The column of the first cell
+	 */
+	public void write(OutputSink output, int from, int to, int columnId) {
+		for (int i = from; i < to; i++) {
+			write(output, i, columnId + i - from);
+		}
+	}
+
+}
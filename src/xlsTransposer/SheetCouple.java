@@ -1,15 +1,21 @@
 package xlsTransposer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.poi.hssf.usermodel.HSSFComment;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellAddress;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 
+import commentsHandler.CommentCache;
+import commentsHandler.CommentIndex;
 import commentsHandler.CommentReader;
+import commentsHandler.KeyWordScanner;
 
 /**
  * Handles most of the job of the transposition. 
@@ -26,7 +32,7 @@ public class SheetCouple {
 	 * @param oSheet
 	 * 		The sheet in which it will be written.
 	 */
-	public SheetCouple(HSSFSheet iSheet, XSSFSheet oSheet) {
+	public SheetCouple(HSSFSheet iSheet, Sheet oSheet) {
 		this.inputSheet = iSheet;
 		this.outputSheet = oSheet;
 		t = new Tools(inputSheet, outputSheet);
@@ -45,20 +51,40 @@ public class SheetCouple {
 	 * @param linesToCopy
 	 * 		The number of lines in the input sheet that should be copy/pasted.
 	 */
-	public SheetCouple(HSSFSheet iSheet, XSSFSheet oSheet, int linesToCopy) {
+	public SheetCouple(HSSFSheet iSheet, Sheet oSheet, int linesToCopy) {
+		this(new HSSFSheetReader(iSheet), oSheet, linesToCopy);
 		this.inputSheet = iSheet;
+	}
+	/**
+	 * Constructor, initializes an {@link #inputFile} and an {@link #outputFile}.
+	 * @param reader
+	 * 		The reader of the sheet in which it will be read.
+	 * @param oSheet
+	 * 		The sheet in which it will be written.
+	 * @param linesToCopy
+	 * 		The number of lines in the input sheet that should be copy/pasted.
+	 */
+	public SheetCouple(SheetReader reader, Sheet oSheet, int linesToCopy) {
+		this(reader, new SheetSink(oSheet), linesToCopy);
 		this.outputSheet = oSheet;
-		t = new Tools(inputSheet, outputSheet);
+	}
+	/**
+	 * Constructor, initializes an {@link #inputFile} and an {@link #outputFile}.
+	 * @param reader
+	 * 		The reader of the sheet in which it will be read.
+	 * @param sink
+	 * 		Where it will be written : a sheet or a text file.
+	 * @param linesToCopy
+	 * 		The number of lines in the input sheet that should be copy/pasted.
+	 */
+	public SheetCouple(SheetReader reader, OutputSink sink, int linesToCopy) {
+		t = new Tools(reader, sink);
 		this.inputCurrentLine = 0;
 		this.outputCurrentLine = 0;
-		this.inputFile = new InputFile(iSheet, linesToCopy);
-		this.outputFile = new OutputFile(oSheet);
+		this.inputFile = new InputFile(reader, linesToCopy);
+		this.outputFile = new OutputFile(sink);
 	}
 	
-	/**
-	 * The regular expression recognizing a monthly period.
-	 */
-	private static final String monthlyRegex = "[0-9]{4}_[0-9]{1,2}";
 	/**
 	 * The input file used to read.
 	 */
@@ -78,13 +104,13 @@ public class SheetCouple {
 	}
 
 	/**
-	 * The sheet to be read.
+	 * The sheet to be read, null if it is read as a stream.
 	 */
 	private HSSFSheet inputSheet;
 	/**
-	 * The sheet to be written in.
+	 * The sheet to be written in, null if the output isn't a sheet.
 	 */
-	private XSSFSheet outputSheet;
+	private Sheet outputSheet;
 	/** 
 	 * Tools helping the transposition.
 	 */
@@ -120,7 +146,215 @@ public class SheetCouple {
 		return deletedValuesNb;
 	}
 	
-	private static final String[] keyWords = {"SOURCE:", "COMMENT:", "STATUT:"};
+	/**
+	 * The analyzed comments of the input sheet, built by {@link #indexComments()} before the body is written.
+	 */
+	private CommentIndex comments;
+	
+	/**
+	 * @return
+	 * 		The number of commented cells of the input sheet, 0 before {@link #indexComments()}
+	 */
+	public int getCommentsNb() {
+		return comments == null ? 0 : comments.getSize();
+	}
+	
+	/**
+	 * Number of lines of the input read by {@link #writeBody()}.
+	 */
+	private int readLinesNb;
+	
+	public int getReadLinesNb() {
+		return readLinesNb;
+	}
+	
+	/**
+	 * Number of lines written in the output by {@link #writeBody()}.
+	 */
+	private int writtenLinesNb;
+	
+	public int getWrittenLinesNb() {
+		return writtenLinesNb;
+	}
+	
+	/**
+	 * Number of comments written in the output by {@link #writeBody()}.
+	 */
+	private int writtenCommentsNb;
+	
+	public int getWrittenCommentsNb() {
+		return writtenCommentsNb;
+	}
+	
+	/**
+	 * @return
+	 * 		The name of the input sheet
+	 */
+	public String getSheetName() {
+		return t.getSheetName();
+	}
+	
+	/**
+	 * Estimates the number of output lines of the body before it is written, from the last row of the input
+	 * ({@link SheetReader#getLastRowNum()}) and the number of periods : the blank values are counted.
+	 * Needs the header, written by {@link #writeHeader(int)}.
+	 * @return
+	 * 		The number of output lines if no value was blank
+	 */
+	public long getExpectedLinesNb() {
+		long rows = t.getLastRowNum() + 1 - inputFile.getSerieNb();
+		return Math.max(rows, 0) * (inputFile.getLastPeriod() + 1 - inputFile.getSerieNb() - firstPeriod);
+	}
+	
+	/**
+	 * The first period transposed by the body, 0 unless only the new periods are appended (see {@link #append(int, int)})
+	 */
+	private int firstPeriod = 0;
+	/**
+	 * The rows of the output before the body, added to the row of each output line, 0 unless the body is appended
+	 */
+	private int rowOffset = 0;
+	
+	/**
+	 * Makes the body only transpose the periods from a period on, and write them after the lines of a previous output :
+	 * for the new periods of an input already transposed (see {@link OutputLayout}).
+	 * Needs the header, written by {@link #writeHeader(int)}.
+	 * @param firstPeriod
+	 * 		The first new period
+	 * @param firstRow
+	 * 		The row of the first line written
+	 */
+	public void append(int firstPeriod, int firstRow) {
+		this.firstPeriod = firstPeriod;
+		this.rowOffset = firstRow - inputFile.getSerieNb();
+	}
+	
+	public int getFirstPeriod() {
+		return firstPeriod;
+	}
+	
+	/**
+	 * Told how the body is going, null if nobody listens.
+	 */
+	private ProgressListener progressListener;
+	/**
+	 * The minimal time between two calls of the {@link #progressListener}, in milliseconds
+	 */
+	private long progressInterval;
+	/**
+	 * When the body began to be written, in nanoseconds
+	 */
+	private long bodyStart;
+	/**
+	 * When the {@link #progressListener} will be called next, in nanoseconds
+	 */
+	private long nextProgress;
+	
+	/**
+	 * Number of input lines between two looks at the clock for the {@link #progressListener}
+	 */
+	private static final int PROGRESS_LINES = 64;
+	
+	/**
+	 * Makes a listener be told how the body is going while it is written.
+	 * @param progressListener
+	 * 		The listener, null for none
+	 * @param progressInterval
+	 * 		The minimal time between two calls, in milliseconds
+	 */
+	public void setProgressListener(ProgressListener progressListener, long progressInterval) {
+		this.progressListener = progressListener;
+		this.progressInterval = progressInterval;
+	}
+	
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+	
+	/**
+	 * Where the body is saved every {@link #checkpointInterval}, null if it isn't.
+	 */
+	private Checkpoint checkpoint;
+	/**
+	 * The minimal time between two saves of the {@link #checkpoint}, in milliseconds
+	 */
+	private long checkpointInterval;
+	/**
+	 * When the {@link #checkpoint} will be saved next, in nanoseconds
+	 */
+	private long nextCheckpoint;
+	
+	/**
+	 * Makes the body be saved in a checkpoint while it is written, and once it is done.
+	 * @param checkpoint
+	 * 		The checkpoint, null for none
+	 * @param checkpointInterval
+	 * 		The minimal time between two saves, in milliseconds
+	 */
+	public void setCheckpoint(Checkpoint checkpoint, long checkpointInterval) {
+		this.checkpoint = checkpoint;
+		this.checkpointInterval = checkpointInterval;
+	}
+	
+	/**
+	 * Goes on from a checkpoint saved by a previous run : the body will begin at its input line,
+	 * with its counters. Needs the header, written by {@link #writeHeader(int)}.
+	 * @param checkpoint
+	 * 		The checkpoint read
+	 */
+	public void resume(Checkpoint checkpoint) {
+		this.deletedValuesNb = checkpoint.getDeletedValuesNb();
+		this.readLinesNb = checkpoint.getReadLinesNb();
+		this.writtenLinesNb = checkpoint.getWrittenLinesNb();
+		this.writtenCommentsNb = checkpoint.getWrittenCommentsNb();
+	}
+	
+	/**
+	 * @return
+	 * 		The next input line of the body to transpose
+	 */
+	public int getNextInputLine() {
+		return inputFile.getSerieNb() + readLinesNb;
+	}
+	
+	/**
+	 * @return
+	 * 		The output row of the first value of the next input line (see {@link #writeLines(int, RowBuffer)})
+	 */
+	public int getNextOutputRow() {
+		int serieNb = inputFile.getSerieNb();
+		return serieNb + rowOffset + readLinesNb * (inputFile.getLastPeriod() + 1 - serieNb - firstPeriod) - deletedValuesNb;
+	}
+	
+	static final String[] keyWords = {"SOURCE:", "COMMENT:", "STATUT:"};
+	/**
+	 * Finds the {@link SheetCouple#keyWords} in the comments, in the order of the comment columns.
+	 */
+	private static final KeyWordScanner scanner = new KeyWordScanner(keyWords);
+	
+	/**
+	 * Creates a cache of the analyzed comments, to be shared by several sheet couples.
+	 * @param maxSize
+	 * 		The maximal number of comments kept
+	 * @return
+	 * 		The cache
+	 */
+	public static CommentCache createCommentCache(int maxSize) {
+		return new CommentCache(maxSize, scanner);
+	}
+	
+	/**
+	 * The analyzed comments by text. Its own one unless one shared by the sheets of a run is given.
+	 */
+	private CommentCache commentCache = createCommentCache(1024);
+	
+	public CommentCache getCommentCache() {
+		return commentCache;
+	}
+
+	public void setCommentCache(CommentCache commentCache) {
+		this.commentCache = commentCache;
+	}
 	
 	/**
 	 * Copies a number of succeeding lines (defined by length) from the input sheet starting at inputStart
@@ -158,15 +392,15 @@ public class SheetCouple {
 	}
 	/**
 	 * Divides the header from the input sheet between {@link OutputFile#leftHeader}, 
-	 * {@link OutputFile#years} and {@link OutputFile#rightHeader}.
+	 * the periods and {@link OutputFile#rightHeader}, parsing the periods.
 	 */
 	public void divideHeader() {
-		outputFile.divideHeader(inputFile.getHeader(), inputFile.getSerieNb(), inputFile.getLastPeriod() + 1);
+		outputFile.divideHeader(inputFile.getHeader(), inputFile.getSerieNb(), inputFile.getLastPeriod() + 1, t.getDateFormats());
 	}
 	/**
 	 * Writes the header in the output sheet using {@link SheetCouple#findFirstBlankColumn(int, int)}, 
 	 * {@link SheetCouple#extractHeader(int)} and {@link SheetCouple#divideHeader()}.
-	 * Testing also if the period is yearly or monthly.
+	 * The periods are parsed once here (see {@link PeriodCodec}) : their kind gives the period columns.
 	 * @param headerRowId
 	 * 		The index of the row containing the header in the input.
 	 */
@@ -175,133 +409,433 @@ public class SheetCouple {
 		findFirstBlankColumn(headerRowId, inputFile.getSerieNb());
 		extractHeader(headerRowId);
 		divideHeader();
+		outputFile.setLine(new RowBuffer(inputFile.getLastColumn() + 1));
+		
+		String[] periodValue = outputFile.getPeriodCodec().getColumns();
+		// Write the header line
+		t.writeLine(outputCurrentLine, outputFile.getLeftHeader(), periodValue, outputFile.getRightHeader(), OutputFile.commentColumns);
+		// Get the number of the first column of the comments
+		this.outputFile.setCommentColumnId(outputFile.getLeftHeader().length + periodValue.length + outputFile.getRightHeader().length);
+		
+	}
+	/**
+	 * Write the body : For each line in the input, write one line in the output for each period.
+	 * The first cells contain the same values for each line of one input line. 
+	 * The following will contain the values, the period. At the end, the comments are displayed.
+	 * The input lines are read in {@link OutputFile#getLine()}, the same buffer for all of them.
+	 */
+	public void writeBody() {
+		
+		if (comments == null) {
+			indexComments();
+		}
+		startProgress();
+		RowBuffer line = outputFile.getLine();
+		int j = getNextInputLine();
+		// A resumed body can be over
+		boolean done = readLinesNb > 0 && t.isItEOF(j);
 		
-		// If the period is yearly 
-		if (!isMonthly()) {
+		// While EOF of the input has not been reached
+		while (!done) {
 			
-			// Write the header lien
-			t.writeLine(outputCurrentLine, outputFile.getLeftHeader(), OutputFile.periodValueYearly, outputFile.getRightHeader(), OutputFile.commentColumns);
-			// Get the number of the first column of the comments
-			this.outputFile.setCommentColumnId(outputFile.getLeftHeader().length + OutputFile.periodValueYearly.length + outputFile.getRightHeader().length);
+			t.readLine(j, line);
+			writeLines(j, line);
+			j++;
+			// Did we reach EOF?
+			done = t.isItEOF(j);
 		}
-		// If the period is monthly
-		else {
-			int[] years = new int[outputFile.getYears().length];
-			int[] months = new int[outputFile.getYears().length];
-			for (int i = 0; i < years.length; i++) {
-				String[] yearAndMonth = this.separeYearMonth(outputFile.getYears()[i]);
-				// Retrieve the years
-				years[i] = Integer.parseInt(yearAndMonth[0]);
-				// Retrieve the months
-				months[i] = Integer.parseInt(yearAndMonth[1]);
+		endProgress();
+	}
+	
+	/**
+	 * Starts the clocks of the {@link #progressListener} and of the {@link #checkpoint}, as the body begins to be written.
+	 */
+	private void startProgress() {
+		bodyStart = System.nanoTime();
+		nextProgress = bodyStart + progressInterval * 1000000L;
+		nextCheckpoint = bodyStart + checkpointInterval * 1000000L;
+	}
+	
+	/**
+	 * Calls the {@link #progressListener} and saves the {@link #checkpoint} if their interval went by since the last time.
+	 * The clock is only read every {@link #PROGRESS_LINES} input lines.
+	 */
+	private void progress() {
+		if ((progressListener != null || checkpoint != null) && readLinesNb % PROGRESS_LINES == 0) {
+			long now = System.nanoTime();
+			if (progressListener != null && now - nextProgress >= 0) {
+				nextProgress = now + progressInterval * 1000000L;
+				progressListener.progress(this, (now - bodyStart) / 1000000L, false);
 			}
-			outputFile.setYearsInt(years);
-			outputFile.setMonths(months);
-			// Write the header
-			t.writeLine(outputCurrentLine, outputFile.getLeftHeader(), OutputFile.periodValueMonthly, outputFile.getRightHeader(), OutputFile.commentColumns);
-			// Set the number of the first comment column
-			this.outputFile.setCommentColumnId(outputFile.getLeftHeader().length + OutputFile.periodValueMonthly.length + outputFile.getRightHeader().length);
-
+			if (checkpoint != null && now - nextCheckpoint >= 0) {
+				saveCheckpoint(false);
+				nextCheckpoint = System.nanoTime() + checkpointInterval * 1000000L;
+			}
+		}
+	}
+	
+	/**
+	 * Saves the {@link #checkpoint} a last time and calls the {@link #progressListener} a last time, once the body is written.
+	 */
+	private void endProgress() {
+		if (checkpoint != null) {
+			saveCheckpoint(true);
+		}
+		if (progressListener != null) {
+			progressListener.progress(this, (System.nanoTime() - bodyStart) / 1000000L, true);
+		}
+	}
+	
+	/**
+	 * Saves the {@link #checkpoint}, between two input lines.
+	 * @param done
+	 * 		true if the body is written
+	 */
+	private void saveCheckpoint(boolean done) {
+		try {
+			checkpoint.save(this, done);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Reads and analyzes all the comments of the input sheet, once : the comments of the cells 
+	 * are then found in the index instead of being searched for in the sheet cell by cell.
+	 * Done by the writing of the body if it wasn't done before.
+	 */
+	public void indexComments() {
+		comments = new CommentIndex(t.getComments(), commentCache);
+	}
+	
+	/**
+	 * Writes the output lines of one input line : one for each value that isn't blank.
+	 * @param j
+	 * 		The number of the input line
+	 * @param line
+	 * 		The input line
+	 */
+	private void writeLines(int j, RowBuffer line) {
+		
+		int serieNb = inputFile.getSerieNb();
+		int firstRight = inputFile.getLastPeriod() + 1;
+		int valuesNb = firstRight - serieNb;
+		// The periods transposed, all of them unless the body is appended
+		int writtenValuesNb = valuesNb - firstPeriod;
+		int firstRowId = serieNb + rowOffset - firstPeriod;
+		PeriodCodec periods = outputFile.getPeriodCodec();
+		// Most lines have no comment at all
+		boolean commented = comments.hasComments(j);
+		
+		// For one line of the input :
+		for (int i = firstPeriod; i < valuesNb; i++) {
+			
+			if (!line.isBlank(serieNb + i)) {
+				
+				int rowId = firstRowId + i + (j - serieNb)*writtenValuesNb - deletedValuesNb;
+				// Write the line
+				t.writeLine(rowId, line, serieNb, firstRight, i, periods);
+				writtenLinesNb++;
+				// If the value is commented, we write the portions following the keywords
+				if (commented) {
+					CommentReader commentR = comments.get(j, serieNb + i);
+					if (commentR != null) {
+						writeComment(commentR, rowId, outputFile.getCommentColumnId());
+						writtenCommentsNb++;
+					}
+				}
+			}
+			// If the cell is blank
+			else {
+				deletedValuesNb++;
+			}
+		}
+		readLinesNb++;
+		progress();
+	}
+	
+	/**
+	 * Maximal number of input lines transposed before being written by {@link #writeBody(ForkJoinPool)}.
+	 */
+	private static final int PARALLEL_CHUNK = 4096;
+	/**
+	 * Maximal number of values (output lines, blank or not) of a chunk of {@link #writeBody(ForkJoinPool)} :
+	 * bounds the memory used by the output lines prepared when there are many periods.
+	 */
+	private static final int PARALLEL_VALUES = 1 << 18;
+	/**
+	 * Number of input lines under which a task of {@link #writeBody(ForkJoinPool)} isn't divided anymore.
+	 */
+	private static final int PARALLEL_THRESHOLD = 64;
+	
+	/**
+	 * A chunk of input lines and their output lines, prepared by the pool of {@link SheetCouple#writeBody(ForkJoinPool)}.
+	 * The arrays are reused from one chunk to the next.
+	 */
+	private static class Chunk {
+		/**
+		 * The input lines
+		 */
+		private RowBuffer[] lines;
+		/**
+		 * The number of values (non blank cells) of each input line
+		 */
+		private int[] counts;
+		/**
+		 * The number of output lines of the chunk before each input line, then their total
+		 */
+		private int[] offsets;
+		/**
+		 * The row of each output line
+		 */
+		private int[] rowIds;
+		/**
+		 * The period of each output line, from the first period column
+		 */
+		private int[] periods;
+		/**
+		 * The texts following the key-words in the comment of each output line, in the order of the comment columns,
+		 * null if the value has no comment
+		 */
+		private String[][] comments;
 		
+		private Chunk(int linesNb, int width) {
+			lines = new RowBuffer[linesNb];
+			for (int k = 0; k < linesNb; k++) {
+				lines[k] = new RowBuffer(width);
+			}
+			counts = new int[linesNb];
+			offsets = new int[linesNb + 1];
+			rowIds = new int[0];
+			periods = new int[0];
+			comments = new String[0][];
 		}
 		
+		/**
+		 * Makes room for the output lines of the chunk.
+		 * @param valuesNb
+		 * 		The number of output lines
+		 */
+		private void ensureCapacity(int valuesNb) {
+			if (rowIds.length < valuesNb) {
+				rowIds = new int[valuesNb];
+				periods = new int[valuesNb];
+				comments = new String[valuesNb][];
+			}
+		}
 	}
+	
 	/**
-	 * Write the body : For each line in the input, write one line in the output for each period.
-	 * The first cells contain the same values for each line of one input line. 
-	 * The following will contain the values, the period. At the end, the comments are displayed.
+	 * Write the body like {@link #writeBody()}, the transposition being done by several threads.
+	 * The input is taken by chunks of lines (until EOF) : 
+	 * <ul>
+	 * <li>the pool reads disjoint ranges of lines of the chunk and counts the values (non blank cells) of each line,</li>
+	 * <li>the prefix sum of the counts gives the exact output row of the first value of each line, 
+	 * without the running {@link #deletedValuesNb},</li>
+	 * <li>the pool transposes disjoint ranges of lines : the row, the period and the comment (the texts following 
+	 * the key-words) of each output line are put in the buffers of the chunk,</li>
+	 * <li>the output lines are appended to the output in order, as it can only be written by one thread.</li>
+	 * </ul>
+	 * The result is the same as {@link #writeBody()}, the counters, the progress and the checkpoints going on 
+	 * input line by input line. Needs an input that can be read by several threads 
+	 * (see {@link SheetReader#isRandomAccess()}).
+	 * @param pool
+	 * 		The pool reading and transposing the lines
 	 */
-	public void writeBody() {
+	public void writeBody(ForkJoinPool pool) {
 		
+		if (comments == null) {
+			indexComments();
+		}
+		startProgress();
 		int serieNb = inputFile.getSerieNb();
-		int j = serieNb;
-		boolean done = false;
+		int firstRight = inputFile.getLastPeriod() + 1;
+		// The periods transposed, all of them unless the body is appended
+		int writtenValuesNb = firstRight - serieNb - firstPeriod;
+		int commentIndex = outputFile.getCommentColumnId();
+		PeriodCodec periods = outputFile.getPeriodCodec();
+		int chunkLinesNb = Math.max(PARALLEL_THRESHOLD, Math.min(PARALLEL_CHUNK, PARALLEL_VALUES / Math.max(writtenValuesNb, 1)));
+		Chunk chunk = new Chunk(chunkLinesNb, outputFile.getLine().size());
+		int j = getNextInputLine();
+		boolean done = readLinesNb > 0 && t.isItEOF(j);
 		
-		// If the period is yearly
-		if (!isMonthly()) {
-			System.out.println("non monthl");
-			// While EOF of the input has not been reached
-			while (!done) {
+		while (!done) {
+			
+			// The lines of the chunk, until EOF
+			int linesNb = 0;
+			do {
+				linesNb++;
+			} while (linesNb < chunkLinesNb && !t.isItEOF(j + linesNb));
+			done = t.isItEOF(j + linesNb);
+			
+			// The lines and their number of values
+			pool.invoke(new CountLines(j, 0, linesNb, chunk));
+			
+			// The prefix sum : the output lines before each line
+			for (int k = 0; k < linesNb; k++) {
+				chunk.offsets[k + 1] = chunk.offsets[k] + chunk.counts[k];
+			}
+			chunk.ensureCapacity(chunk.offsets[linesNb]);
+			
+			// The output lines, from the row of the first value of the chunk
+			pool.invoke(new TransposeLines(j, 0, linesNb, getNextOutputRow(), chunk));
+			
+			// Appending them in order
+			for (int k = 0; k < linesNb; k++) {
 				
-			    Comment[] comments = new Comment[inputFile.getLastPeriod() - serieNb + 1];
-			    
-			    outputFile.setLeftHeader(t.extractLine(j, 0, serieNb - 1));
-			    outputFile.setValues(t.extractLine(j, serieNb, inputFile.getLastPeriod(), comments));
-			    outputFile.setRightHeader(t.extractLine(j, inputFile.getLastPeriod() + 1, inputFile.getLastColumn()));
-			    
-			    Cell[] line = new Cell[serieNb + 2 + outputFile.getRightHeader().length];
-			    
-			    Tools.fill(line, outputFile.getLeftHeader(), 0);
-			    Tools.fill(line, outputFile.getRightHeader(), serieNb + 2);
-			    
-			    // For one line of the input :
-			    for (int i = 0; i < outputFile.getValues().length; i++) {
-			    	
-			    	if (!(outputFile.getValues()[i].getCellType() == Cell.CELL_TYPE_BLANK)) {
-			    		
-			    		// Get the year
-				    	line[serieNb] = outputFile.getYears()[i];
-				    	// Get the value
-				    	line[serieNb + 1] = outputFile.getValues()[i];
-				    	// Write the line
-				    	t.writeLine(serieNb + i + (j - serieNb)*outputFile.getValues().length - deletedValuesNb, line);
-			    	
-				    	// If the comment isn't empty, we analyze it for keywords and write it if needed
-				    	if (comments[i] != null) {				    		
-				    		System.out.println("comment non nul");
-				    		insertComment(comments[i], serieNb + i + (j - serieNb)*outputFile.getValues().length - deletedValuesNb);
-				    	}
-			    	}
-			    	// If the cell is blank
-			    	else {
-			    		deletedValuesNb++;
-			    	}
-			    }
-			    j++;
-			    // Did we reach EOF?
-			    done = t.isItEOF(j);
-			    
-		    }
+				RowBuffer line = chunk.lines[k];
+				for (int o = chunk.offsets[k]; o < chunk.offsets[k + 1]; o++) {
+					t.writeLine(chunk.rowIds[o], line, serieNb, firstRight, chunk.periods[o], periods);
+					writtenLinesNb++;
+					String[] comment = chunk.comments[o];
+					if (comment != null) {
+						for (int c = 0; c < comment.length; c++) {
+							if (comment[c] != null) {
+								t.writeCell(chunk.rowIds[o], commentIndex + c, comment[c]);
+							}
+						}
+						writtenCommentsNb++;
+					}
+				}
+				deletedValuesNb += writtenValuesNb - chunk.counts[k];
+				readLinesNb++;
+				progress();
+			}
+			j += linesNb;
 		}
-		// If the period is monthly
-		else {
-
-			// While EOF of the input has not been reached
-			while (!done) {
-
-			    Comment[] comments = new Comment[inputFile.getLastPeriod() - serieNb + 1];
-			    outputFile.setLeftHeader(t.extractLine(j, 0, serieNb - 1));
-			    outputFile.setValues(t.extractLine(j, serieNb, inputFile.getLastPeriod(), comments));
-			    outputFile.setRightHeader(t.extractLine(j, inputFile.getLastPeriod() + 1, inputFile.getLastColumn()));
-
-			    // For one line of the input :
-			    for (int i = 0; i < outputFile.getValues().length; i++) {
-			    	
-			    	if (!(outputFile.getValues()[i].getCellType() == Cell.CELL_TYPE_BLANK)) {
-			    		// Write the line
-				    	t.writeline(
-				    			serieNb + i + (j - serieNb)*outputFile.getValues().length - deletedValuesNb, 
-				    			outputFile.getLeftHeader(), 
-				    			outputFile.getYearsInt()[i], 
-				    			outputFile.getMonths()[i], 
-				    			outputFile.getValues()[i], 
-				    			outputFile.getRightHeader()
-				    			);
-				    	// If the comment isn't empty, we analyze it for keywords and write it if needed
-				    	if (comments[i] != null) {
-				    		insertComment(comments[i],  serieNb + i + (j - serieNb)*outputFile.getValues().length - deletedValuesNb);
-				    	}
-			    	}
-			    	// If the cell is blank
-			    	else {
-			    		deletedValuesNb++;
-			    	}
-			    }
-			    j++;
-			    // Did we reach the EOF?
-			    done = t.isItEOF(j);	    
-		    }
-		}	
+		endProgress();
+	}
+	
+	/**
+	 * Reads a range of input lines of a chunk and counts their values, dividing it between the threads of the pool.
+	 */
+	private class CountLines extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The first input line of the chunk
+		 */
+		private int first;
+		/**
+		 * The first line of the range, from the first line of the chunk
+		 */
+		private int from;
+		/**
+		 * The line after the range
+		 */
+		private int to;
+		private Chunk chunk;
+		
+		private CountLines(int first, int from, int to, Chunk chunk) {
+			this.first = first;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (to - from > PARALLEL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new CountLines(first, from, middle, chunk), new CountLines(first, middle, to, chunk));
+				return;
+			}
+			
+			int serieNb = inputFile.getSerieNb();
+			int firstRight = inputFile.getLastPeriod() + 1;
+			for (int k = from; k < to; k++) {
+				RowBuffer line = chunk.lines[k];
+				t.readLine(first + k, line);
+				int count = 0;
+				for (int i = serieNb + firstPeriod; i < firstRight; i++) {
+					if (!line.isBlank(i)) {
+						count++;
+					}
+				}
+				chunk.counts[k] = count;
+			}
+		}
+	}
+	
+	/**
+	 * Transposes a range of input lines of a chunk, from the output lines before each line 
+	 * ({@link Chunk#offsets}), dividing it between the threads of the pool.
+	 */
+	private class TransposeLines extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The first input line of the chunk
+		 */
+		private int first;
+		/**
+		 * The first line of the range, from the first line of the chunk
+		 */
+		private int from;
+		/**
+		 * The line after the range
+		 */
+		private int to;
+		/**
+		 * The output row of the first value of the chunk
+		 */
+		private int firstRowId;
+		private Chunk chunk;
+		
+		private TransposeLines(int first, int from, int to, int firstRowId, Chunk chunk) {
+			this.first = first;
+			this.from = from;
+			this.to = to;
+			this.firstRowId = firstRowId;
+			this.chunk = chunk;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (to - from > PARALLEL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TransposeLines(first, from, middle, firstRowId, chunk), new TransposeLines(first, middle, to, firstRowId, chunk));
+				return;
+			}
+			
+			int serieNb = inputFile.getSerieNb();
+			int valuesNb = inputFile.getLastPeriod() + 1 - serieNb;
+			for (int k = from; k < to; k++) {
+				
+				int j = first + k;
+				RowBuffer line = chunk.lines[k];
+				boolean commented = comments.hasComments(j);
+				int o = chunk.offsets[k];
+				for (int i = firstPeriod; i < valuesNb; i++) {
+					if (!line.isBlank(serieNb + i)) {
+						chunk.rowIds[o] = firstRowId + o;
+						chunk.periods[o] = i;
+						CommentReader commentR = commented ? comments.get(j, serieNb + i) : null;
+						chunk.comments[o] = commentR == null ? null : commentTexts(commentR);
+						o++;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Extracts the portions of an analyzed comment following the keywords, in the order of the comment columns.
+	 * @param commentR
+	 * 		The analyzed comment
+	 * @return
+	 * 		The portions, null for a keyword that wasn't detected
+	 */
+	private static String[] commentTexts(CommentReader commentR) {
+		String[] texts = new String[keyWords.length];
+		for (int k = 0; k < texts.length; k++) {
+			texts[k] = commentR.getComment(k);
+		}
+		return texts;
 	}
 	
 	/**
@@ -313,35 +847,47 @@ public class SheetCouple {
 	 * 		The row to write the comment in if needed
 	 */
 	public void insertComment(Comment comment, int rowId) {
+		insertComment(comment.getString().getString(), rowId);
+	}
+	
+	/**
+	 * Goes thru the text of a comment looking for the keywords and writes the portion following 
+	 * a keyword in the output file at the given row.
+	 * @param comment
+	 * 		The text of the comment to look thru
+	 * @param rowId
+	 * 		The row to write the comment in if needed
+	 */
+	public void insertComment(String comment, int rowId) {
 		
-		int commentIndex;
-		// If the period is monthly 
-		if (isMonthly()) {
-			commentIndex = outputFile.getLeftHeader().length + OutputFile.periodValueMonthly.length + outputFile.getRightHeader().length;
-		}
-		// If the period is yearly
-		else {
-			commentIndex = outputFile.getLeftHeader().length + OutputFile.periodValueYearly.length + outputFile.getRightHeader().length;
-		}
+		writeComment(commentCache.get(comment), rowId, outputFile.getCommentColumnId());
 		
-		CommentReader commentR = new CommentReader(comment.getString().getString(), keyWords);
+	}
+	
+	/**
+	 * Writes the portions of an analyzed comment following the keywords in the comment columns of the output.
+	 * @param commentR
+	 * 		The analyzed comment
+	 * @param rowId
+	 * 		The row to write the comment in
+	 * @param commentIndex
+	 * 		The first comment column of the output
+	 */
+	private void writeComment(CommentReader commentR, int rowId, int commentIndex) {
 		
 		int outputRowId = rowId;
 	     
 		// If the source keyword has been detected.
-		if (commentR.getPosition("SOURCE:") != -1) {
-			System.out.println("Source found");
-			t.writeCell(outputRowId, commentIndex, commentR.getComment("SOURCE:"));
+		if (commentR.getPosition(0) != -1) {
+			t.writeCell(outputRowId, commentIndex, commentR.getComment(0));
 		}
 		// If the comment keyword has been detected
-		if (commentR.getPosition("COMMENT:") != -1) {
-			t.writeCell(outputRowId, commentIndex + 1, commentR.getComment("COMMENT:"));
-			System.out.println("COMMENT found");
+		if (commentR.getPosition(1) != -1) {
+			t.writeCell(outputRowId, commentIndex + 1, commentR.getComment(1));
 		}
 		// If the statut keyword has been detected
-		if (commentR.getPosition("STATUT:") != -1) {	
-			t.writeCell(outputRowId, commentIndex + 2, commentR.getComment("STATUT:"));
-			System.out.println("STATUT found");
+		if (commentR.getPosition(2) != -1) {	
+			t.writeCell(outputRowId, commentIndex + 2, commentR.getComment(2));
 		}
 		
 	}
@@ -350,20 +896,13 @@ public class SheetCouple {
 	 * Will search for the commented cells. Once retrieved, the comments are analyzed and 
 	 * key-words are searched for. The comments with key-words are conserved and written 
 	 * in the respective columns. Most of the work is handled by CommentReader. 
+	 * Goes back to rows already written, so it can't be used with a streamed output.
+	 * Needs the input sheet in memory.
 	 */
 	public void insertComments() {
 		
-		int valuesNumber = outputFile.getValues().length;
-		int commentIndex;
-		
-		// If the period is monthly 
-		if (isMonthly()) {
-			commentIndex = outputFile.getLeftHeader().length + OutputFile.periodValueMonthly.length + outputFile.getRightHeader().length;
-		}
-		// If the period is yearly
-		else {
-			commentIndex = outputFile.getLeftHeader().length + OutputFile.periodValueYearly.length + outputFile.getRightHeader().length;
-		}
+		int valuesNumber = outputFile.getPeriodCodec().size();
+		int commentIndex = outputFile.getCommentColumnId();
 
 		Map<CellAddress, HSSFComment> comments = inputSheet.getCellComments();
 		    
@@ -371,8 +910,7 @@ public class SheetCouple {
 		for (java.util.Map.Entry<CellAddress, HSSFComment> e : comments.entrySet()) {
 		      CellAddress loc = e.getKey();
 		      Comment comment = e.getValue();		      
-		      String[] keyWords = {"SOURCE:", "COMMENT:", "STATUT:"};
-		      CommentReader commentR = new CommentReader(comment.getString().getString(), keyWords);
+		      CommentReader commentR = commentCache.get(comment.getString().getString());
 
 		      // Calculate the  in the output sheet of the cell whose comment is currently analyzed
 		      int outputRowId = (loc.getRow() - inputFile.getLinesToCopy())*valuesNumber + inputFile.getLinesToCopy() + loc.getColumn() - inputFile.getSerieNb();
@@ -393,38 +931,12 @@ public class SheetCouple {
 	}
 
 	/**
-	 * Tests if the period is monthly or yearly by comparing the 
-	 * {@link SheetCouple#monthlyRegex} to the first period cell.
+	 * Tests if the period is monthly, from the kind of period found by {@link #writeHeader(int)}.
 	 * @return
-	 * 		true if monthly, false is yearly
+	 * 		true if monthly, false otherwise
 	 */
 	public boolean isMonthly() {
-		
-		switch (outputFile.getYears()[0].getCellType()) {
-		case Cell.CELL_TYPE_STRING: 
-			return outputFile.getYears()[0].getStringCellValue().matches(monthlyRegex);
-		default:
-			return false;
-		}
-		
-		
-	}
-	/**
-	 * Separates the part concerning the year and the part concerning the month in a period cell
-	 * @param yearWithMonthCell
-	 * 		A cell matching the {@link SheetCouple#monthlyRegex} to be separated.
-	 * @return.
-	 * 		A String array containing the Strings corresponding to the year and to the month.
-	 */
-	private String[] separeYearMonth(Cell yearWithMonthCell) {
-		String yearWithMonthString = yearWithMonthCell.getStringCellValue();
-		String[] yearAndMonth = yearWithMonthString.split("_");
-		if (yearAndMonth[1].matches("0[0-9]")) {
-			yearAndMonth[1] = yearAndMonth[1].substring(1, 2);
-		}
-		return yearAndMonth;
+		return outputFile.getPeriodCodec().getKind() == PeriodCodec.MONTHLY;
 	}
 	
-		
-	
 }
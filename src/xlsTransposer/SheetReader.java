@@ -0,0 +1,71 @@
+package xlsTransposer;
+
+import java.io.Closeable;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * Gives access to the rows and comments of an input sheet.
+ * The rows are asked for in increasing order (a few rows back at most), so that
+ * an implementation can read the sheet as a stream instead of loading it whole.
+ * @author hamme
+ *
+ */
+public interface SheetReader extends Closeable {
+
+	/**
+	 * Returns a row of the sheet.
+	 * @param rowId
+	 * 		The index (starting at 0) of the row
+	 * @return
+	 * 		The row, null if it doesn't exist
+	 */
+	public Row getRow(int rowId);
+
+	/**
+	 * Returns the text of the comment of a cell.
+	 * @param rowId
+	 * 		The row of the cell
+	 * @param columnId
+	 * 		The column of the cell
+	 * @return
+	 * 		The text of the comment, null if the cell isn't commented
+	 */
+	public String getComment(int rowId, int columnId);
+
+	/**
+	 * Returns the texts of all the comments of the sheet, read at once.
+	 * @return
+	 * 		The texts of the comments by cell
+	 */
+	public Map<CellAddress, String> getComments();
+
+	/**
+	 * Returns the index of the last row of the sheet, as written in the file before the rows are read :
+	 * the last rows can be empty.
+	 * @return
+	 * 		The index of the last row, -1 if the sheet has none
+	 */
+	public int getLastRowNum();
+
+	/**
+	 * @return
+	 * 		The name of the sheet
+	 */
+	public String getSheetName();
+
+	/**
+	 * @return
+	 * 		The date formats of the workbook of the rows returned
+	 */
+	public DateFormatCache getDateFormats();
+
+	/**
+	 * @return
+	 * 		true if the rows can be asked for in any order, and by several threads at once
+	 */
+	public boolean isRandomAccess();
+
+}
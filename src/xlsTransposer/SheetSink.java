@@ -0,0 +1,136 @@
+package xlsTransposer;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Writes the output in a sheet, in memory (XSSFSheet) or streamed (SXSSFSheet).
+ * @author hamme
+ *
+ */
+public class SheetSink implements OutputSink {
+
+	/**
+	 * Constructor
+	 * @param sheet
+	 * 		The sheet in which it will be written
+	 */
+	public SheetSink(Sheet sheet) {
+		this(sheet, new CellStylePool(sheet.getWorkbook()));
+	}
+	/**
+	 * Constructor
+	 * @param sheet
+	 * 		The sheet in which it will be written
+	 * @param styles
+	 * 		The styles of the workbook of the sheet, shared by its sheets
+	 */
+	public SheetSink(Sheet sheet, CellStylePool styles) {
+		this.sheet = sheet;
+		this.styles = styles;
+	}
+
+	/**
+	 * The sheet in which it will be written
+	 */
+	private Sheet sheet;
+
+	public Sheet getSheet() {
+		return sheet;
+	}
+
+	/**
+	 * The styles of the workbook
+	 */
+	private CellStylePool styles;
+	/**
+	 * The style of the dates, by format index of the input. Only read and written by the thread writing the sheet.
+	 */
+	private CellStyle[] dateStyles = new CellStyle[0];
+
+	/**
+	 * The last row created. A streamed sheet only keeps a window of rows,
+	 * so the cells added after the line (the comments) are written through it.
+	 */
+	private Row currentRow;
+
+	@Override
+	public void createRow(int rowId) {
+		currentRow = sheet.createRow(rowId);
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		currentRow.createCell(columnId);
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		currentRow.createCell(columnId).setCellValue(value);
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		Cell cell = currentRow.createCell(columnId);
+		cell.setCellValue(value);
+		cell.setCellStyle(getDateStyle(format));
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		currentRow.createCell(columnId).setCellValue(value);
+	}
+
+	/**
+	 * The row should be the last one written or, if the sheet is streamed, still in its window.
+	 */
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		Row row = currentRow;
+		// The row isn't the last one written : it has to be still in memory
+		if (row == null || row.getRowNum() != rowId) {
+			row = sheet.getRow(rowId);
+		}
+		row.createCell(columnId).setCellValue(value);
+	}
+
+	/**
+	 * Returns the output style having the format of an input style.
+	 * @param format
+	 * 		The input style
+	 * @return
+	 * 		The output style, from {@link SheetSink#styles}
+	 */
+	private CellStyle getDateStyle(CellStyle format) {
+		int index = format.getDataFormat() & 0xFFFF;
+		if (index >= dateStyles.length) {
+			dateStyles = Arrays.copyOf(dateStyles, Math.max(index + 1, dateStyles.length * 2));
+		}
+		CellStyle style = dateStyles[index];
+		if (style == null) {
+			style = styles.getStyle(format.getDataFormatString());
+			dateStyles[index] = style;
+		}
+		return style;
+	}
+
+	/**
+	 * Nothing to do, the workbook is written and closed by its owner.
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Nothing to do, the workbook isn't written by its owner after a failure.
+	 */
+	@Override
+	public void abort() {
+	}
+
+}
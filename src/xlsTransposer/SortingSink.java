@@ -0,0 +1,689 @@
+package xlsTransposer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Sorts the lines of the body before they reach a sink (<code>-sort</code>), whatever the format of the output :
+ * by period then serie, or by some columns of the header. The lines before the body (the lines copied and
+ * the header) go through as they are.
+ * Each line of the body is kept as one array of bytes : its key, encoded so that the keys compare byte by byte
+ * (the period as its ordinal, see {@link PeriodCodec#toOrdinal(int, int, int)}, then the sort columns), followed
+ * by its cells. The lines are kept in memory up to a budget of bytes ({@link Parameters#getSortBudget()}),
+ * then sorted and spilled to a temporary file : when the sink is closed, the runs are merged and the lines
+ * written in order, with the rows following each other from the first row of the body.
+ * In a key, blank cells come first, then the numbers, the dates and the texts.
+ * Lines with the same key keep the order they were written in.
+ * Only the current row can be reached back to ({@link SortingSink#setValue(int, int, String)}).
+ * @author hamme
+ *
+ */
+public class SortingSink implements OutputSink {
+
+	/**
+	 * The sort column standing for the period columns
+	 */
+	public static final String PERIOD = "period";
+
+	/**
+	 * The column of the key standing for the period
+	 */
+	private static final int PERIOD_KEY = -1;
+	/**
+	 * The bytes taken by a line in memory besides its array : the header of the array and its reference
+	 */
+	private static final int LINE_OVERHEAD = 24;
+	/**
+	 * The types of the values, in the order of the keys
+	 */
+	private static final byte BLANK = 0;
+	private static final byte NUMBER = 1;
+	private static final byte DATE = 2;
+	private static final byte TEXT = 3;
+
+	/**
+	 * Constructor
+	 * @param sink
+	 * 		The sink the sorted lines are written in
+	 * @param headerRowId
+	 * 		The row of the header : the rows up to it go through
+	 * @param serieNb
+	 * 		The number of columns of the left header, followed by the period columns
+	 * @param sortColumns
+	 * 		The sort columns : {@link SortingSink#PERIOD}, names of the header or column numbers (starting at 0)
+	 * @param budget
+	 * 		The number of bytes of lines kept in memory before they are spilled
+	 */
+	public SortingSink(OutputSink sink, int headerRowId, int serieNb, String[] sortColumns, long budget) {
+		this.sink = sink;
+		this.headerRowId = headerRowId;
+		this.serieNb = serieNb;
+		this.sortColumns = sortColumns;
+		this.budget = budget;
+	}
+
+	/**
+	 * The sink the sorted lines are written in
+	 */
+	private OutputSink sink;
+	/**
+	 * The row of the header
+	 */
+	private int headerRowId;
+	/**
+	 * The number of columns of the left header
+	 */
+	private int serieNb;
+	/**
+	 * The sort columns, as asked for
+	 */
+	private String[] sortColumns;
+	/**
+	 * The number of bytes of lines kept in memory before they are spilled
+	 */
+	private long budget;
+
+	/**
+	 * The texts of the header, by column
+	 */
+	private List<String> header = new ArrayList<String>();
+	/**
+	 * The columns of the key, found in the header with the first line of the body ({@link SortingSink#PERIOD_KEY} for the period)
+	 */
+	private int[] keyColumns;
+	/**
+	 * The kind of the periods, found in the header : {@link PeriodCodec#RAW} or {@link PeriodCodec#YEARLY} for one column,
+	 * the other kinds for a year and a number in the year
+	 */
+	private int periodKind;
+	/**
+	 * The columns read for the key, and their value in the current line
+	 */
+	private boolean[] keyed = new boolean[0];
+	private byte[] types = new byte[0];
+	private double[] numbers = new double[0];
+	private long[] dates = new long[0];
+	private String[] texts = new String[0];
+
+	/**
+	 * The row of the first line of the body, -1 before it
+	 */
+	private int firstRowId = -1;
+	/**
+	 * The row being written, -1 before the first one
+	 */
+	private int currentRowId = -1;
+	/**
+	 * True while a line of the body is written
+	 */
+	private boolean inBody;
+	/**
+	 * The cells of the current line, then its key
+	 */
+	private Bytes cellBytes = new Bytes(256);
+	private DataOutputStream cells = new DataOutputStream(cellBytes);
+	private Bytes keyBytes = new Bytes(64);
+	private DataOutputStream key = new DataOutputStream(keyBytes);
+	/**
+	 * The lines of the body in memory
+	 */
+	private List<byte[]> lines = new ArrayList<byte[]>();
+	/**
+	 * The bytes of the lines in memory
+	 */
+	private long used;
+	/**
+	 * The styles of the dates, by index in the lines
+	 */
+	private List<CellStyle> formats = new ArrayList<CellStyle>();
+	private Map<CellStyle, Integer> formatIds = new IdentityHashMap<CellStyle, Integer>();
+	/**
+	 * The sorted runs of lines spilled
+	 */
+	private List<File> runs = new ArrayList<File>();
+	/**
+	 * True once the lines are written in the sink, or dropped
+	 */
+	private boolean closed;
+
+	/**
+	 * The bytes of a line being written, copied without an array in between.
+	 */
+	private static final class Bytes extends ByteArrayOutputStream {
+		Bytes(int size) {
+			super(size);
+		}
+
+		void copyTo(byte[] line, int start) {
+			System.arraycopy(buf, 0, line, start, count);
+		}
+	}
+
+	/**
+	 * Orders the lines by key, comparing the bytes as unsigned
+	 */
+	private static final Comparator<byte[]> ORDER = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			int aEnd = 4 + keyLength(a);
+			int bEnd = 4 + keyLength(b);
+			for (int i = 4, j = 4; i < aEnd && j < bEnd; i++, j++) {
+				int c = (a[i] & 0xFF) - (b[j] & 0xFF);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return Integer.compare(aEnd, bEnd);
+		}
+	};
+
+	/**
+	 * @return
+	 * 		The number of runs spilled
+	 */
+	public int getRunsNb() {
+		return runs.size();
+	}
+
+	@Override
+	public void createRow(int rowId) {
+		endLine();
+		currentRowId = rowId;
+		if (rowId <= headerRowId) {
+			sink.createRow(rowId);
+		}
+		else {
+			if (firstRowId == -1) {
+				firstRowId = rowId;
+				findKeyColumns();
+			}
+			inBody = true;
+			Arrays.fill(types, BLANK);
+			cellBytes.reset();
+		}
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		if (!inBody) {
+			sink.setBlank(columnId);
+		}
+		else {
+			try {
+				cells.writeShort(columnId);
+				cells.writeByte(BLANK);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (columnId < keyed.length && keyed[columnId]) {
+				types[columnId] = BLANK;
+			}
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		if (!inBody) {
+			sink.setValue(columnId, value);
+		}
+		else {
+			try {
+				cells.writeShort(columnId);
+				cells.writeByte(NUMBER);
+				cells.writeDouble(value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (columnId < keyed.length && keyed[columnId]) {
+				types[columnId] = NUMBER;
+				numbers[columnId] = value;
+			}
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		if (!inBody) {
+			sink.setValue(columnId, value, format);
+		}
+		else {
+			Integer id = formatIds.get(format);
+			if (id == null) {
+				id = formats.size();
+				formats.add(format);
+				formatIds.put(format, id);
+			}
+			try {
+				cells.writeShort(columnId);
+				cells.writeByte(DATE);
+				cells.writeLong(value.getTime());
+				cells.writeShort(id);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (columnId < keyed.length && keyed[columnId]) {
+				types[columnId] = DATE;
+				dates[columnId] = value.getTime();
+			}
+		}
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		if (!inBody) {
+			if (currentRowId == headerRowId) {
+				while (header.size() <= columnId) {
+					header.add(null);
+				}
+				header.set(columnId, value);
+			}
+			sink.setValue(columnId, value);
+		}
+		else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			try {
+				cells.writeShort(columnId);
+				cells.writeByte(TEXT);
+				cells.writeInt(bytes.length);
+				cells.write(bytes);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (columnId < keyed.length && keyed[columnId]) {
+				types[columnId] = TEXT;
+				texts[columnId] = value;
+			}
+		}
+	}
+
+	/**
+	 * Only the current row can be written.
+	 */
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		if (rowId != currentRowId) {
+			throw new IllegalStateException("Row " + rowId + " has already been sorted");
+		}
+		setValue(columnId, value);
+	}
+
+	/**
+	 * Finds the sort columns and the kind of the periods in the header.
+	 * @throws IllegalArgumentException
+	 * 		If a column isn't in the header, by its name or by its number
+	 */
+	private void findKeyColumns() {
+
+		// A year followed by a number in the year, or one period column
+		periodKind = PeriodCodec.RAW;
+		for (int k = 1; k < OutputFile.periodValues.length; k++) {
+			if (serieNb + 1 < header.size() && OutputFile.periodValues[k][1].equalsIgnoreCase(header.get(serieNb + 1))) {
+				periodKind = k + PeriodCodec.YEARLY;
+			}
+		}
+
+		List<Integer> columns = new ArrayList<Integer>();
+		for (String name : sortColumns) {
+			if (name.equalsIgnoreCase(PERIOD)) {
+				columns.add(PERIOD_KEY);
+			}
+			else if (name.matches("[0-9]+")) {
+				int columnId = Integer.parseInt(name);
+				if (columnId >= header.size()) {
+					throw new IllegalArgumentException("No column " + name + " in the header " + header + " (" + header.size() + " columns)");
+				}
+				columns.add(columnId);
+			}
+			else {
+				int columnId = -1;
+				for (int i = 0; i < header.size() && columnId == -1; i++) {
+					if (name.equalsIgnoreCase(header.get(i))) {
+						columnId = i;
+					}
+				}
+				if (columnId == -1) {
+					throw new IllegalArgumentException("No column " + name + " in the header " + header);
+				}
+				columns.add(columnId);
+			}
+		}
+
+		keyColumns = new int[columns.size()];
+		int width = serieNb + 2;
+		for (int i = 0; i < keyColumns.length; i++) {
+			keyColumns[i] = columns.get(i);
+			width = Math.max(width, keyColumns[i] + 1);
+		}
+		keyed = new boolean[width];
+		types = new byte[width];
+		numbers = new double[width];
+		dates = new long[width];
+		texts = new String[width];
+		for (int columnId : keyColumns) {
+			if (columnId == PERIOD_KEY) {
+				keyed[serieNb] = true;
+				keyed[serieNb + 1] = periodKind > PeriodCodec.YEARLY;
+			}
+			else {
+				keyed[columnId] = true;
+			}
+		}
+	}
+
+	/**
+	 * Ends the line being written : a line of the body gets its key and is kept, spilling the lines
+	 * if they take more than the budget.
+	 */
+	private void endLine() {
+		if (!inBody) {
+			return;
+		}
+		inBody = false;
+		byte[] line;
+		try {
+			keyBytes.reset();
+			for (int columnId : keyColumns) {
+				if (columnId == PERIOD_KEY) {
+					writePeriodKey();
+				}
+				else {
+					writeKey(columnId);
+				}
+			}
+			line = new byte[4 + keyBytes.size() + cellBytes.size()];
+			int keyLength = keyBytes.size();
+			line[0] = (byte) (keyLength >>> 24);
+			line[1] = (byte) (keyLength >>> 16);
+			line[2] = (byte) (keyLength >>> 8);
+			line[3] = (byte) keyLength;
+			keyBytes.copyTo(line, 4);
+			cellBytes.copyTo(line, 4 + keyLength);
+			lines.add(line);
+			used += line.length + LINE_OVERHEAD;
+			if (used >= budget) {
+				spill();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the period of the current line in its key : its ordinal when the period is a year, or a year and
+	 * a number in the year, as numbers. Otherwise the values of the period columns.
+	 */
+	private void writePeriodKey() throws IOException {
+		if (periodKind > PeriodCodec.YEARLY) {
+			if (types[serieNb] == NUMBER && types[serieNb + 1] == NUMBER) {
+				writeNumberKey(PeriodCodec.toOrdinal(periodKind, (int) numbers[serieNb], (int) numbers[serieNb + 1]));
+			}
+			else {
+				writeKey(serieNb);
+				writeKey(serieNb + 1);
+			}
+		}
+		// A year kept as a text in the header
+		else if (types[serieNb] == TEXT && texts[serieNb].matches("[0-9]{4}")) {
+			writeNumberKey(PeriodCodec.toOrdinal(PeriodCodec.YEARLY, Integer.parseInt(texts[serieNb]), 0));
+		}
+		else {
+			writeKey(serieNb);
+		}
+	}
+
+	/**
+	 * Writes the value of a column of the current line in its key.
+	 * @param columnId
+	 * 		The column
+	 */
+	private void writeKey(int columnId) throws IOException {
+		switch (types[columnId]) {
+		case NUMBER:
+			writeNumberKey(numbers[columnId]);
+			break;
+		case DATE:
+			key.writeByte(DATE);
+			key.writeLong(dates[columnId] ^ Long.MIN_VALUE);
+			break;
+		case TEXT:
+			// The characters without any byte 0, then a byte 0 : a text comes before the longer texts starting with it
+			key.writeByte(TEXT);
+			String text = texts[columnId];
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c >= 0x01 && c <= 0x7F) {
+					key.writeByte(c);
+				}
+				else if (c <= 0x7FF) {
+					key.writeByte(0xC0 | (c >> 6));
+					key.writeByte(0x80 | (c & 0x3F));
+				}
+				else {
+					key.writeByte(0xE0 | (c >> 12));
+					key.writeByte(0x80 | ((c >> 6) & 0x3F));
+					key.writeByte(0x80 | (c & 0x3F));
+				}
+			}
+			key.writeByte(0);
+			break;
+		default:
+			key.writeByte(BLANK);
+			break;
+		}
+	}
+
+	/**
+	 * Writes a number in the key of the current line, its bits turned so that the numbers compare as unsigned bytes.
+	 * @param value
+	 * 		The number
+	 */
+	private void writeNumberKey(double value) throws IOException {
+		long bits = Double.doubleToLongBits(value);
+		key.writeByte(NUMBER);
+		key.writeLong(bits ^ ((bits >> 63) | Long.MIN_VALUE));
+	}
+
+	/**
+	 * @param line
+	 * 		A line
+	 * @return
+	 * 		The length of its key
+	 */
+	private static int keyLength(byte[] line) {
+		return ((line[0] & 0xFF) << 24) | ((line[1] & 0xFF) << 16) | ((line[2] & 0xFF) << 8) | (line[3] & 0xFF);
+	}
+
+	/**
+	 * Writes the lines in memory in a temporary file, sorted, and forgets them.
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	private void spill() throws IOException {
+
+		// A stable sort : the lines with the same key keep their order
+		Collections.sort(lines, ORDER);
+		File run = File.createTempFile("sort", ".run");
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try {
+			for (byte[] line : lines) {
+				out.writeInt(line.length);
+				out.write(line);
+			}
+			out.writeInt(-1);
+		} finally {
+			out.close();
+		}
+		lines.clear();
+		used = 0;
+	}
+
+	/**
+	 * A spilled run being merged : its current line.
+	 */
+	private static final class Run {
+		final DataInputStream in;
+		/**
+		 * The order of the run, for the lines with the same key
+		 */
+		final int index;
+		byte[] line;
+
+		Run(File file, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			this.index = index;
+		}
+
+		/**
+		 * Reads the next line.
+		 * @return
+		 * 		false at the end of the run
+		 */
+		boolean next() throws IOException {
+			int length = in.readInt();
+			if (length < 0) {
+				line = null;
+				return false;
+			}
+			line = new byte[length];
+			in.readFully(line);
+			return true;
+		}
+	}
+
+	/**
+	 * Writes a line of the body in the sink.
+	 * @param line
+	 * 		The line
+	 * @param rowId
+	 * 		Its row
+	 * @throws IOException
+	 * 		If the line is corrupted
+	 */
+	private void write(byte[] line, int rowId) throws IOException {
+		sink.createRow(rowId);
+		int start = 4 + keyLength(line);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(line, start, line.length - start));
+		while (in.available() > 0) {
+			int columnId = in.readUnsignedShort();
+			switch (in.readByte()) {
+			case BLANK:
+				sink.setBlank(columnId);
+				break;
+			case NUMBER:
+				sink.setValue(columnId, in.readDouble());
+				break;
+			case DATE:
+				long time = in.readLong();
+				sink.setValue(columnId, new Date(time), formats.get(in.readUnsignedShort()));
+				break;
+			case TEXT:
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				sink.setValue(columnId, new String(bytes, StandardCharsets.UTF_8));
+				break;
+			default:
+				throw new EOFException("Corrupted line");
+			}
+		}
+	}
+
+	/**
+	 * Writes the sorted lines in the sink, merging the runs if some were spilled, then closes the sink.
+	 * Does nothing the second time.
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (closed) {
+			return;
+		}
+		closed = true;
+		List<Run> open = new ArrayList<Run>();
+		try {
+			endLine();
+			int rowId = firstRowId;
+			if (runs.isEmpty()) {
+				Collections.sort(lines, ORDER);
+				for (byte[] line : lines) {
+					write(line, rowId++);
+				}
+				lines.clear();
+			}
+			else {
+				spill();
+				PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+					@Override
+					public int compare(Run a, Run b) {
+						int c = ORDER.compare(a.line, b.line);
+						return c != 0 ? c : Integer.compare(a.index, b.index);
+					}
+				});
+				for (int i = 0; i < runs.size(); i++) {
+					Run run = new Run(runs.get(i), i);
+					open.add(run);
+					if (run.next()) {
+						queue.add(run);
+					}
+				}
+				while (!queue.isEmpty()) {
+					Run run = queue.poll();
+					write(run.line, rowId++);
+					if (run.next()) {
+						queue.add(run);
+					}
+				}
+			}
+		} finally {
+			for (Run run : open) {
+				run.in.close();
+			}
+			deleteRuns();
+			sink.close();
+		}
+	}
+
+	/**
+	 * Drops the lines without writing them, after a failure : the runs spilled are deleted, and the sink aborted.
+	 */
+	@Override
+	public void abort() throws IOException {
+		closed = true;
+		lines.clear();
+		deleteRuns();
+		sink.abort();
+	}
+
+	/**
+	 * Deletes the runs spilled.
+	 */
+	private void deleteRuns() {
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+	}
+
+}
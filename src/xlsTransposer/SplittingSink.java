@@ -0,0 +1,270 @@
+package xlsTransposer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Writes the output of a sheet in a workbook, going on in continuation files when it gets over the rows
+ * a .xlsx sheet can hold ({@link Parameters#getMaxRows()}) : the lines following the limit are written in
+ * a new workbook (<code>nameTransposed_sheet_2.xlsx</code>, <code>_3</code>...) with the lines copied and the header
+ * at the top again. The first part is the sheet of the output workbook, its rows are left as they are.
+ * The workbooks of the parts are written by their owner ({@link SplittingSink#getParts()}), once the sheet is done.
+ * @author hamme
+ *
+ */
+public class SplittingSink implements OutputSink {
+
+	/**
+	 * The number of rows of a .xlsx sheet
+	 */
+	public static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+	/**
+	 * Constructor
+	 * @param sheet
+	 * 		The sink of the sheet of the output workbook, the first part
+	 * @param inputName
+	 * 		The name of the input file, giving the names of the continuation files
+	 * @param sheetName
+	 * 		The name of the sheet
+	 * @param params
+	 * 		The parameters of the transposition : the rows of a part, the lines copied, the kind of workbook
+	 */
+	public SplittingSink(SheetSink sheet, String inputName, String sheetName, Parameters params) {
+		this.inputName = inputName;
+		this.sheetName = sheetName;
+		this.params = params;
+		this.headerRowId = params.getLinesToCopy();
+		this.maxRows = params.getMaxRows();
+		parts.add(new Part(null, null, sheet, 0));
+		current = sheet;
+	}
+
+	/**
+	 * A part of the output : a workbook and the row of the sheet its body starts at.
+	 */
+	public static final class Part {
+		/**
+		 * The name of the file, null for the output workbook
+		 */
+		private final String name;
+		/**
+		 * The workbook of a continuation file, null for the output workbook
+		 */
+		private final Workbook workbook;
+		private final SheetSink sink;
+		/**
+		 * The first row of the body of the sheet in the part, 0 for the first part
+		 */
+		private final int firstRowId;
+
+		Part(String name, Workbook workbook, SheetSink sink, int firstRowId) {
+			this.name = name;
+			this.workbook = workbook;
+			this.sink = sink;
+			this.firstRowId = firstRowId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Workbook getWorkbook() {
+			return workbook;
+		}
+	}
+
+	/**
+	 * A cell of the lines copied or of the header, written again at the top of each part.
+	 */
+	private static final class HeaderCell {
+		final int rowId;
+		/**
+		 * -1 for the creation of the row
+		 */
+		final int columnId;
+		/**
+		 * null for a blank cell, a Double, a String or a Date
+		 */
+		final Object value;
+		final CellStyle format;
+
+		HeaderCell(int rowId, int columnId, Object value, CellStyle format) {
+			this.rowId = rowId;
+			this.columnId = columnId;
+			this.value = value;
+			this.format = format;
+		}
+	}
+
+	/**
+	 * The name of the input file
+	 */
+	private String inputName;
+	/**
+	 * The name of the sheet
+	 */
+	private String sheetName;
+	/**
+	 * The parameters of the transposition
+	 */
+	private Parameters params;
+	/**
+	 * The row of the header
+	 */
+	private int headerRowId;
+	/**
+	 * The number of rows of a part
+	 */
+	private int maxRows;
+
+	/**
+	 * The parts, in the order of the rows
+	 */
+	private List<Part> parts = new ArrayList<Part>();
+	/**
+	 * The cells of the lines copied and of the header
+	 */
+	private List<HeaderCell> header = new ArrayList<HeaderCell>();
+	/**
+	 * The sink of the last part
+	 */
+	private SheetSink current;
+	/**
+	 * The row being written, in the sheet
+	 */
+	private int currentRowId = -1;
+
+	/**
+	 * @return
+	 * 		The parts, the first one being the sheet of the output workbook
+	 */
+	public List<Part> getParts() {
+		return parts;
+	}
+
+	/**
+	 * Returns the row of a part a row of the sheet is written in.
+	 * @param part
+	 * 		The part
+	 * @param rowId
+	 * 		The row of the sheet
+	 * @return
+	 * 		The row in the part, after the header written again
+	 */
+	private int rowOf(Part part, int rowId) {
+		return part.firstRowId == 0 ? rowId : rowId - part.firstRowId + headerRowId + 1;
+	}
+
+	@Override
+	public void createRow(int rowId) {
+		currentRowId = rowId;
+		if (rowId <= headerRowId) {
+			header.add(new HeaderCell(rowId, -1, null, null));
+		}
+		else if (rowOf(parts.get(parts.size() - 1), rowId) >= maxRows) {
+			startPart(rowId);
+		}
+		current.createRow(rowOf(parts.get(parts.size() - 1), rowId));
+	}
+
+	/**
+	 * Starts a continuation file, with the lines copied and the header.
+	 * @param rowId
+	 * 		The first row of the body in it
+	 */
+	private void startPart(int rowId) {
+
+		String name = MainXLS.getPartName(inputName, sheetName, parts.size() + 1);
+		Workbook workbook = MainXLS.createWorkbook(params);
+		SheetSink sink = new SheetSink(workbook.createSheet(sheetName));
+		for (HeaderCell cell : header) {
+			if (cell.columnId == -1) {
+				sink.createRow(cell.rowId);
+			}
+			else if (cell.value == null) {
+				sink.setBlank(cell.columnId);
+			}
+			else if (cell.value instanceof Double) {
+				sink.setValue(cell.columnId, (Double) cell.value);
+			}
+			else if (cell.value instanceof Date) {
+				sink.setValue(cell.columnId, (Date) cell.value, cell.format);
+			}
+			else {
+				sink.setValue(cell.columnId, (String) cell.value);
+			}
+		}
+		parts.add(new Part(name, workbook, sink, rowId));
+		current = sink;
+		System.out.println(sheetName + " : over " + maxRows + " rows, going on in " + name + ".");
+	}
+
+	@Override
+	public void setBlank(int columnId) {
+		keep(columnId, null, null);
+		current.setBlank(columnId);
+	}
+
+	@Override
+	public void setValue(int columnId, double value) {
+		keep(columnId, value, null);
+		current.setValue(columnId, value);
+	}
+
+	@Override
+	public void setValue(int columnId, Date value, CellStyle format) {
+		keep(columnId, value, format);
+		current.setValue(columnId, value, format);
+	}
+
+	@Override
+	public void setValue(int columnId, String value) {
+		keep(columnId, value, null);
+		current.setValue(columnId, value);
+	}
+
+	/**
+	 * The row is found in its part.
+	 */
+	@Override
+	public void setValue(int rowId, int columnId, String value) {
+		if (rowId == currentRowId) {
+			keep(columnId, value, null);
+		}
+		int i = parts.size() - 1;
+		while (rowId < parts.get(i).firstRowId) {
+			i--;
+		}
+		parts.get(i).sink.setValue(rowOf(parts.get(i), rowId), columnId, value);
+	}
+
+	/**
+	 * Keeps a cell of the lines copied or of the header.
+	 */
+	private void keep(int columnId, Object value, CellStyle format) {
+		if (currentRowId <= headerRowId) {
+			header.add(new HeaderCell(currentRowId, columnId, value, format));
+		}
+	}
+
+	/**
+	 * Nothing to do, the workbooks are written and closed by their owner.
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Nothing to do, the workbooks aren't written by their owner after a failure.
+	 */
+	@Override
+	public void abort() {
+	}
+
+}
@@ -0,0 +1,160 @@
+package xlsTransposer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Thrift structures with the compact protocol, the encoding of the metadata of a Parquet file
+ * (page headers and footer). Only what {@link ParquetSink} needs : structures, lists,
+ * 32 and 64 bits integers and strings.
+ * A structure written alone can be added as an element of a list with {@link ThriftCompactWriter#writeRaw(byte[])}.
+ * @author hamme
+ *
+ */
+class ThriftCompactWriter {
+
+	/**
+	 * Types of the compact protocol
+	 */
+	static final byte I32 = 5;
+	static final byte I64 = 6;
+	static final byte BINARY = 8;
+	static final byte LIST = 9;
+	static final byte STRUCT = 12;
+
+	/**
+	 * The bytes written
+	 */
+	private ByteArrayOutputStream out = new ByteArrayOutputStream();
+	/**
+	 * The id of the last field written in each structure being written, the field ids being written as deltas
+	 */
+	private int[] lastFields = new int[16];
+	/**
+	 * The depth of the structure being written, 0 for the top structure
+	 */
+	private int depth = 0;
+
+	/**
+	 * @return
+	 * 		The bytes written
+	 */
+	byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	void writeI32(int fieldId, int value) {
+		writeFieldHeader(fieldId, I32);
+		writeVarint(zigzag(value));
+	}
+
+	void writeI64(int fieldId, long value) {
+		writeFieldHeader(fieldId, I64);
+		writeVarint(zigzag(value));
+	}
+
+	void writeString(int fieldId, String value) {
+		writeFieldHeader(fieldId, BINARY);
+		writeStringElement(value);
+	}
+
+	/**
+	 * Starts a structure field, ended by {@link ThriftCompactWriter#endStruct()}.
+	 * @param fieldId
+	 * 		The id of the field
+	 */
+	void beginStruct(int fieldId) {
+		writeFieldHeader(fieldId, STRUCT);
+		lastFields[++depth] = 0;
+	}
+
+	/**
+	 * Starts a structure element of a list, ended by {@link ThriftCompactWriter#endStruct()}.
+	 */
+	void beginStructElement() {
+		lastFields[++depth] = 0;
+	}
+
+	/**
+	 * Ends the structure being written (the top structure too).
+	 */
+	void endStruct() {
+		out.write(0);
+		depth--;
+	}
+
+	/**
+	 * Starts a list field, followed by its elements.
+	 * @param fieldId
+	 * 		The id of the field
+	 * @param elementType
+	 * 		The type of the elements
+	 * @param size
+	 * 		The number of elements
+	 */
+	void beginList(int fieldId, byte elementType, int size) {
+		writeFieldHeader(fieldId, LIST);
+		if (size < 15) {
+			out.write(size << 4 | elementType);
+		}
+		else {
+			out.write(0xF0 | elementType);
+			writeVarint(size);
+		}
+	}
+
+	void writeI32Element(int value) {
+		writeVarint(zigzag(value));
+	}
+
+	void writeStringElement(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Writes bytes already encoded, a structure element of a list written by another writer.
+	 * @param bytes
+	 * 		The bytes
+	 */
+	void writeRaw(byte[] bytes) {
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Writes the type and the id of a field, the id as a delta from the previous field if it is small.
+	 * @param fieldId
+	 * 		The id of the field
+	 * @param type
+	 * 		The type of the field
+	 */
+	private void writeFieldHeader(int fieldId, byte type) {
+		int delta = fieldId - lastFields[depth];
+		if (delta > 0 && delta <= 15) {
+			out.write(delta << 4 | type);
+		}
+		else {
+			out.write(type);
+			writeVarint(zigzag(fieldId));
+		}
+		lastFields[depth] = fieldId;
+	}
+
+	private void writeVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long zigzag(int value) {
+		return (value << 1 ^ value >> 31) & 0xFFFFFFFFL;
+	}
+
+	private static long zigzag(long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+}
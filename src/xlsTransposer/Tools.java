@@ -1,11 +1,13 @@
 package xlsTransposer;
 
-import org.apache.poi.hssf.usermodel.HSSFRow;
+import java.util.Map;
+
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Comment;
 import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 
@@ -25,18 +27,62 @@ public class Tools {
 	 * @param output
 	 * 		sheet in which it will be written
 	 */
-	public Tools(HSSFSheet input, XSSFSheet output) {
+	public Tools(HSSFSheet input, Sheet output) {
+		this(new HSSFSheetReader(input), output);
+	}
+	/**
+	 * Constructor
+	 * @param input
+	 * 		reader of the sheet that will be read
+	 * @param output
+	 * 		sheet in which it will be written
+	 */
+	public Tools(SheetReader input, Sheet output) {
+		this(input, new SheetSink(output));
+	}
+	/**
+	 * Constructor
+	 * @param input
+	 * 		reader of the sheet that will be read
+	 * @param output
+	 * 		sink in which it will be written
+	 */
+	public Tools(SheetReader input, OutputSink output) {
 		this.input = input;
 		this.output = output;
+		this.dateFormats = input.getDateFormats();
+	}
+	/**
+	 * reader of the sheet that will be read
+	 */
+	private SheetReader input;
+	/**
+	 * where it will be written : a sheet (see {@link SheetSink}) or a text file (see {@link CsvSink}).
+	 */
+	private OutputSink output;
+	/**
+	 * The date formats of the workbook of the {@link Tools#input}
+	 */
+	private DateFormatCache dateFormats;
+	
+	public DateFormatCache getDateFormats() {
+		return dateFormats;
 	}
 	/**
-	 * sheet that will be read
+	 * @see SheetReader#getLastRowNum()
+	 * @return
+	 * 		The index of the last row of the input sheet
 	 */
-	private HSSFSheet input;
+	public int getLastRowNum() {
+		return input.getLastRowNum();
+	}
 	/**
-	 * sheet in which it will be written
+	 * @return
+	 * 		The name of the input sheet
 	 */
-	private XSSFSheet output;
+	public String getSheetName() {
+		return input.getSheetName();
+	}
 	/**
 	 * Last column of the input sheet
 	 */
@@ -61,12 +107,11 @@ public class Tools {
 	 */
 	public void copy(int inputStart, int outputStart, int length) {
 
-		HSSFRow iRow;
-		XSSFRow oRow;
+		Row iRow;
 		for (int i = 0; i < length; i++) {
 			
 			iRow = input.getRow(inputStart + i);
-			oRow = output.createRow(outputStart + i);
+			output.createRow(outputStart + i);
 			
 			// Checking if the row isn't null.
 			if (iRow != null) {
@@ -75,25 +120,7 @@ public class Tools {
 				
 				// Copying each cell of the row
 				for (int j = 0; j < eol; j++) {
-					
-					Cell iCell = iRow.getCell(j, Row.CREATE_NULL_AS_BLANK);
-					Cell oCell = oRow.createCell(j);
-					
-					switch (iCell.getCellType()) {
-					case Cell.CELL_TYPE_NUMERIC:
-						// If the format is a date, we have to copy it as a date
-					 	if (DateUtil.isCellDateFormatted(iCell)) {
-					 		oCell.setCellValue(iCell.getDateCellValue());
- 					 	}
-					 	else {
-					 		oCell.setCellValue(iCell.getNumericCellValue());
-					 	}	
-						break;
-					case Cell.CELL_TYPE_STRING:
-						oCell.setCellValue(iCell.getStringCellValue());
-						break;
-					}
-
+					writeCell(j, iRow.getCell(j, Row.CREATE_NULL_AS_BLANK));
 				}
 
 			}
@@ -111,7 +138,7 @@ public class Tools {
 	 */
 	public Cell[] extractLine(int rowId) { 
 		
-		HSSFRow row = input.getRow(rowId);
+		Row row = input.getRow(rowId);
 		Cell[] line = new Cell[lastColumn + 1];		
 		
 		for (int i = 0; i <= lastColumn; i++) {			
@@ -133,7 +160,7 @@ public class Tools {
 	 */
 	public Cell[] extractLine(int rowId, int start, int end) { 
 		
-		HSSFRow row = input.getRow(rowId);
+		Row row = input.getRow(rowId);
 		Cell[] line = new Cell[end - start + 1];
 		
 		
@@ -146,7 +173,7 @@ public class Tools {
 	/**
 	 * Extracts certain following cells from a row from the {@link Tools#input}. 
 	 * Extracts Null as Blank.
-	 * Fills the comment array in parameter with the found commentaries.
+	 * Fills the comment array in parameter with the text of the found commentaries.
 	 * @param rowId
 	 * 		The number of the row to extract cells from
 	 * @param start
@@ -154,25 +181,70 @@ public class Tools {
 	 * @param end
 	 * 		The last cell to extract
 	 * @param
-	 * 		The Comment array to fill with the commentaries
+	 * 		The String array to fill with the commentaries
 	 * @return
 	 * 		The extracted cells in the form of an array of cells
 	 */
-	public Cell[] extractLine(int rowId, int start, int end, Comment[] comm) { 
+	public Cell[] extractLine(int rowId, int start, int end, String[] comm) { 
 		
-		HSSFRow row = input.getRow(rowId);
+		Row row = input.getRow(rowId);
 		Cell[] line = new Cell[end - start + 1];
 
 		for (int i = start; i <= end; i++) {			
 			line[i - start] = row.getCell(i, Row.CREATE_NULL_AS_BLANK);
-			Comment comment = row.getCell(i, Row.CREATE_NULL_AS_BLANK).getCellComment();
+			String comment = input.getComment(rowId, i);
 			if (comment != null) {
-				System.out.println("comm non nul");
 				comm[i - start] = comment;
 			 }
 		}
 		return line;
 	}
+	/**
+	 * Reads a row of the {@link Tools#input} in a buffer, from column 0 to the size of the buffer.
+	 * Contrary to {@link Tools#extractLine(int, int, int)}, nothing is allocated and the missing cells 
+	 * aren't created in the input. Several threads can then read different rows of an input in memory at once.
+	 * @param rowId
+	 * 		The number of the row to read
+	 * @param line
+	 * 		The buffer receiving the cells
+	 */
+	public void readLine(int rowId, RowBuffer line) {
+		line.read(input.getRow(rowId), dateFormats);
+	}
+	
+	/**
+	 * Reads cells of the {@link Tools#input} in a buffer.
+	 * @param cells
+	 * 		The cells, as many as the slots of the buffer
+	 * @param line
+	 * 		The buffer receiving the cells
+	 */
+	public void readLine(Cell[] cells, RowBuffer line) {
+		line.read(cells, dateFormats);
+	}
+	
+	/**
+	 * Returns the texts of all the comments of the {@link Tools#input}, read at once.
+	 * @return
+	 * 		The texts of the comments by cell
+	 */
+	public Map<CellAddress, String> getComments() {
+		return input.getComments();
+	}
+	
+	/**
+	 * Returns the text of the comment of a cell of the {@link Tools#input}.
+	 * @param rowId
+	 * 		The row of the cell
+	 * @param columnId
+	 * 		The column of the cell
+	 * @return
+	 * 		The text of the comment, null if there is none
+	 */
+	public String getComment(int rowId, int columnId) {
+		return input.getComment(rowId, columnId);
+	}
+	
 	/**
 	 * Write a line in the {@link Tools#output} composed of arrays of Cell and String
 	 * @param rowId
@@ -184,31 +256,9 @@ public class Tools {
 	 */
 	public void writeLine(int rowId, Cell[] beginning, String[] end) {
 		
-		XSSFRow row = output.createRow(rowId);
-		
-		// Writing the beginning cell array
-		for (int i = 0; i < beginning.length; i++) {
-			Cell cell = row.createCell(i);
-			switch (beginning[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(beginning[i])) {
-					cell.setCellValue(beginning[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(beginning[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(beginning[i].getStringCellValue());
-				break;
-			}
-			
-		}
-		// Writing the end String array
-		for (int i = 0; i < end.length; i++) {
-			Cell cell = row.createCell(beginning.length + i);
-			cell.setCellValue(end[i]);
-		}
+		output.createRow(rowId);
+		writeCells(0, beginning);
+		writeCells(beginning.length, end);
 		
 	}
 	/**
@@ -224,49 +274,10 @@ public class Tools {
 	 */
 	public void writeLine(int rowId, Cell[] beginning, String[] middle, Cell[] end) {
 		
-		XSSFRow row = output.createRow(rowId);
-		
-		// Writing beginning
-		for (int i = 0; i < beginning.length; i++) {
-			Cell cell = row.createCell(i);
-			switch (beginning[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(beginning[i])) {
-					cell.setCellValue(beginning[i].getDateCellValue());
-//					System.out.println(" FOUND A DATE " + beginning[i].getRowIndex() + ":" + beginning[i].getColumnIndex()); // TODO : TBR
-				}
-				else {
-					cell.setCellValue(beginning[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(beginning[i].getStringCellValue());
-				break;
-			}
-			
-		}
-		// Writing middle
-		for (int i = 0; i < middle.length; i++) {
-			Cell cell = row.createCell(beginning.length + i);
-			cell.setCellValue(middle[i]);
-		}
-		// Writing end
-		for (int i = 0; i < end.length; i++) {
-			Cell cell = row.createCell(beginning.length + middle.length+ i);
-			switch (end[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(end[i])) {
-					cell.setCellValue(end[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(end[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(end[i].getStringCellValue());
-				break;
-			}
-		}
+		output.createRow(rowId);
+		writeCells(0, beginning);
+		writeCells(beginning.length, middle);
+		writeCells(beginning.length + middle.length, end);
 		
 	}
 	/**
@@ -284,52 +295,11 @@ public class Tools {
 	 */
 	public void writeLine(int rowId, Cell[] beginning, String[] second, Cell[] third, String[] end) {
 		
-		XSSFRow row = output.createRow(rowId);
-		// Writing beginning
-		for (int i = 0; i < beginning.length; i++) {
-			Cell cell = row.createCell(i);
-			switch (beginning[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(beginning[i])) {
-					cell.setCellValue(beginning[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(beginning[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(beginning[i].getStringCellValue());
-				break;
-			}
-			
-		}		
-		// Writing second
-		for (int i = 0; i < second.length; i++) {
-			Cell cell = row.createCell(beginning.length + i);
-			cell.setCellValue(second[i]);
-		}		
-		// Writing third
-		for (int i = 0; i < third.length; i++) {
-			Cell cell = row.createCell(beginning.length + second.length+ i);
-			switch (third[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(third[i])) {
-					cell.setCellValue(third[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(third[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(third[i].getStringCellValue());
-				break;
-			}
-		}
-		// Writing end
-		for (int i = 0; i < end.length; i++) {
-			Cell cell = row.createCell(beginning.length + second.length + third.length + i);
-			cell.setCellValue(end[i]);
-		}
+		output.createRow(rowId);
+		writeCells(0, beginning);
+		writeCells(beginning.length, second);
+		writeCells(beginning.length + second.length, third);
+		writeCells(beginning.length + second.length + third.length, end);
 		
 	}
 	/**
@@ -341,27 +311,8 @@ public class Tools {
 	 */
 	public void writeLine(int rowId, Cell[] line) {
 		
-		XSSFRow row = output.createRow(rowId);
-		for (int i = 0; i < line.length; i++) {
-//			System.out.println("writeLine de la case " + i);
-			Cell cell = row.createCell(i);
-			switch (line[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(line[i])) {
-//					System.out.println(" FOUND A DATE " + line[i].getRowIndex() + ":" + line[i].getColumnIndex()); // TODO : TBR
-					
-					cell.setCellValue(line[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(line[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(line[i].getStringCellValue());
-				break;
-			}
-			
-		}
+		output.createRow(rowId);
+		writeCells(0, line);
 		
 	}
 	/**
@@ -381,73 +332,94 @@ public class Tools {
 	 */
 	public void writeline(int rowId, Cell[] first, int second, int third, Cell forth, Cell[] last) {
 
+		output.createRow(rowId);
+		writeCells(0, first);
+		output.setValue(first.length, second);
+		output.setValue(first.length + 1, third);
+		writeCell(first.length + 2, forth);
+		writeCells(first.length + 3, last);
 		
-		XSSFRow row = output.createRow(rowId);
-		// Writing first
-		for (int i = 0; i < first.length; i++) {
-			Cell cell = row.createCell(i);
-			switch (first[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(first[i])) {
-					cell.setCellValue(first[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(first[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(first[i].getStringCellValue());
-				break;
-			}
-			
-		}
-
-		// Writing second
-		Cell cell = row.createCell(first.length);
-		cell.setCellValue(second);
+	}
+	
+	/**
+	 * Writes a line of the body in {@link Tools#output} : the left header, the period (one or two cells), 
+	 * the value and the right header.
+	 * @param rowId
+	 * 		The line to write at
+	 * @param line
+	 * 		The input line : the left header, the values and the right header
+	 * @param serieNb
+	 * 		The number of cells of the left header
+	 * @param firstRight
+	 * 		The slot of the first cell of the right header
+	 * @param period
+	 * 		The index of the period, the value being at the slot serieNb + period
+	 * @param periods
+	 * 		The periods of the header
+	 */
+	public void writeLine(int rowId, RowBuffer line, int serieNb, int firstRight, int period, PeriodCodec periods) {
 		
-		// Writing third
-		cell = row.createCell(first.length + 1);
-		cell.setCellValue(third);
+		output.createRow(rowId);
+		line.write(output, 0, serieNb, 0);
+		int column = serieNb + periods.write(output, period, serieNb);
+		line.write(output, serieNb + period, column);
+		line.write(output, firstRight, line.size(), column + 1);
 		
-		// Writing forth
-		cell = row.createCell(first.length + 2);
-		switch (forth.getCellType()) {
+	}
+	
+	/**
+	 * Writes an array of Cell in the current row of the {@link Tools#output}.
+	 * @param start
+	 * 		The column of the first cell
+	 * @param cells
+	 * 		The cells to write
+	 */
+	private void writeCells(int start, Cell[] cells) {
+		for (int i = 0; i < cells.length; i++) {
+			writeCell(start + i, cells[i]);
+		}
+	}
+	/**
+	 * Writes an array of String in the current row of the {@link Tools#output}, one cell per String.
+	 * @param start
+	 * 		The column of the first cell
+	 * @param cells
+	 * 		The texts to write
+	 */
+	private void writeCells(int start, String[] cells) {
+		for (int i = 0; i < cells.length; i++) {
+			output.setValue(start + i, cells[i]);
+		}
+	}
+	/**
+	 * Writes the value of a cell in the current row of the {@link Tools#output}.
+	 * Dates are written as dates with their format, numbers and texts as they are, anything else as a blank cell.
+	 * @param columnId
+	 * 		The column to write in
+	 * @param cell
+	 * 		The cell to copy
+	 */
+	private void writeCell(int columnId, Cell cell) {
+		switch (cell.getCellType()) {
 		case Cell.CELL_TYPE_NUMERIC:
-			if (DateUtil.isCellDateFormatted(forth)) {
-				cell.setCellValue(forth.getDateCellValue());
+			// If the format is a date, we have to copy it as a date
+			if (dateFormats.isDate(cell)) {
+				output.setValue(columnId, cell.getDateCellValue(), cell.getCellStyle());
 			}
 			else {
-				cell.setCellValue(forth.getNumericCellValue());
+				output.setValue(columnId, cell.getNumericCellValue());
 			}
 			break;
 		case Cell.CELL_TYPE_STRING:
-			cell.setCellValue(forth.getStringCellValue());
+			output.setValue(columnId, cell.getStringCellValue());
 			break;
+		default:
+			output.setBlank(columnId);
 		}
-		
-		// Writing last
-		for (int i = 0; i < last.length; i++) {
-			cell = row.createCell(first.length + 3 + i);
-			switch (last[i].getCellType()) {
-			case Cell.CELL_TYPE_NUMERIC:
-				if (DateUtil.isCellDateFormatted(last[i])) {
-					cell.setCellValue(last[i].getDateCellValue());
-				}
-				else {
-					cell.setCellValue(last[i].getNumericCellValue());
-				}
-				break;
-			case Cell.CELL_TYPE_STRING:
-				cell.setCellValue(last[i].getStringCellValue());
-				break;
-			}
-		}
-		
 	}
-	
 	/**
-	 * Writes a message in a cell in the output sheet.
+	 * Writes a message in a cell in the output.
+	 * The row should be the last one written or, if the output is a streamed sheet, still in its window.
 	 * @param rowId
 	 * 		The row of the cell to write in
 	 * @param columnId
@@ -457,9 +429,7 @@ public class Tools {
 	 */
 	public void writeCell(int rowId, int columnId, String msg) {
 		
-		XSSFRow row = output.getRow(rowId);
-		Cell cell = row.createCell(columnId);
-		cell.setCellValue(msg);
+		output.setValue(rowId, columnId, msg);
 		
 	}
 	/**
@@ -467,12 +437,12 @@ public class Tools {
 	 * as being at the first empty or null row encountered.
 	 * @param j
 	 * 		The index of the row to check.
-	 * @see Tools#isRowEmpty(XSSFRow)
+	 * @see Tools#isRowEmpty(Row)
 	 * @return
 	 * 		True if EOF reached, false otherwise.
 	 */
 	public boolean isItEOF(int j) {
-		HSSFRow row = input.getRow(j);
+		Row row = input.getRow(j);
 		if (row == null) {
 			return true;
 		}
@@ -491,7 +461,7 @@ public class Tools {
 	 * @return
 	 * 		true if empty, false otherwise
 	 */
-	public static boolean isRowEmpty(HSSFRow row) {
+	public static boolean isRowEmpty(Row row) {
 	    for (int c = row.getFirstCellNum(); c < row.getLastCellNum(); c++) {
 	        Cell cell = row.getCell(c);
 	        if (cell != null && cell.getCellType() != Cell.CELL_TYPE_BLANK)
@@ -511,7 +481,7 @@ public class Tools {
 	public boolean isColumnEmpty(int column, int firstRow) {
 		
 
-		HSSFRow row = input.getRow(firstRow);
+		Row row = input.getRow(firstRow);
 		
 		while (row != null) {
 			Cell c = row.getCell(column, Row.RETURN_BLANK_AS_NULL);
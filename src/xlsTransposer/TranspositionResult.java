@@ -0,0 +1,131 @@
+package xlsTransposer;
+
+/**
+ * What came out of the transposition of one file : the number of lines read and written,
+ * the time it took, or the exception that cancelled it.
+ * @author hamme
+ *
+ */
+public class TranspositionResult {
+
+	/**
+	 * Constructor
+	 * @param inputName
+	 * 		The name of the transposed file
+	 * @param outputName
+	 * 		The name of the file written
+	 */
+	public TranspositionResult(String inputName, String outputName) {
+		this.inputName = inputName;
+		this.outputName = outputName;
+	}
+
+	/**
+	 * The name of the transposed file
+	 */
+	private String inputName;
+
+	public String getInputName() {
+		return inputName;
+	}
+
+	/**
+	 * The name of the file written
+	 */
+	private String outputName;
+
+	public String getOutputName() {
+		return outputName;
+	}
+
+	public void setOutputName(String outputName) {
+		this.outputName = outputName;
+	}
+
+	/**
+	 * Number of lines of the input transposed (all sheets)
+	 */
+	private long readLinesNb;
+
+	public long getReadLinesNb() {
+		return readLinesNb;
+	}
+
+	/**
+	 * Number of lines written in the output (all sheets, header excluded)
+	 */
+	private long writtenLinesNb;
+
+	public long getWrittenLinesNb() {
+		return writtenLinesNb;
+	}
+
+	/**
+	 * The time the transposition took, in milliseconds
+	 */
+	private long duration;
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * The exception that cancelled the transposition, null if it succeeded
+	 */
+	private Exception error;
+
+	public Exception getError() {
+		return error;
+	}
+
+	public void setError(Exception error) {
+		this.error = error;
+	}
+
+	/**
+	 * @return
+	 * 		true if the transposition succeeded
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * Adds the lines read and written by one sheet couple.
+	 * @param duo
+	 * 		A sheet couple whose body has been written
+	 */
+	public void add(SheetCouple duo) {
+		add(duo.getReadLinesNb(), duo.getWrittenLinesNb());
+	}
+
+	/**
+	 * Adds lines read and written.
+	 * @param readLinesNb
+	 * 		The number of lines read
+	 * @param writtenLinesNb
+	 * 		The number of lines written
+	 */
+	public void add(long readLinesNb, long writtenLinesNb) {
+		this.readLinesNb += readLinesNb;
+		this.writtenLinesNb += writtenLinesNb;
+	}
+
+	/**
+	 * True if the file wasn't transposed again, its outputs being up to date (see {@link ResultCache})
+	 */
+	private boolean cached;
+
+	public boolean isCached() {
+		return cached;
+	}
+
+	public void setCached(boolean cached) {
+		this.cached = cached;
+	}
+
+}
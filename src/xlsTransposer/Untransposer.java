@@ -0,0 +1,924 @@
+package xlsTransposer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Goes back from a transposed sheet (one line per value, see {@link OutputFile#periodValues}) to the wide layout
+ * the transposition reads : one line per serie, one column per period (<code>-untranspose</code>).
+ * The lines are grouped by their left and right header (the key of the serie), their values scattered
+ * in the period columns, and the source, comment and statut columns put back in a comment of the value.
+ * The groups are kept in a hash table in the order they first appear. When there are more keys than
+ * the budget ({@link Parameters#getGroupBudget()}), the groups are sorted by key and spilled to a temporary file,
+ * and the files are merged at the end : the wide lines are then written in the order of the keys.
+ * Only the values of the groups are kept, as numbers, texts and dates, never the cells read.
+ * A value given twice for the same serie and period keeps the last one.
+ * @author hamme
+ *
+ */
+public class Untransposer {
+
+	/**
+	 * Constructor
+	 * @param reader
+	 * 		The reader of the transposed sheet
+	 * @param output
+	 * 		The sheet the wide layout is written in, streamed
+	 * @param styles
+	 * 		The styles of the workbook of the output
+	 * @param linesToCopy
+	 * 		The number of lines at the top of the sheet, copied before the header
+	 * @param groupBudget
+	 * 		The number of groups kept in memory before they are spilled
+	 */
+	public Untransposer(SheetReader reader, Sheet output, CellStylePool styles, int linesToCopy, int groupBudget) {
+		this.reader = reader;
+		this.output = output;
+		this.styles = styles;
+		this.linesToCopy = linesToCopy;
+		this.groupBudget = groupBudget;
+	}
+
+	/**
+	 * A date read in a cell, with the format of the cell.
+	 */
+	private static final class DateValue implements Comparable<DateValue> {
+		final Date date;
+		final String format;
+
+		DateValue(Date date, String format) {
+			this.date = date;
+			this.format = format;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof DateValue && date.equals(((DateValue) o).date) && format.equals(((DateValue) o).format);
+		}
+
+		@Override
+		public int hashCode() {
+			return date.hashCode() * 31 + format.hashCode();
+		}
+
+		@Override
+		public int compareTo(DateValue o) {
+			int c = date.compareTo(o.date);
+			return c != 0 ? c : format.compareTo(o.format);
+		}
+	}
+
+	/**
+	 * The left and right header of a serie, each value being a Double, a String, a {@link DateValue} or null.
+	 */
+	private static final class Key implements Comparable<Key> {
+		final Object[] values;
+		final int hash;
+
+		Key(Object[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(values, ((Key) o).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public int compareTo(Key o) {
+			for (int i = 0; i < values.length; i++) {
+				int c = compareValues(values[i], o.values[i]);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * The values of a serie, by period id (see {@link Untransposer#periods}), and their comments.
+	 */
+	private static final class Group {
+		Object[] values = new Object[0];
+		String[] comments;
+
+		/**
+		 * Sets the value of a period.
+		 * @return
+		 * 		true if the period already had a value
+		 */
+		boolean set(int periodId, Object value, String comment) {
+			if (periodId >= values.length) {
+				values = Arrays.copyOf(values, Math.max(periodId + 1, values.length * 2));
+			}
+			boolean duplicate = values[periodId] != null;
+			values[periodId] = value;
+			// Most values have no comment
+			if (comment != null) {
+				if (comments == null || comments.length < values.length) {
+					comments = comments == null ? new String[values.length] : Arrays.copyOf(comments, values.length);
+				}
+				comments[periodId] = comment;
+			}
+			else if (comments != null && periodId < comments.length) {
+				comments[periodId] = null;
+			}
+			return duplicate;
+		}
+
+		/**
+		 * Takes the values of a later group of the same serie.
+		 */
+		void merge(Group later) {
+			for (int p = 0; p < later.values.length; p++) {
+				if (later.values[p] != null) {
+					set(p, later.values[p], later.comments != null && p < later.comments.length ? later.comments[p] : null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The reader of the transposed sheet
+	 */
+	private SheetReader reader;
+	/**
+	 * The sheet the wide layout is written in
+	 */
+	private Sheet output;
+	/**
+	 * The styles of the dates of the output
+	 */
+	private CellStylePool styles;
+	/**
+	 * The number of lines copied before the header
+	 */
+	private int linesToCopy;
+	/**
+	 * The number of groups kept in memory before they are spilled
+	 */
+	private int groupBudget;
+
+	/**
+	 * The kind of the periods, given by the period columns of the header (see {@link PeriodCodec})
+	 */
+	private int kind;
+	/**
+	 * The column of the first period column, the number of columns of the left header
+	 */
+	private int periodColumnId;
+	/**
+	 * The column of the value
+	 */
+	private int valueColumnId;
+	/**
+	 * The number of columns of the right header
+	 */
+	private int rightNb;
+	/**
+	 * The column of the source, -1 if there are no comment columns
+	 */
+	private int commentColumnId = -1;
+	/**
+	 * The header of the sheet, up to the first blank cell
+	 */
+	private RowBuffer header;
+	/**
+	 * The periods met, by id : an Integer ordinal, or the value of the period column as it is
+	 */
+	private Map<Object, Integer> periods = new LinkedHashMap<Object, Integer>();
+	/**
+	 * The groups being gathered, in the order they first appear
+	 */
+	private Map<Key, Group> groups = new LinkedHashMap<Key, Group>();
+	/**
+	 * The sorted runs of groups spilled
+	 */
+	private List<File> runs = new ArrayList<File>();
+
+	private int readLinesNb;
+	private int writtenLinesNb;
+	/**
+	 * Number of lines without period, skipped
+	 */
+	private int skippedLinesNb;
+	/**
+	 * Number of values given again for the same serie and period
+	 */
+	private int duplicatesNb;
+
+	public int getReadLinesNb() {
+		return readLinesNb;
+	}
+
+	public int getWrittenLinesNb() {
+		return writtenLinesNb;
+	}
+
+	public int getSkippedLinesNb() {
+		return skippedLinesNb;
+	}
+
+	public int getDuplicatesNb() {
+		return duplicatesNb;
+	}
+
+	public int getRunsNb() {
+		return runs.size();
+	}
+
+	/**
+	 * Untransposes the sheet : copies the lines before the header, reads the header and the lines,
+	 * then writes the header and the wide lines.
+	 * @throws IOException
+	 * 		If the header has no period columns (the sheet isn't transposed), or a spilled run can't be written or read
+	 */
+	public void untranspose() throws IOException {
+
+		try {
+			for (int i = 0; i < linesToCopy; i++) {
+				copyLine(i);
+			}
+			readHeader();
+			RowBuffer line = new RowBuffer(header.size());
+			// Up to the first empty line, like the transposition
+			Row row;
+			for (int j = linesToCopy + 1; (row = reader.getRow(j)) != null && !Tools.isRowEmpty(row); j++) {
+				line.read(row, reader.getDateFormats());
+				add(line);
+			}
+			writeHeader();
+			if (runs.isEmpty()) {
+				for (Map.Entry<Key, Group> e : groups.entrySet()) {
+					writeLine(e.getKey(), e.getValue());
+				}
+			}
+			else {
+				spill();
+				merge();
+			}
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+	}
+
+	/**
+	 * Copies a line before the header as it is.
+	 * @param rowId
+	 * 		The row of the line
+	 */
+	private void copyLine(int rowId) {
+		Row row = reader.getRow(rowId);
+		if (row == null || row.getLastCellNum() <= 0) {
+			return;
+		}
+		RowBuffer line = new RowBuffer(row.getLastCellNum());
+		line.read(row, reader.getDateFormats());
+		Row oRow = output.createRow(rowId);
+		for (int i = 0; i < line.size(); i++) {
+			setCell(oRow, i, valueOf(line, i));
+		}
+	}
+
+	/**
+	 * Reads the header and finds its period columns, the columns of the value and of the comments.
+	 * @throws IOException
+	 * 		If the header has no period columns : the sheet isn't transposed
+	 */
+	private void readHeader() throws IOException {
+
+		Row row = reader.getRow(linesToCopy);
+		int width = 0;
+		while (row != null && width < row.getLastCellNum() && row.getCell(width, Row.RETURN_BLANK_AS_NULL) != null) {
+			width++;
+		}
+		header = new RowBuffer(width);
+		header.read(row, reader.getDateFormats());
+
+		// The period columns, the longest first as "year" is followed by several numbers
+		periodColumnId = -1;
+		for (int i = 0; i < width && periodColumnId == -1; i++) {
+			for (int k = OutputFile.periodValues.length - 1; k >= 0; k--) {
+				if (matches(i, OutputFile.periodValues[k])) {
+					periodColumnId = i;
+					kind = k + PeriodCodec.YEARLY;
+					valueColumnId = i + OutputFile.periodValues[k].length - 1;
+					break;
+				}
+			}
+		}
+		if (periodColumnId == -1) {
+			throw new IOException("No period columns in the header of " + reader.getSheetName() + " : it isn't a transposed sheet");
+		}
+		int end = width;
+		String[] last = OutputFile.commentColumns;
+		if (end - last.length > valueColumnId && matches(end - last.length, last)) {
+			commentColumnId = end - last.length;
+			end = commentColumnId;
+		}
+		rightNb = end - valueColumnId - 1;
+	}
+
+	/**
+	 * @param columnId
+	 * 		The first column
+	 * @param texts
+	 * 		Texts
+	 * @return
+	 * 		true if the header has these texts from the column on
+	 */
+	private boolean matches(int columnId, String[] texts) {
+		if (columnId + texts.length > header.size()) {
+			return false;
+		}
+		for (int i = 0; i < texts.length; i++) {
+			if (header.getType(columnId + i) != RowBuffer.TEXT || !header.getText(columnId + i).trim().equalsIgnoreCase(texts[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a line to its group, spilling the groups if there are too many of them.
+	 * @param line
+	 * 		The line
+	 * @throws IOException
+	 * 		If the groups can't be spilled
+	 */
+	private void add(RowBuffer line) throws IOException {
+
+		readLinesNb++;
+		Object period = periodOf(line);
+		if (period == null) {
+			skippedLinesNb++;
+			return;
+		}
+		Integer periodId = periods.get(period);
+		if (periodId == null) {
+			periodId = periods.size();
+			periods.put(period, periodId);
+		}
+
+		Object[] values = new Object[periodColumnId + rightNb];
+		for (int i = 0; i < periodColumnId; i++) {
+			values[i] = valueOf(line, i);
+		}
+		for (int i = 0; i < rightNb; i++) {
+			values[periodColumnId + i] = valueOf(line, valueColumnId + 1 + i);
+		}
+		Key key = new Key(values);
+		Group group = groups.get(key);
+		if (group == null) {
+			group = new Group();
+			groups.put(key, group);
+		}
+		if (group.set(periodId, valueOf(line, valueColumnId), commentOf(line))) {
+			duplicatesNb++;
+		}
+
+		if (groups.size() > groupBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * Reads the period of a line.
+	 * @param line
+	 * 		The line
+	 * @return
+	 * 		Its ordinal, or the value of the period column of a period that isn't a year, null if it has none
+	 */
+	private Object periodOf(RowBuffer line) {
+		if (kind == PeriodCodec.YEARLY) {
+			Object value = valueOf(line, periodColumnId);
+			if (value instanceof Double) {
+				double year = (Double) value;
+				if (year == Math.rint(year) && year >= 0 && year <= 9999) {
+					return (int) year;
+				}
+			}
+			return value;
+		}
+		if (line.getType(periodColumnId) != RowBuffer.NUMBER || line.getType(periodColumnId + 1) != RowBuffer.NUMBER) {
+			return null;
+		}
+		return PeriodCodec.toOrdinal(kind, (int) line.getNumber(periodColumnId), (int) line.getNumber(periodColumnId + 1));
+	}
+
+	/**
+	 * Puts the source, the comment and the statut of a line back in one comment, after their key-words.
+	 * The text of a key-word runs up to the next one : the texts ending with a blank (followed by
+	 * another key-word in the comment read) come first, so that they are read back as they are.
+	 * @param line
+	 * 		The line
+	 * @return
+	 * 		The comment, null if there is none
+	 */
+	private String commentOf(RowBuffer line) {
+		if (commentColumnId == -1) {
+			return null;
+		}
+		StringBuilder first = null;
+		StringBuilder last = null;
+		String[] keyWords = SheetCouple.keyWords;
+		for (int k = 0; k < keyWords.length; k++) {
+			if (line.getType(commentColumnId + k) == RowBuffer.TEXT) {
+				String text = line.getText(commentColumnId + k);
+				if (!text.isEmpty() && Character.isWhitespace(text.charAt(text.length() - 1))) {
+					first = (first == null ? new StringBuilder() : first).append(keyWords[k]).append(text);
+				}
+				else {
+					// Only the last one can run up to the end
+					last = last == null ? new StringBuilder() : last.append(' ');
+					last.append(keyWords[k]).append(text);
+				}
+			}
+		}
+		if (first == null) {
+			return last == null ? null : last.toString();
+		}
+		return last == null ? first.toString() : first.append(last).toString();
+	}
+
+	/**
+	 * @param line
+	 * 		A line
+	 * @param slot
+	 * 		A slot of the line
+	 * @return
+	 * 		The value of the slot : a Double, a String, a {@link DateValue}, or null if it is blank
+	 */
+	private static Object valueOf(RowBuffer line, int slot) {
+		switch (line.getType(slot)) {
+		case RowBuffer.NUMBER:
+			return line.getNumber(slot);
+		case RowBuffer.TEXT:
+			return line.getText(slot);
+		case RowBuffer.DATE:
+			return new DateValue(line.getDate(slot), line.getFormat(slot).getDataFormatString());
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Compares two values : blank, then the numbers, the dates and the texts.
+	 * @param a
+	 * 		A value
+	 * @param b
+	 * 		Another value
+	 * @return
+	 * 		The order of the values
+	 */
+	private static int compareValues(Object a, Object b) {
+		int c = Integer.compare(rankOf(a), rankOf(b));
+		if (c != 0 || a == null) {
+			return c;
+		}
+		if (a instanceof Double) {
+			return Double.compare((Double) a, (Double) b);
+		}
+		if (a instanceof DateValue) {
+			return ((DateValue) a).compareTo((DateValue) b);
+		}
+		return ((String) a).compareTo((String) b);
+	}
+
+	/**
+	 * @param value
+	 * 		A value
+	 * @return
+	 * 		Its rank in {@link Untransposer#compareValues(Object, Object)}
+	 */
+	private static int rankOf(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Double) {
+			return 1;
+		}
+		return value instanceof DateValue ? 2 : 3;
+	}
+
+	/**
+	 * Writes the groups in memory in a temporary file, sorted by key, and forgets them.
+	 * @throws IOException
+	 * 		If the file can't be written
+	 */
+	private void spill() throws IOException {
+
+		List<Key> keys = new ArrayList<Key>(groups.keySet());
+		Collections.sort(keys);
+		File run = File.createTempFile("untranspose", ".run");
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try {
+			for (Key key : keys) {
+				Group group = groups.get(key);
+				out.writeBoolean(true);
+				for (Object value : key.values) {
+					writeValue(out, value);
+				}
+				int count = 0;
+				for (Object value : group.values) {
+					if (value != null) {
+						count++;
+					}
+				}
+				out.writeInt(count);
+				for (int p = 0; p < group.values.length; p++) {
+					if (group.values[p] != null) {
+						out.writeInt(p);
+						writeValue(out, group.values[p]);
+						writeValue(out, group.comments != null && p < group.comments.length ? group.comments[p] : null);
+					}
+				}
+			}
+			out.writeBoolean(false);
+		} finally {
+			out.close();
+		}
+		groups.clear();
+	}
+
+	/**
+	 * A spilled run being merged : its current key and group.
+	 */
+	private final class Run {
+		final DataInputStream in;
+		final int order;
+		Key key;
+		Group group;
+
+		Run(File file, int order) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			this.order = order;
+		}
+
+		/**
+		 * Reads the next group.
+		 * @return
+		 * 		false at the end of the run
+		 */
+		boolean next() throws IOException {
+			if (!in.readBoolean()) {
+				key = null;
+				group = null;
+				return false;
+			}
+			Object[] values = new Object[periodColumnId + rightNb];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readValue(in);
+			}
+			key = new Key(values);
+			group = new Group();
+			int count = in.readInt();
+			for (int n = 0; n < count; n++) {
+				int p = in.readInt();
+				group.set(p, readValue(in), (String) readValue(in));
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Merges the spilled runs, writing the groups in the order of their keys. The groups of the same
+	 * serie from several runs are merged, the later runs giving the last values.
+	 * @throws IOException
+	 * 		If a run can't be read
+	 */
+	private void merge() throws IOException {
+
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+			@Override
+			public int compare(Run a, Run b) {
+				int c = a.key.compareTo(b.key);
+				return c != 0 ? c : Integer.compare(a.order, b.order);
+			}
+		});
+		List<Run> open = new ArrayList<Run>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				Run run = new Run(runs.get(i), i);
+				open.add(run);
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+			while (!queue.isEmpty()) {
+				Run first = queue.poll();
+				Key key = first.key;
+				Group group = first.group;
+				if (first.next()) {
+					queue.add(first);
+				}
+				while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+					Run run = queue.poll();
+					group.merge(run.group);
+					if (run.next()) {
+						queue.add(run);
+					}
+				}
+				writeLine(key, group);
+			}
+		} finally {
+			for (Run run : open) {
+				run.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes a value in a run.
+	 * @param out
+	 * 		The run
+	 * @param value
+	 * 		The value, as read by {@link Untransposer#valueOf(RowBuffer, int)}
+	 * @throws IOException
+	 * 		If it can't be written
+	 */
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(0);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(1);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof DateValue) {
+			out.writeByte(2);
+			out.writeLong(((DateValue) value).date.getTime());
+			writeText(out, ((DateValue) value).format);
+		}
+		else {
+			out.writeByte(3);
+			writeText(out, (String) value);
+		}
+	}
+
+	/**
+	 * Reads a value written by {@link Untransposer#writeValue(DataOutputStream, Object)}.
+	 * @param in
+	 * 		The run
+	 * @return
+	 * 		The value
+	 * @throws IOException
+	 * 		If it can't be read
+	 */
+	private static Object readValue(DataInputStream in) throws IOException {
+		switch (in.readByte()) {
+		case 0:
+			return null;
+		case 1:
+			return in.readDouble();
+		case 2:
+			long time = in.readLong();
+			return new DateValue(new Date(time), readText(in));
+		case 3:
+			return readText(in);
+		default:
+			throw new EOFException("Corrupted run");
+		}
+	}
+
+	/**
+	 * Writes a text of any length (writeUTF is limited to 64 KB).
+	 */
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readText(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The period ids in the order of the columns : by ordinal if all the periods have one, else as they first appeared.
+	 */
+	private int[] columns;
+
+	/**
+	 * Writes the header : the left header, the periods and the right header.
+	 */
+	private void writeHeader() {
+
+		List<Object> sorted = new ArrayList<Object>(periods.keySet());
+		boolean ordinals = true;
+		for (Object period : sorted) {
+			ordinals &= period instanceof Integer;
+		}
+		if (ordinals) {
+			Collections.sort(sorted, new Comparator<Object>() {
+				@Override
+				public int compare(Object a, Object b) {
+					return ((Integer) a).compareTo((Integer) b);
+				}
+			});
+		}
+		columns = new int[sorted.size()];
+		Row row = output.createRow(linesToCopy);
+		for (int i = 0; i < periodColumnId; i++) {
+			setCell(row, i, valueOf(header, i));
+		}
+		for (int p = 0; p < columns.length; p++) {
+			Object period = sorted.get(p);
+			columns[p] = periods.get(period);
+			if (period instanceof Integer) {
+				// A year is written as a number
+				if (kind == PeriodCodec.YEARLY) {
+					setCell(row, periodColumnId + p, ((Integer) period).doubleValue());
+				}
+				else {
+					setCell(row, periodColumnId + p, PeriodCodec.toLabel(kind, (Integer) period));
+				}
+			}
+			else {
+				setCell(row, periodColumnId + p, period);
+			}
+		}
+		for (int i = 0; i < rightNb; i++) {
+			setCell(row, periodColumnId + columns.length + i, valueOf(header, valueColumnId + 1 + i));
+		}
+	}
+
+	/**
+	 * The drawing of the comments of the output, created with the first comment
+	 */
+	private Drawing drawing;
+
+	/**
+	 * Writes the wide line of a serie.
+	 * @param key
+	 * 		The key of the serie
+	 * @param group
+	 * 		Its values
+	 */
+	private void writeLine(Key key, Group group) {
+
+		Row row = output.createRow(linesToCopy + 1 + writtenLinesNb);
+		for (int i = 0; i < periodColumnId; i++) {
+			setCell(row, i, key.values[i]);
+		}
+		for (int p = 0; p < columns.length; p++) {
+			int id = columns[p];
+			if (id < group.values.length && group.values[id] != null) {
+				Cell cell = setCell(row, periodColumnId + p, group.values[id]);
+				if (group.comments != null && id < group.comments.length && group.comments[id] != null) {
+					setComment(cell, group.comments[id]);
+				}
+			}
+		}
+		for (int i = 0; i < rightNb; i++) {
+			setCell(row, periodColumnId + columns.length + i, key.values[periodColumnId + i]);
+		}
+		writtenLinesNb++;
+	}
+
+	/**
+	 * Creates a cell with a value.
+	 * @param row
+	 * 		The row
+	 * @param columnId
+	 * 		The column of the cell
+	 * @param value
+	 * 		A Double, a String, a {@link DateValue}, or null for no cell
+	 * @return
+	 * 		The cell, null if it wasn't created
+	 */
+	private Cell setCell(Row row, int columnId, Object value) {
+		if (value == null) {
+			return null;
+		}
+		Cell cell = row.createCell(columnId);
+		if (value instanceof Double) {
+			cell.setCellValue((Double) value);
+		}
+		else if (value instanceof DateValue) {
+			cell.setCellValue(((DateValue) value).date);
+			cell.setCellStyle(styles.getStyle(((DateValue) value).format));
+		}
+		else {
+			cell.setCellValue((String) value);
+		}
+		return cell;
+	}
+
+	/**
+	 * Puts a comment on a cell.
+	 * @param cell
+	 * 		The cell
+	 * @param text
+	 * 		The text of the comment
+	 */
+	private void setComment(Cell cell, String text) {
+		CreationHelper helper = output.getWorkbook().getCreationHelper();
+		if (drawing == null) {
+			drawing = output.createDrawingPatriarch();
+		}
+		ClientAnchor anchor = helper.createClientAnchor();
+		anchor.setCol1(cell.getColumnIndex());
+		anchor.setCol2(cell.getColumnIndex() + 2);
+		anchor.setRow1(cell.getRowIndex());
+		anchor.setRow2(cell.getRowIndex() + 2);
+		Comment comment = drawing.createCellComment(anchor);
+		comment.setString(helper.createRichTextString(text));
+		cell.setCellComment(comment);
+	}
+
+	/**
+	 * Untransposes the sheet of number {@link Parameters#getSheetNb()} of a transposed file and its "suppression" sheet
+	 * if there is one, or the sheets of {@link Parameters#getSheetSelection()}, one after the other.
+	 * The file is read as a stream, and the result written in the file named by {@link MainXLS#getUntransposedName(String)}.
+	 * @param inputName
+	 * 		The name of the transposed file, a .xlsx or a .xls workbook
+	 * @param params
+	 * 		The parameters
+	 * @return
+	 * 		The number of lines read and written and the time it took
+	 * @throws IOException
+	 * 		If the input can't be read or the output written
+	 */
+	public static TranspositionResult untranspose(String inputName, Parameters params) throws IOException {
+
+		long start = System.currentTimeMillis();
+		String outputName = MainXLS.getUntransposedName(inputName);
+		TranspositionResult result = new TranspositionResult(inputName, outputName);
+
+		File inputFile = new File(inputName);
+		boolean ooxml = MainXLS.isOOXML(inputFile);
+		List<String> sheetNames = ooxml ? XSSFEventReader.readSheetNames(inputFile) : HSSFEventReader.readSheetNames(inputFile);
+		List<Integer> sheets = MainXLS.selectSheets(sheetNames, params);
+
+		SXSSFWorkbook oWorkbook = new SXSSFWorkbook(SXSSFWorkbook.DEFAULT_WINDOW_SIZE);
+		try {
+			CellStylePool styles = new CellStylePool(oWorkbook);
+			for (int sheetNb : sheets) {
+				SheetReader reader = ooxml ? new XSSFEventReader(inputFile, sheetNb) : new HSSFEventReader(inputFile, sheetNb);
+				try {
+					Untransposer untransposer = new Untransposer(reader, oWorkbook.createSheet(sheetNames.get(sheetNb)), styles,
+							params.getLinesToCopy(), params.getGroupBudget());
+					untransposer.untranspose();
+					result.add(untransposer.getReadLinesNb(), untransposer.getWrittenLinesNb());
+					System.out.println(sheetNames.get(sheetNb) + " : " + untransposer.getReadLinesNb() + " lines grouped in "
+							+ untransposer.getWrittenLinesNb() + " series, " + untransposer.getSkippedLinesNb() + " lines without period, "
+							+ untransposer.getDuplicatesNb() + " values given twice, " + untransposer.getRunsNb() + " runs spilled.");
+				} finally {
+					reader.close();
+				}
+			}
+			FileOutputStream out = new FileOutputStream(outputName);
+			try {
+				oWorkbook.write(out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			oWorkbook.dispose();
+			oWorkbook.close();
+		}
+
+		result.setDuration(System.currentTimeMillis() - start);
+		return result;
+	}
+
+}
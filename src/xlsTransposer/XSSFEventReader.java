@@ -0,0 +1,468 @@
+package xlsTransposer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFCell;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads one sheet of a .xlsx file as a stream, like {@link HSSFEventReader} for a .xls file,
+ * instead of loading the whole XSSFWorkbook : the sheet part is read element by element,
+ * the strings come from a read-only shared strings table, and no DOM of the sheet is built.
+ * The XML of the sheet is pulled only when a row is asked for : the decoded rows are put in a small
+ * window sheet and dropped once the transposition went past them, so only a few rows are in memory.
+ * The comments are read at once from their own part, the last row from the dimension of the sheet.
+ * Formula cells are read as their cached result.
+ * @author hamme
+ *
+ */
+public class XSSFEventReader implements SheetReader {
+
+	/**
+	 * Constructor, reads the comments of the sheet and opens the stream of its cells.
+	 * @param file
+	 * 		The .xlsx file to read
+	 * @param sheetNb
+	 * 		The index (starting at 0) of the sheet to read
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public XSSFEventReader(File file, int sheetNb) throws IOException {
+		try {
+			this.pkg = OPCPackage.open(file, PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException("Can't open " + file.getName() + " : " + e.getMessage(), e);
+		}
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			this.strings = new ReadOnlySharedStringsTable(pkg);
+			this.stylesTable = reader.getStylesTable();
+
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+			for (int i = 0; sheets.hasNext(); i++) {
+				InputStream sheetData = sheets.next();
+				if (i == sheetNb) {
+					this.sheetName = sheets.getSheetName();
+					this.data = sheetData;
+					CommentsTable commentsTable = sheets.getSheetComments();
+					if (commentsTable != null) {
+						for (Map.Entry<CellAddress, XSSFComment> e : commentsTable.getCellComments().entrySet()) {
+							comments.put(e.getKey(), e.getValue().getString().getString());
+						}
+					}
+					break;
+				}
+				sheetData.close();
+			}
+			if (data == null) {
+				throw new IOException("No sheet number " + sheetNb + " in " + file.getName());
+			}
+
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			this.xml = factory.createXMLStreamReader(data);
+			readDimension();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (OpenXML4JException | SAXException | XMLStreamException e) {
+			close();
+			throw new IOException("Can't read " + file.getName() + " : " + e.getMessage(), e);
+		}
+
+		// No rows are flushed : they are removed once read
+		this.window = new SXSSFWorkbook(-1);
+		this.sheet = window.createSheet(sheetName);
+	}
+
+	/**
+	 * Number of rows kept behind the last row asked for.
+	 */
+	private static final int BACKLOG = 2;
+
+	/**
+	 * The package of the .xlsx file, opened read only.
+	 */
+	private OPCPackage pkg;
+	/**
+	 * The shared strings of the workbook.
+	 */
+	private ReadOnlySharedStringsTable strings;
+	/**
+	 * The styles of the workbook, to know which numeric cells are dates.
+	 */
+	private StylesTable stylesTable;
+	/**
+	 * The part of the sheet.
+	 */
+	private InputStream data;
+	/**
+	 * The XML of the sheet, pulled as the rows are asked for.
+	 */
+	private XMLStreamReader xml;
+	/**
+	 * The name of the sheet.
+	 */
+	private String sheetName;
+	/**
+	 * True once the end of the cells of the sheet has been read.
+	 */
+	private boolean done = false;
+	/**
+	 * The index of the last row read to its end.
+	 */
+	private int lastRow = -1;
+	/**
+	 * The last row of the sheet, from its dimension.
+	 */
+	private int lastRowNum = -1;
+	/**
+	 * The first row still in the {@link XSSFEventReader#sheet}.
+	 */
+	private int firstKeptRow = 0;
+
+	/**
+	 * The comment texts of the sheet by cell.
+	 */
+	private Map<CellAddress, String> comments = new HashMap<CellAddress, String>();
+
+	/**
+	 * The workbook holding the {@link XSSFEventReader#sheet}.
+	 */
+	private SXSSFWorkbook window;
+	/**
+	 * The date formats of the {@link XSSFEventReader#window}, its own format indexes.
+	 */
+	private DateFormatCache dateFormats = new DateFormatCache();
+	/**
+	 * The sheet holding the rows read but not yet dropped.
+	 */
+	private SXSSFSheet sheet;
+	/**
+	 * The styles of the window workbook, by style index of the file.
+	 */
+	private Map<Integer, CellStyle> styles = new HashMap<Integer, CellStyle>();
+
+	/**
+	 * The row being read.
+	 */
+	private SXSSFRow row;
+	/**
+	 * The column of the last cell read in the row.
+	 */
+	private int column;
+
+	/**
+	 * Reads the names of the sheets of a .xlsx file, only reading the workbook part.
+	 * @param file
+	 * 		The .xlsx file
+	 * @return
+	 * 		The names of the sheets, in the order of the file
+	 * @throws IOException
+	 * 		If the file can't be read
+	 */
+	public static List<String> readSheetNames(File file) throws IOException {
+
+		List<String> names = new ArrayList<String>();
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(file, PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException("Can't open " + file.getName() + " : " + e.getMessage(), e);
+		}
+		try {
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+			while (sheets.hasNext()) {
+				sheets.next().close();
+				names.add(sheets.getSheetName());
+			}
+		} catch (OpenXML4JException e) {
+			throw new IOException("Can't read " + file.getName() + " : " + e.getMessage(), e);
+		} finally {
+			pkg.revert();
+		}
+		return names;
+	}
+
+	/**
+	 * Reads the beginning of the sheet up to its cells, keeping the last row of its dimension.
+	 * @throws XMLStreamException
+	 * 		If the XML can't be read
+	 */
+	private void readDimension() throws XMLStreamException {
+		while (xml.hasNext()) {
+			if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if (name.equals("dimension")) {
+					String ref = xml.getAttributeValue(null, "ref");
+					if (ref != null) {
+						lastRowNum = new CellReference(ref.substring(ref.indexOf(':') + 1)).getRow();
+					}
+				}
+				else if (name.equals("sheetData")) {
+					return;
+				}
+			}
+		}
+		done = true;
+	}
+
+	/**
+	 * Returns a row, reading the file up to the end of it. The rows more than
+	 * {@link XSSFEventReader#BACKLOG} rows before it are dropped.
+	 */
+	@Override
+	public Row getRow(int rowId) {
+
+		// Reading until the row is complete or the end of the sheet
+		try {
+			while (!done && lastRow < rowId) {
+				readNext();
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Can't read the sheet " + sheetName + " : " + e.getMessage(), e);
+		}
+		// Dropping the rows we went past
+		for (; firstKeptRow < rowId - BACKLOG; firstKeptRow++) {
+			Row old = sheet.getRow(firstKeptRow);
+			if (old != null) {
+				sheet.removeRow(old);
+			}
+		}
+		return sheet.getRow(rowId);
+	}
+
+	/**
+	 * Reads the next element of the cells : a row, the end of a row or a cell.
+	 * @throws XMLStreamException
+	 * 		If the XML can't be read
+	 */
+	private void readNext() throws XMLStreamException {
+
+		if (!xml.hasNext()) {
+			done = true;
+			return;
+		}
+		switch (xml.next()) {
+		case XMLStreamConstants.START_ELEMENT:
+			String name = xml.getLocalName();
+			if (name.equals("row")) {
+				// The index of the row is optional
+				String r = xml.getAttributeValue(null, "r");
+				int rowId = r == null ? lastRow + 1 : Integer.parseInt(r) - 1;
+				row = sheet.createRow(rowId);
+				column = -1;
+			}
+			else if (name.equals("c")) {
+				readCell();
+			}
+			break;
+		case XMLStreamConstants.END_ELEMENT:
+			if (xml.getLocalName().equals("row")) {
+				lastRow = row.getRowNum();
+				row = null;
+			}
+			else if (xml.getLocalName().equals("sheetData")) {
+				done = true;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Reads a cell, from its start to its end, and writes it in the current row.
+	 * @throws XMLStreamException
+	 * 		If the XML can't be read
+	 */
+	private void readCell() throws XMLStreamException {
+
+		// The reference of the cell is optional too
+		String ref = xml.getAttributeValue(null, "r");
+		column = ref == null ? column + 1 : new CellReference(ref).getCol();
+		String type = xml.getAttributeValue(null, "t");
+		String style = xml.getAttributeValue(null, "s");
+
+		// The value, or the text of an inline string (made of runs)
+		String value = null;
+		StringBuilder inline = null;
+		boolean phonetic = false;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if (name.equals("v")) {
+					value = xml.getElementText();
+				}
+				else if (name.equals("is")) {
+					inline = new StringBuilder();
+				}
+				else if (name.equals("rPh")) {
+					phonetic = true;
+				}
+				else if (name.equals("t") && inline != null && !phonetic) {
+					inline.append(xml.getElementText());
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				String name = xml.getLocalName();
+				if (name.equals("rPh")) {
+					phonetic = false;
+				}
+				else if (name.equals("c")) {
+					break;
+				}
+			}
+		}
+
+		if (type == null) {
+			type = "n";
+		}
+		if (type.equals("inlineStr")) {
+			if (inline != null) {
+				row.createCell(column).setCellValue(inline.toString());
+			}
+			return;
+		}
+		if (value == null) {
+			// Nothing to write, the cell stays blank
+			return;
+		}
+		SXSSFCell cell = row.createCell(column);
+		switch (type) {
+		case "s":
+			cell.setCellValue(strings.getEntryAt(Integer.parseInt(value)));
+			break;
+		case "str":
+		case "d":
+			cell.setCellValue(value);
+			break;
+		case "b":
+			cell.setCellValue(value.equals("1"));
+			break;
+		case "e":
+			cell.setCellType(Cell.CELL_TYPE_ERROR);
+			break;
+		default:
+			cell.setCellValue(Double.parseDouble(value));
+			if (style != null) {
+				cell.setCellStyle(getStyle(Integer.parseInt(style)));
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Returns the style of the window workbook having the same format as a style of the file,
+	 * creating it if needed. Needed to recognize the dates.
+	 * @param styleId
+	 * 		The index of the style in the file
+	 * @return
+	 * 		The style
+	 */
+	private CellStyle getStyle(int styleId) {
+
+		CellStyle style = styles.get(styleId);
+
+		if (style == null) {
+			style = window.createCellStyle();
+			XSSFCellStyle fileStyle = stylesTable.getStyleAt(styleId);
+			String formatString = fileStyle == null ? null : fileStyle.getDataFormatString();
+			if (formatString != null) {
+				style.setDataFormat(window.createDataFormat().getFormat(formatString));
+			}
+			styles.put(styleId, style);
+		}
+		return style;
+	}
+
+	/**
+	 * Read from the dimension of the sheet.
+	 */
+	@Override
+	public int getLastRowNum() {
+		return lastRowNum;
+	}
+
+	@Override
+	public String getComment(int rowId, int columnId) {
+		return comments.get(new CellAddress(rowId, columnId));
+	}
+
+	/**
+	 * Read by the constructor.
+	 */
+	@Override
+	public Map<CellAddress, String> getComments() {
+		return Collections.unmodifiableMap(comments);
+	}
+
+	@Override
+	public DateFormatCache getDateFormats() {
+		return dateFormats;
+	}
+
+	/**
+	 * The rows are read once, in order.
+	 */
+	@Override
+	public boolean isRandomAccess() {
+		return false;
+	}
+
+	@Override
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (window != null) {
+			window.dispose();
+			window.close();
+		}
+		try {
+			if (xml != null) {
+				xml.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			if (data != null) {
+				data.close();
+			}
+			pkg.revert();
+		}
+	}
+
+}